@@ -0,0 +1,190 @@
+package org.apache.lucene.benchmark.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+
+/**
+ * Measures how fast postings blocks are decoded by the default codec.
+ * <p>
+ * An index is built in which the doc deltas of the postings of term
+ * <code>b&lt;N&gt;</code> of field <code>bits</code> all need exactly
+ * <code>N</code> bits, so that iterating these postings mostly measures the
+ * decoding of packed blocks of <code>N</code> bits per value. Then the
+ * throughput of {@link DocsEnum#nextDoc()} is reported for every bit width,
+ * followed by the number of {@link TermQuery}s and conjunctive
+ * {@link BooleanQuery}s (that {@link DocIdSetIterator#advance advance} the
+ * sparser clause) per second.
+ * <p>
+ * Usage:
+ * <pre>
+ * java org.apache.lucene.benchmark.utils.PostingsDecodeBenchmark [numDocs [maxBits [rounds [indexDir]]]]
+ * </pre>
+ * The index is built in a {@link RAMDirectory} unless <code>indexDir</code> is
+ * given. Run it with the same arguments before and after a change of the
+ * postings format to compare both.
+ */
+public class PostingsDecodeBenchmark {
+  private static final String FIELD = "bits";
+
+  private final int numDocs;
+  private final int maxBits;
+  private final int rounds;
+
+  public PostingsDecodeBenchmark(int numDocs, int maxBits, int rounds) {
+    this.numDocs = numDocs;
+    this.maxBits = maxBits;
+    this.rounds = rounds;
+  }
+
+  /** Indexes <code>numDocs</code> documents in which the gaps between the documents of term b&lt;N&gt; need N bits. */
+  public void index(Directory dir) throws IOException {
+    final Random random = new Random(0);
+    final int[] next = new int[maxBits + 1];
+    for (int bits = 1; bits <= maxBits; ++bits) {
+      next[bits] = gap(random, bits) - 1;
+    }
+    IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_CURRENT, new WhitespaceAnalyzer(Version.LUCENE_CURRENT));
+    iwc.setRAMBufferSizeMB(256);
+    IndexWriter writer = new IndexWriter(dir, iwc);
+    try {
+      for (int doc = 0; doc < numDocs; ++doc) {
+        Document document = new Document();
+        for (int bits = 1; bits <= maxBits; ++bits) {
+          if (next[bits] == doc) {
+            document.add(new StringField(FIELD, "b" + bits, Field.Store.NO));
+            next[bits] += gap(random, bits);
+          }
+        }
+        writer.addDocument(document);
+      }
+      writer.forceMerge(1);
+    } finally {
+      writer.close();
+    }
+  }
+
+  /** a gap that needs exactly <code>bits</code> bits */
+  private static int gap(Random random, int bits) {
+    final int min = 1 << (bits - 1);
+    return min + random.nextInt(min);
+  }
+
+  /** Prints the decoding throughput per bit width and query rates. */
+  public void run(Directory dir) throws IOException {
+    DirectoryReader reader = DirectoryReader.open(dir);
+    try {
+      AtomicReader leaf = reader.leaves().get(0).reader();
+      System.out.println("bits\tpostings\tM postings/s");
+      for (int bits = 1; bits <= maxBits; ++bits) {
+        final Term term = new Term(FIELD, "b" + bits);
+        long postings = 0;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < rounds; ++round) {
+          final long start = System.nanoTime();
+          postings = iterate(leaf.termDocsEnum(term));
+          best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(String.format(Locale.ROOT, "%d\t%d\t%.1f", bits, postings, postings * 1000.0 / best));
+      }
+
+      IndexSearcher searcher = new IndexSearcher(reader);
+      System.out.println();
+      System.out.println("query\thits\tqueries/s");
+      report(searcher, new TermQuery(new Term(FIELD, "b1")));
+      report(searcher, new TermQuery(new Term(FIELD, "b4")));
+      report(searcher, conjunction("b1", "b2"));
+      report(searcher, conjunction("b1", "b" + Math.min(maxBits, 8)));
+      report(searcher, conjunction("b2", "b3", "b" + Math.min(maxBits, 5)));
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static long iterate(DocsEnum docsEnum) throws IOException {
+    long count = 0;
+    while (docsEnum.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+      ++count;
+    }
+    return count;
+  }
+
+  private static Query conjunction(String... terms) {
+    BooleanQuery query = new BooleanQuery();
+    for (String term : terms) {
+      query.add(new TermQuery(new Term(FIELD, term)), BooleanClause.Occur.MUST);
+    }
+    return query;
+  }
+
+  private void report(IndexSearcher searcher, Query query) throws IOException {
+    int hits = 0;
+    long best = Long.MAX_VALUE;
+    for (int round = 0; round < rounds; ++round) {
+      final TotalHitCountCollector collector = new TotalHitCountCollector();
+      final long start = System.nanoTime();
+      searcher.search(query, collector);
+      best = Math.min(best, System.nanoTime() - start);
+      hits = collector.getTotalHits();
+    }
+    System.out.println(String.format(Locale.ROOT, "%s\t%d\t%.1f", query, hits, 1000000000.0 / best));
+  }
+
+  public static void main(String[] args) throws IOException {
+    final int numDocs = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 22;
+    final int maxBits = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+    final int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+    if (maxBits < 1 || maxBits > 30) {
+      System.err.println("maxBits must be in 1..30");
+      System.exit(1);
+    }
+    final Directory dir = args.length > 3 ? FSDirectory.open(new File(args[3])) : new RAMDirectory();
+    try {
+      PostingsDecodeBenchmark benchmark = new PostingsDecodeBenchmark(numDocs, maxBits, rounds);
+      benchmark.index(dir);
+      benchmark.run(dir);
+    } finally {
+      dir.close();
+    }
+  }
+}
@@ -0,0 +1,170 @@
+package org.apache.lucene.codecs.blockmax;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.lucene41.Lucene41PostingsFormat;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo.IndexOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.DefaultSimilarity;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+/**
+ * Tests that disjunctions over {@link BlockMaxPostingsFormat} postings,
+ * which skip blocks that can't be competitive when the total hits needn't be
+ * exact, find the same top hits as over {@link Lucene41PostingsFormat}
+ * postings, and that other collectors still see all matches.
+ */
+public class TestBlockMaxWAND extends LuceneTestCase {
+
+  private static final int NUM_WORDS = 10;
+
+  public void testDefaultSimilarity() throws Exception {
+    doTest(new DefaultSimilarity());
+  }
+
+  public void testBM25Similarity() throws Exception {
+    doTest(new BM25Similarity());
+  }
+
+  public void testDecreasingTf() throws Exception {
+    // scores can't be bounded from the max freq of a term: no block may be skipped
+    doTest(new DefaultSimilarity() {
+      @Override
+      public float tf(float freq) {
+        return 1f / freq;
+      }
+    });
+  }
+
+  private void doTest(Similarity similarity) throws Exception {
+    Directory blockMaxDir = newDirectory();
+    Directory refDir = newDirectory();
+    IndexWriter blockMaxWriter = new IndexWriter(blockMaxDir, config(new BlockMaxPostingsFormat(), similarity));
+    IndexWriter refWriter = new IndexWriter(refDir, config(new Lucene41PostingsFormat(), similarity));
+
+    FieldType ft = new FieldType(TextField.TYPE_NOT_STORED);
+    ft.setIndexOptions(random().nextBoolean() ? IndexOptions.DOCS_AND_FREQS : IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+    ft.freeze();
+    int numDocs = atLeast(3000);
+    for (int i = 0; i < numDocs; i++) {
+      // word j appears in about 1 doc out of j+1, more often in short docs
+      StringBuilder text = new StringBuilder();
+      int length = _TestUtil.nextInt(random(), 1, 30);
+      for (int j = 0; j < length; j++) {
+        int word = Math.min(NUM_WORDS - 1, (int) (NUM_WORDS * Math.pow(random().nextDouble(), 3)));
+        text.append(" w").append(word);
+      }
+      Document doc = new Document();
+      doc.add(new Field("body", text.toString(), ft));
+      blockMaxWriter.addDocument(doc);
+      refWriter.addDocument(doc);
+    }
+    blockMaxWriter.forceMerge(1);
+    refWriter.forceMerge(1);
+    blockMaxWriter.close();
+    refWriter.close();
+
+    IndexReader blockMaxReader = DirectoryReader.open(blockMaxDir);
+    IndexReader refReader = DirectoryReader.open(refDir);
+    // not newSearcher: wrapped readers would hide the block max freqs
+    IndexSearcher blockMaxSearcher = new IndexSearcher(blockMaxReader);
+    IndexSearcher refSearcher = new IndexSearcher(refReader);
+    blockMaxSearcher.setSimilarity(similarity);
+    refSearcher.setSimilarity(similarity);
+
+    int numQueries = atLeast(20);
+    for (int i = 0; i < numQueries; i++) {
+      BooleanQuery query = new BooleanQuery(random().nextBoolean());
+      int numClauses = _TestUtil.nextInt(random(), 2, 5);
+      for (int j = 0; j < numClauses; j++) {
+        TermQuery clause = new TermQuery(new Term("body", "w" + random().nextInt(NUM_WORDS)));
+        if (random().nextBoolean()) {
+          clause.setBoost(1 + random().nextInt(4));
+        }
+        query.add(clause, BooleanClause.Occur.SHOULD);
+      }
+      int n = _TestUtil.nextInt(random(), 1, 50);
+
+      TopDocs all = refSearcher.search(query, numDocs);
+      Map<Integer,Float> scores = new HashMap<Integer,Float>();
+      for (ScoreDoc hit : all.scoreDocs) {
+        scores.put(hit.doc, hit.score);
+      }
+
+      TopDocs expected = refSearcher.search(query, n);
+      TopScoreDocCollector collector = TopScoreDocCollector.create(n, random().nextBoolean());
+      collector.setExactTotalHits(false);
+      blockMaxSearcher.search(query, collector);
+      TopDocs actual = collector.topDocs();
+      assertEquals(query.toString(), expected.scoreDocs.length, actual.scoreDocs.length);
+      assertTrue(actual.totalHits <= expected.totalHits);
+
+      // collectors that need all matches see all of them
+      assertEquals(query.toString(), expected.totalHits, blockMaxSearcher.search(query, n).totalHits);
+      TotalHitCountCollector countCollector = new TotalHitCountCollector();
+      blockMaxSearcher.search(query, countCollector);
+      assertEquals(query.toString(), expected.totalHits, countCollector.getTotalHits());
+
+      for (int j = 0; j < actual.scoreDocs.length; j++) {
+        ScoreDoc hit = actual.scoreDocs[j];
+        float delta = 1e-5f * Math.abs(hit.score);
+        assertEquals(query.toString(), expected.scoreDocs[j].score, hit.score, delta);
+        assertTrue(query + ": unexpected hit " + hit, scores.containsKey(hit.doc));
+        assertEquals(query.toString(), scores.get(hit.doc), hit.score, delta);
+      }
+    }
+
+    blockMaxReader.close();
+    refReader.close();
+    blockMaxDir.close();
+    refDir.close();
+  }
+
+  private static IndexWriterConfig config(PostingsFormat format, Similarity similarity) {
+    // LogMergePolicy keeps the order of docs, so that both indexes have the same docIDs
+    return new IndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()))
+        .setCodec(_TestUtil.alwaysPostingsFormat(format))
+        .setSimilarity(similarity)
+        .setMergePolicy(newLogMergePolicy());
+  }
+}
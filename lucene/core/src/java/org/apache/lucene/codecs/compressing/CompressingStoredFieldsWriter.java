@@ -87,6 +87,11 @@ public final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
   private int docBase; // doc ID at the beginning of the chunk
   private int numBufferedDocs; // docBase + numBufferedDocs == current doc ID
 
+  // merge statistics
+  private int numCompressedChunks, numCompressedDocs, numCopiedChunks, numCopiedDocs;
+  private long compressedBytes; // uncompressed length of the compressed chunks
+  private long copiedBytes; // compressed length of the copied chunks
+
   /** Sole constructor. */
   public CompressingStoredFieldsWriter(Directory directory, SegmentInfo si, String segmentSuffix, IOContext context,
       String formatName, CompressionMode compressionMode, int chunkSize) throws IOException {
@@ -219,6 +224,9 @@ public final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
 
     // compress stored fields to fieldsStream
     compressor.compress(bufferedDocs.bytes, 0, bufferedDocs.length, fieldsStream);
+    ++numCompressedChunks;
+    numCompressedDocs += numBufferedDocs;
+    compressedBytes += bufferedDocs.length;
 
     // reset
     docBase += numBufferedDocs;
@@ -352,16 +360,26 @@ public final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
             }
 
             if (compressionMode == matchingFieldsReader.getCompressionMode() // same compression mode
-                && numBufferedDocs == 0 // starting a new chunk
                 && startOffsets[it.chunkDocs - 1] < chunkSize // chunk is small enough
-                && startOffsets[it.chunkDocs - 1] + it.lengths[it.chunkDocs - 1] >= chunkSize // chunk is large enough
+                && (startOffsets[it.chunkDocs - 1] + it.lengths[it.chunkDocs - 1] >= chunkSize // chunk is large enough
+                    || it.chunkDocs == MAX_DOCUMENTS_PER_CHUNK) // or has as many docs as a chunk can have
                 && nextDeletedDoc(it.docBase, liveDocs, it.docBase + it.chunkDocs) == it.docBase + it.chunkDocs) { // no deletion in the chunk
               assert docID == it.docBase;
 
+              if (numBufferedDocs > 0) {
+                // the docs of previous chunks that had deletions: compress them
+                // in a smaller chunk rather than recompressing all following chunks
+                flush();
+              }
+
               // no need to decompress, just copy data
               indexWriter.writeIndex(it.chunkDocs, fieldsStream.getFilePointer());
               writeHeader(this.docBase, it.chunkDocs, it.numStoredFields, it.lengths);
+              final long start = fieldsStream.getFilePointer();
               it.copyCompressedData(fieldsStream);
+              ++numCopiedChunks;
+              numCopiedDocs += it.chunkDocs;
+              copiedBytes += fieldsStream.getFilePointer() - start;
               this.docBase += it.chunkDocs;
               docID = nextLiveDoc(it.docBase + it.chunkDocs, liveDocs, maxDoc);
               docCount += it.chunkDocs;
@@ -387,9 +405,37 @@ public final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
       }
     }
     finish(mergeState.fieldInfos, docCount);
+    if (mergeState.infoStream.isEnabled("SM")) {
+      mergeState.infoStream.message("SM", "stored fields: copied " + numCopiedChunks + " chunks ["
+          + numCopiedDocs + " docs, " + copiedBytes + " compressed bytes], compressed " + numCompressedChunks
+          + " chunks [" + numCompressedDocs + " docs, " + compressedBytes + " bytes]");
+    }
     return docCount;
   }
 
+  /** Returns the number of chunks that were copied from the merged segments
+   *  without decompressing them. */
+  public int getNumCopiedChunks() {
+    return numCopiedChunks;
+  }
+
+  /** Returns the number of documents in the chunks that were copied from the
+   *  merged segments without decompressing them. */
+  public int getNumCopiedDocs() {
+    return numCopiedDocs;
+  }
+
+  /** Returns the number of chunks that this writer compressed. */
+  public int getNumCompressedChunks() {
+    return numCompressedChunks;
+  }
+
+  /** Returns the number of documents that this writer compressed, either
+   *  because they were added or because they were recompressed by a merge. */
+  public int getNumCompressedDocs() {
+    return numCompressedDocs;
+  }
+
   private static int nextLiveDoc(int doc, Bits liveDocs, int maxDoc) {
     if (liveDocs == null) {
       return doc;
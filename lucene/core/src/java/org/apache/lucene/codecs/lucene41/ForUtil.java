@@ -32,6 +32,17 @@ import static org.apache.lucene.codecs.lucene41.Lucene41PostingsFormat.BLOCK_SIZ
 /**
  * Encode all values in normal area with fixed bit width, 
  * which is determined by the max value in this block.
+ * <p>
+ * Since {@link Lucene41PostingsWriter#VERSION_INT_BLOCKS}, a block of
+ * <code>bitsPerValue</code> bits per value is stored as
+ * <code>4 * bitsPerValue</code> big-endian ints: the first
+ * <code>32 / bitsPerValue</code> values of every int are taken column by column
+ * (value <code>k * numInts + i</code> is at the <code>k</code>-th highest
+ * position of int <code>i</code>) and the remaining low bits of all ints hold the
+ * last values of the block, most significant bits first. Decoding the columns
+ * is a shift and a mask with the same constants for every int, which the JIT can
+ * unroll and vectorize, and needs no long arithmetic. Older segments use the
+ * {@link PackedInts} bulk decoders.
  */
 final class ForUtil {
 
@@ -88,7 +99,17 @@ final class ForUtil {
     return (int) byteCount;
   }
 
+  /**
+   * Compute the number of bytes required to encode a block of values that require
+   * <code>bitsPerValue</code> bits per value as ints.
+   */
+  private static int intBlockEncodedSize(int bitsPerValue) {
+    return BLOCK_SIZE * bitsPerValue / 8;
+  }
+
+  private final boolean intBlocks;
   private final int[] encodedSizes;
+  private final int[] bitsPerValues;
   private final PackedInts.Encoder[] encoders;
   private final PackedInts.Decoder[] decoders;
   private final int[] iterations;
@@ -97,8 +118,19 @@ final class ForUtil {
    * Create a new {@link ForUtil} instance and save state into <code>out</code>.
    */
   ForUtil(float acceptableOverheadRatio, DataOutput out) throws IOException {
+    this(acceptableOverheadRatio, out, Lucene41PostingsWriter.VERSION_CURRENT);
+  }
+
+  /**
+   * Create a new {@link ForUtil} instance that encodes blocks as
+   * {@link Lucene41PostingsWriter} <code>version</code> does and save state into
+   * <code>out</code>.
+   */
+  ForUtil(float acceptableOverheadRatio, DataOutput out, int version) throws IOException {
     out.writeVInt(PackedInts.VERSION_CURRENT);
+    intBlocks = version >= Lucene41PostingsWriter.VERSION_INT_BLOCKS;
     encodedSizes = new int[33];
+    bitsPerValues = new int[33];
     encoders = new PackedInts.Encoder[33];
     decoders = new PackedInts.Decoder[33];
     iterations = new int[33];
@@ -108,7 +140,10 @@ final class ForUtil {
           BLOCK_SIZE, bpv, acceptableOverheadRatio);
       assert formatAndBits.format.isSupported(formatAndBits.bitsPerValue);
       assert formatAndBits.bitsPerValue <= 32;
-      encodedSizes[bpv] = encodedSize(formatAndBits.format, PackedInts.VERSION_CURRENT, formatAndBits.bitsPerValue);
+      encodedSizes[bpv] = intBlocks
+          ? intBlockEncodedSize(formatAndBits.bitsPerValue)
+          : encodedSize(formatAndBits.format, PackedInts.VERSION_CURRENT, formatAndBits.bitsPerValue);
+      bitsPerValues[bpv] = formatAndBits.bitsPerValue;
       encoders[bpv] = PackedInts.getEncoder(
           formatAndBits.format, PackedInts.VERSION_CURRENT, formatAndBits.bitsPerValue);
       decoders[bpv] = PackedInts.getDecoder(
@@ -120,12 +155,15 @@ final class ForUtil {
   }
 
   /**
-   * Restore a {@link ForUtil} from a {@link DataInput}.
+   * Restore a {@link ForUtil} from a {@link DataInput} of a file written by
+   * {@link Lucene41PostingsWriter} <code>version</code>.
    */
-  ForUtil(DataInput in) throws IOException {
+  ForUtil(DataInput in, int version) throws IOException {
     int packedIntsVersion = in.readVInt();
     PackedInts.checkVersion(packedIntsVersion);
+    intBlocks = version >= Lucene41PostingsWriter.VERSION_INT_BLOCKS;
     encodedSizes = new int[33];
+    bitsPerValues = new int[33];
     encoders = new PackedInts.Encoder[33];
     decoders = new PackedInts.Decoder[33];
     iterations = new int[33];
@@ -137,7 +175,10 @@ final class ForUtil {
 
       final PackedInts.Format format = PackedInts.Format.byId(formatId);
       assert format.isSupported(bitsPerValue);
-      encodedSizes[bpv] = encodedSize(format, packedIntsVersion, bitsPerValue);
+      encodedSizes[bpv] = intBlocks
+          ? intBlockEncodedSize(bitsPerValue)
+          : encodedSize(format, packedIntsVersion, bitsPerValue);
+      bitsPerValues[bpv] = bitsPerValue;
       encoders[bpv] = PackedInts.getEncoder(
           format, packedIntsVersion, bitsPerValue);
       decoders[bpv] = PackedInts.getDecoder(
@@ -163,6 +204,14 @@ final class ForUtil {
 
     final int numBits = bitsRequired(data);
     assert numBits > 0 && numBits <= 32 : numBits;
+
+    if (intBlocks) {
+      out.writeByte((byte) numBits);
+      encodeInts(data, bitsPerValues[numBits], encoded);
+      out.writeBytes(encoded, encodedSizes[numBits]);
+      return;
+    }
+
     final PackedInts.Encoder encoder = encoders[numBits];
     final int iters = iterations[numBits];
     assert iters * encoder.byteValueCount() >= BLOCK_SIZE;
@@ -196,6 +245,11 @@ final class ForUtil {
     final int encodedSize = encodedSizes[numBits];
     in.readBytes(encoded, 0, encodedSize);
 
+    if (intBlocks) {
+      decodeInts(encoded, bitsPerValues[numBits], decoded);
+      return;
+    }
+
     final PackedInts.Decoder decoder = decoders[numBits];
     final int iters = iterations[numBits];
     assert iters * decoder.byteValueCount() >= BLOCK_SIZE;
@@ -220,6 +274,90 @@ final class ForUtil {
     in.seek(in.getFilePointer() + encodedSize);
   }
 
+  /**
+   * Encode <code>BLOCK_SIZE</code> values of <code>data</code> into
+   * <code>4 * bitsPerValue</code> big-endian ints.
+   */
+  static void encodeInts(int[] data, int bitsPerValue, byte[] encoded) {
+    final int numInts = BLOCK_SIZE * bitsPerValue / 32;
+    final int columns = 32 / bitsPerValue;
+    final int remainderBits = 32 % bitsPerValue;
+    // the values that don't fit in a column, as a stream of bits
+    long pending = 0;
+    int pendingBits = 0;
+    int nextRemainder = numInts * columns;
+    for (int i = 0; i < numInts; ++i) {
+      int word = 0;
+      for (int k = 0; k < columns; ++k) {
+        word |= data[k * numInts + i] << (32 - (k + 1) * bitsPerValue);
+      }
+      if (remainderBits > 0) {
+        while (pendingBits < remainderBits) {
+          pending = (pending << bitsPerValue) | data[nextRemainder++];
+          pendingBits += bitsPerValue;
+        }
+        pendingBits -= remainderBits;
+        word |= (int) (pending >>> pendingBits);
+        pending &= (1L << pendingBits) - 1;
+      }
+      encoded[4 * i] = (byte) (word >>> 24);
+      encoded[4 * i + 1] = (byte) (word >>> 16);
+      encoded[4 * i + 2] = (byte) (word >>> 8);
+      encoded[4 * i + 3] = (byte) word;
+    }
+    assert nextRemainder == BLOCK_SIZE && pendingBits == 0;
+  }
+
+  /**
+   * Decode <code>BLOCK_SIZE</code> values that have been encoded by
+   * {@link #encodeInts}.
+   */
+  static void decodeInts(byte[] encoded, int bitsPerValue, int[] decoded) {
+    final int numInts = BLOCK_SIZE * bitsPerValue / 32;
+    final int columns = 32 / bitsPerValue;
+    final int remainderBits = 32 % bitsPerValue;
+
+    // the ints are decoded in place: values of the first column are written last
+    for (int i = 0; i < numInts; ++i) {
+      decoded[i] = ((encoded[4 * i] & 0xFF) << 24) | ((encoded[4 * i + 1] & 0xFF) << 16)
+          | ((encoded[4 * i + 2] & 0xFF) << 8) | (encoded[4 * i + 3] & 0xFF);
+    }
+
+    if (remainderBits > 0) {
+      final int remainderMask = (1 << remainderBits) - 1;
+      int i = 0;
+      int pending = decoded[0] & remainderMask;
+      int pendingBits = remainderBits;
+      for (int upto = numInts * columns; upto < BLOCK_SIZE; ++upto) {
+        int value = 0;
+        int needed = bitsPerValue;
+        while (needed > 0) {
+          if (pendingBits == 0) {
+            pending = decoded[++i] & remainderMask;
+            pendingBits = remainderBits;
+          }
+          final int bits = Math.min(needed, pendingBits);
+          pendingBits -= bits;
+          needed -= bits;
+          value = (value << bits) | ((pending >>> pendingBits) & ((1 << bits) - 1));
+        }
+        decoded[upto] = value;
+      }
+    }
+
+    if (bitsPerValue == 32) {
+      return;
+    }
+    final int mask = (1 << bitsPerValue) - 1;
+    for (int k = columns - 1; k >= 0; --k) {
+      final int shift = 32 - (k + 1) * bitsPerValue;
+      final int offset = k * numInts;
+      for (int i = 0; i < numInts; ++i) {
+        decoded[offset + i] = (decoded[i] >>> shift) & mask;
+      }
+    }
+  }
+
   private static boolean isAllEqual(final int[] data) {
     final int v = data[0];
     for (int i = 1; i < BLOCK_SIZE; ++i) {
@@ -190,8 +190,9 @@ import org.apache.lucene.util.packed.PackedInts;
  * each packed or VInt block, when the length of document list is larger than packed block size.</p>
  *
  * <ul>
- *   <li>docFile(.doc) --&gt; Header, &lt;TermFreqs, SkipData?&gt;<sup>TermCount</sup></li>
+ *   <li>docFile(.doc) --&gt; Header, HasBlockMaxFreqs?, &lt;TermFreqs, SkipData?&gt;<sup>TermCount</sup></li>
  *   <li>Header --&gt; {@link CodecUtil#writeHeader CodecHeader}</li>
+ *   <li>HasBlockMaxFreqs --&gt; {@link DataOutput#writeByte Byte}, since version 2 of the .doc header</li>
  *   <li>TermFreqs --&gt; &lt;PackedBlock&gt; <sup>PackedDocBlockNum</sup>,  
  *                        VIntBlock? </li>
  *   <li>PackedBlock --&gt; PackedDocDeltaBlock, PackedFreqBlock?
@@ -200,10 +201,12 @@ import org.apache.lucene.util.packed.PackedInts;
  *       <sup>NumSkipLevels-1</sup>, SkipLevel&gt;, SkipDatum?</li>
  *   <li>SkipLevel --&gt; &lt;SkipDatum&gt; <sup>TrimmedDocFreq/(PackedBlockSize^(Level + 1))</sup></li>
  *   <li>SkipDatum --&gt; DocSkip, DocFPSkip, &lt;PosFPSkip, PosBlockOffset, PayLength?, 
- *                        PayFPSkip?&gt;?, SkipChildLevelPointer?</li>
- *   <li>PackedDocDeltaBlock, PackedFreqBlock --&gt; {@link PackedInts PackedInts}</li>
- *   <li>DocDelta, Freq, DocSkip, DocFPSkip, PosFPSkip, PosBlockOffset, PayByteUpto, PayFPSkip 
- *       --&gt; 
+ *                        PayFPSkip?&gt;?, BlockMaxFreq?, SkipChildLevelPointer?</li>
+ *   <li>PackedDocDeltaBlock, PackedFreqBlock --&gt; {@link PackedInts PackedInts}, or since
+ *       version 1 of the .doc header, 4*BitsPerValue big-endian ints in which the values are
+ *       stored column by column, so that they can be decoded with a fixed shift and mask per column</li>
+ *   <li>DocDelta, Freq, DocSkip, DocFPSkip, PosFPSkip, PosBlockOffset, PayByteUpto, PayFPSkip,
+ *       BlockMaxFreq --&gt; 
  *   {@link DataOutput#writeVInt VInt}</li>
  *   <li>SkipChildLevelPointer --&gt; {@link DataOutput#writeVLong VLong}</li>
  * </ul>
@@ -262,6 +265,10 @@ import org.apache.lucene.util.packed.PackedInts;
  *       current term's TermFreqs, and stored as a difference sequence.</li>
  *   <li>PayByteUpto indicates the start offset of the current payload. It is equivalent to
  *       the sum of the payload lengths in the current block up to PosBlockOffset</li>
+ *   <li>HasBlockMaxFreqs is 1 if the SkipDatums of level 0 of fields with frequencies have a
+ *       BlockMaxFreq, the maximum frequency of the packed block that ends at DocSkip, and 0
+ *       otherwise. This format never writes them, but other formats built on
+ *       {@link Lucene41PostingsWriter} may.</li>
  * </ul>
  * </dd>
  * </dl>
@@ -27,6 +27,7 @@ import java.util.Arrays;
 import org.apache.lucene.codecs.BlockTermState;
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.codecs.PostingsReaderBase;
+import org.apache.lucene.index.BlockMaxFreqs;
 import org.apache.lucene.index.DocsAndPositionsEnum;
 import org.apache.lucene.index.DocsEnum;
 import org.apache.lucene.index.FieldInfo;
@@ -60,6 +61,9 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
 
   private final ForUtil forUtil;
 
+  // true if skip data of fields with freqs has block max freqs
+  private final boolean hasBlockMaxFreqs;
+
   // public static boolean DEBUG = false;
 
   /** Sole constructor. */
@@ -71,18 +75,23 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
     try {
       docIn = dir.openInput(IndexFileNames.segmentFileName(segmentInfo.name, segmentSuffix, Lucene41PostingsFormat.DOC_EXTENSION),
                             ioContext);
-      CodecUtil.checkHeader(docIn,
-                            Lucene41PostingsWriter.DOC_CODEC,
-                            Lucene41PostingsWriter.VERSION_CURRENT,
-                            Lucene41PostingsWriter.VERSION_CURRENT);
-      forUtil = new ForUtil(docIn);
+      final int version = CodecUtil.checkHeader(docIn,
+                                                Lucene41PostingsWriter.DOC_CODEC,
+                                                Lucene41PostingsWriter.VERSION_START,
+                                                Lucene41PostingsWriter.VERSION_CURRENT);
+      if (version >= Lucene41PostingsWriter.VERSION_BLOCK_MAX_FREQS) {
+        hasBlockMaxFreqs = docIn.readByte() == 1;
+      } else {
+        hasBlockMaxFreqs = false;
+      }
+      forUtil = new ForUtil(docIn, version);
 
       if (fieldInfos.hasProx()) {
         posIn = dir.openInput(IndexFileNames.segmentFileName(segmentInfo.name, segmentSuffix, Lucene41PostingsFormat.POS_EXTENSION),
                               ioContext);
         CodecUtil.checkHeader(posIn,
                               Lucene41PostingsWriter.POS_CODEC,
-                              Lucene41PostingsWriter.VERSION_CURRENT,
+                              Lucene41PostingsWriter.VERSION_START,
                               Lucene41PostingsWriter.VERSION_CURRENT);
 
         if (fieldInfos.hasPayloads() || fieldInfos.hasOffsets()) {
@@ -90,7 +99,7 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
                                 ioContext);
           CodecUtil.checkHeader(payIn,
                                 Lucene41PostingsWriter.PAY_CODEC,
-                                Lucene41PostingsWriter.VERSION_CURRENT,
+                                Lucene41PostingsWriter.VERSION_START,
                                 Lucene41PostingsWriter.VERSION_CURRENT);
         }
       }
@@ -111,7 +120,7 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
     // Make sure we are talking to the matching postings writer
     CodecUtil.checkHeader(termsIn,
                           Lucene41PostingsWriter.TERMS_CODEC,
-                          Lucene41PostingsWriter.VERSION_CURRENT,
+                          Lucene41PostingsWriter.VERSION_START,
                           Lucene41PostingsWriter.VERSION_CURRENT);
     final int indexBlockSize = termsIn.readVInt();
     if (indexBlockSize != BLOCK_SIZE) {
@@ -285,14 +294,22 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
     if (reuse instanceof BlockDocsEnum) {
       docsEnum = (BlockDocsEnum) reuse;
       if (!docsEnum.canReuse(docIn, fieldInfo)) {
-        docsEnum = new BlockDocsEnum(fieldInfo);
+        docsEnum = newBlockDocsEnum(fieldInfo);
       }
     } else {
-      docsEnum = new BlockDocsEnum(fieldInfo);
+      docsEnum = newBlockDocsEnum(fieldInfo);
     }
     return docsEnum.reset(liveDocs, (IntBlockTermState) termState, flags);
   }
 
+  private BlockDocsEnum newBlockDocsEnum(FieldInfo fieldInfo) throws IOException {
+    if (hasBlockMaxFreqs && fieldInfo.getIndexOptions().compareTo(IndexOptions.DOCS_AND_FREQS) >= 0) {
+      return new BlockMaxDocsEnum(fieldInfo);
+    } else {
+      return new BlockDocsEnum(fieldInfo);
+    }
+  }
+
   // TODO: specialize to liveDocs vs not
   
   @Override
@@ -329,7 +346,7 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
     }
   }
 
-  final class BlockDocsEnum extends DocsEnum {
+  class BlockDocsEnum extends DocsEnum {
     private final byte[] encoded;
     
     private final int[] docDeltaBuffer = new int[MAX_DATA_SIZE];
@@ -340,6 +357,11 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
     private Lucene41SkipReader skipper;
     private boolean skipped;
 
+    // a second skipper for advanceBlock, which must not move this enum
+    private Lucene41SkipReader blockMaxSkipper;
+    private boolean blockMaxSkipped;
+    private int blockMaxFreq;
+
     final IndexInput startDocIn;
 
     IndexInput docIn;
@@ -417,6 +439,7 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
       nextSkipDoc = BLOCK_SIZE - 1; // we won't skip if target is found in first block
       docBufferUpto = BLOCK_SIZE;
       skipped = false;
+      blockMaxSkipped = false;
       return this;
     }
     
@@ -429,6 +452,48 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
     public int docID() {
       return doc;
     }
+
+    /** @see BlockMaxFreqs#advanceBlock(int) */
+    public int advanceBlock(int target) throws IOException {
+      if (!hasBlockMaxFreqs || !indexHasFreq || docFreq <= BLOCK_SIZE) {
+        blockMaxFreq = getMaxFreq();
+        return NO_MORE_DOCS;
+      }
+      if (blockMaxSkipper == null) {
+        blockMaxSkipper = new Lucene41SkipReader(docIn.clone(),
+                                                 Lucene41PostingsWriter.maxSkipLevels,
+                                                 BLOCK_SIZE,
+                                                 indexHasPos,
+                                                 indexHasOffsets,
+                                                 indexHasPayloads,
+                                                 true);
+      }
+      if (!blockMaxSkipped) {
+        blockMaxSkipper.init(docTermStartFP+skipOffset, docTermStartFP, 0, 0, docFreq);
+        blockMaxSkipped = true;
+      }
+      // the first skip point is only loaded for targets > 0
+      blockMaxSkipper.skipTo(Math.max(target, 1));
+      final int lastDoc = blockMaxSkipper.getNextSkipDoc();
+      if (lastDoc == Integer.MAX_VALUE) {
+        // the last block has no skip point
+        blockMaxFreq = getMaxFreq();
+        return NO_MORE_DOCS;
+      }
+      blockMaxFreq = blockMaxSkipper.getBlockMaxFreq();
+      return lastDoc;
+    }
+
+    /** @see BlockMaxFreqs#getBlockMaxFreq() */
+    public int getBlockMaxFreq() {
+      return blockMaxFreq;
+    }
+
+    /** @see BlockMaxFreqs#getMaxFreq() */
+    public int getMaxFreq() {
+      // all other docs have a freq of at least 1
+      return indexHasFreq ? (int) Math.min(Integer.MAX_VALUE, totalTermFreq - docFreq + 1) : 1;
+    }
     
     private void refillDocs() throws IOException {
       final int left = docFreq - docUpto;
@@ -527,7 +592,8 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
                                         BLOCK_SIZE,
                                         indexHasPos,
                                         indexHasOffsets,
-                                        indexHasPayloads);
+                                        indexHasPayloads,
+                                        hasBlockMaxFreqs && indexHasFreq);
         }
 
         if (!skipped) {
@@ -607,6 +673,13 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
   }
 
 
+  /** A {@link BlockDocsEnum} of a field with freqs whose skip data has block max freqs. */
+  final class BlockMaxDocsEnum extends BlockDocsEnum implements BlockMaxFreqs {
+    public BlockMaxDocsEnum(FieldInfo fieldInfo) throws IOException {
+      super(fieldInfo);
+    }
+  }
+
   final class BlockDocsAndPositionsEnum extends DocsAndPositionsEnum {
     
     private final byte[] encoded;
@@ -856,7 +929,8 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
                                         BLOCK_SIZE,
                                         true,
                                         indexHasOffsets,
-                                        indexHasPayloads);
+                                        indexHasPayloads,
+                                        hasBlockMaxFreqs);
         }
 
         if (!skipped) {
@@ -1378,7 +1452,8 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
                                         BLOCK_SIZE,
                                         true,
                                         indexHasOffsets,
-                                        indexHasPayloads);
+                                        indexHasPayloads,
+                                        hasBlockMaxFreqs);
         }
 
         if (!skipped) {
@@ -65,7 +65,11 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
 
   // Increment version to change it
   final static int VERSION_START = 0;
-  final static int VERSION_CURRENT = VERSION_START;
+  /** Packed blocks are stored as ints, see {@link ForUtil}. */
+  final static int VERSION_INT_BLOCKS = 1;
+  /** The .doc header is followed by a byte that tells whether skip data has block max freqs. */
+  final static int VERSION_BLOCK_MAX_FREQS = 2;
+  final static int VERSION_CURRENT = VERSION_BLOCK_MAX_FREQS;
 
   final IndexOutput docOut;
   final IndexOutput posOut;
@@ -102,6 +106,7 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
   private long lastBlockPayFP;
   private int lastBlockPosBufferUpto;
   private int lastBlockPayloadByteUpto;
+  private int lastBlockMaxFreq;
 
   private int lastDocID;
   private int lastPosition;
@@ -112,11 +117,22 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
 
   private final ForUtil forUtil;
   private final Lucene41SkipWriter skipWriter;
+  private final boolean writeBlockMaxFreqs;
   
   /** Creates a postings writer with the specified PackedInts overhead ratio */
   // TODO: does this ctor even make sense?
   public Lucene41PostingsWriter(SegmentWriteState state, float acceptableOverheadRatio) throws IOException {
+    this(state, acceptableOverheadRatio, false);
+  }
+
+  /**
+   * Creates a postings writer with the specified PackedInts overhead ratio
+   * that optionally records the maximum term frequency of every block of
+   * postings in skip data, see {@link org.apache.lucene.index.BlockMaxFreqs}.
+   */
+  public Lucene41PostingsWriter(SegmentWriteState state, float acceptableOverheadRatio, boolean writeBlockMaxFreqs) throws IOException {
     super();
+    this.writeBlockMaxFreqs = writeBlockMaxFreqs;
 
     docOut = state.directory.createOutput(IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, Lucene41PostingsFormat.DOC_EXTENSION),
                                           state.context);
@@ -125,6 +141,7 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
     boolean success = false;
     try {
       CodecUtil.writeHeader(docOut, DOC_CODEC, VERSION_CURRENT);
+      docOut.writeByte((byte) (writeBlockMaxFreqs ? 1 : 0));
       forUtil = new ForUtil(acceptableOverheadRatio, docOut);
       if (state.fieldInfos.hasProx()) {
         posDeltaBuffer = new int[MAX_DATA_SIZE];
@@ -178,7 +195,8 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
                                      state.segmentInfo.getDocCount(),
                                      docOut,
                                      posOut,
-                                     payOut);
+                                     payOut,
+                                     writeBlockMaxFreqs);
 
     encoded = new byte[MAX_ENCODED_SIZE];
   }
@@ -202,7 +220,7 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
     fieldHasPositions = indexOptions.compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS) >= 0;
     fieldHasOffsets = indexOptions.compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) >= 0;
     fieldHasPayloads = fieldInfo.hasPayloads();
-    skipWriter.setField(fieldHasPositions, fieldHasOffsets, fieldHasPayloads);
+    skipWriter.setField(fieldHasFreqs, fieldHasPositions, fieldHasOffsets, fieldHasPayloads);
   }
 
   @Override
@@ -234,7 +252,7 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
       // if (DEBUG) {
       //   System.out.println("  bufferSkip at writeBlock: lastDocID=" + lastBlockDocID + " docCount=" + (docCount-1));
       // }
-      skipWriter.bufferSkip(lastBlockDocID, docCount, lastBlockPosFP, lastBlockPayFP, lastBlockPosBufferUpto, lastBlockPayloadByteUpto);
+      skipWriter.bufferSkip(lastBlockDocID, docCount, lastBlockPosFP, lastBlockPayFP, lastBlockPosBufferUpto, lastBlockPayloadByteUpto, lastBlockMaxFreq);
     }
 
     final int docDelta = docID - lastDocID;
@@ -263,6 +281,13 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
         //   System.out.println("  write freq block @ fp=" + docOut.getFilePointer());
         // }
         forUtil.writeBlock(freqBuffer, encoded, docOut);
+        if (writeBlockMaxFreqs) {
+          int maxFreq = 0;
+          for (int i = 0; i < BLOCK_SIZE; ++i) {
+            maxFreq = Math.max(maxFreq, freqBuffer[i]);
+          }
+          lastBlockMaxFreq = maxFreq;
+        }
       }
       // NOTE: don't set docBufferUpto back to 0 here;
       // finishDoc will do so (because it needs to see that
@@ -66,9 +66,14 @@ final class Lucene41SkipReader extends MultiLevelSkipListReader {
   private long lastDocPointer;
   private int lastPosBufferUpto;
 
-  public Lucene41SkipReader(IndexInput skipStream, int maxSkipLevels, int blockSize, boolean hasPos, boolean hasOffsets, boolean hasPayloads) {
+  private final boolean hasBlockMaxFreqs;
+  private int blockMaxFreq;
+
+  public Lucene41SkipReader(IndexInput skipStream, int maxSkipLevels, int blockSize, boolean hasPos, boolean hasOffsets, boolean hasPayloads,
+      boolean hasBlockMaxFreqs) {
     super(skipStream, maxSkipLevels, blockSize, 8);
     this.blockSize = blockSize;
+    this.hasBlockMaxFreqs = hasBlockMaxFreqs;
     docPointer = new long[maxSkipLevels];
     if (hasPos) {
       posPointer = new long[maxSkipLevels];
@@ -144,6 +149,16 @@ final class Lucene41SkipReader extends MultiLevelSkipListReader {
     return skipDoc[0];
   }
 
+  /**
+   * Returns the maximum freq of the docs after {@link #getDoc()} up to
+   * {@link #getNextSkipDoc()}, if the skip data has block max freqs and
+   * there is a next skip point.
+   */
+  public int getBlockMaxFreq() {
+    assert hasBlockMaxFreqs;
+    return blockMaxFreq;
+  }
+
   @Override
   protected void seekChild(int level) throws IOException {
     super.seekChild(level);
@@ -218,6 +233,10 @@ final class Lucene41SkipReader extends MultiLevelSkipListReader {
         payPointer[level] += skipStream.readVInt();
       }
     }
+
+    if (level == 0 && hasBlockMaxFreqs) {
+      blockMaxFreq = skipStream.readVInt();
+    }
     return delta;
   }
 }
@@ -0,0 +1,346 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.RateLimitedDirectoryWrapper;
+import org.apache.lucene.store.RateLimiter;
+
+/**
+ * A {@link ConcurrentMergeScheduler} that adapts the write rate of merges,
+ * and how many of them run at once, to the load of the system.
+ * <p>
+ * The load comes from a pluggable {@link LoadSignal}, for instance a {@link
+ * LatencyLoadSignal} fed with the latencies of searches. Every {@link
+ * #setAdjustIntervalMS adjust interval}, the scheduler:
+ * <ul>
+ *   <li>halves the merge rate (down to {@link #setMinMBPerSec min MB/sec}) and
+ *       runs only one merge at a time if the load is above 1, unless merges
+ *       have fallen so far behind that indexing threads are stalled, in which
+ *       case it holds the current rate;
+ *   <li>doubles the merge rate (up to {@link #setMaxMBPerSec max MB/sec}) and
+ *       runs one more merge at a time (up to {@link #getMaxThreadCount()}) if
+ *       the load is below {@link #setIdleLoad idle load}, or if merges have
+ *       fallen behind and the load is at most 1;
+ *   <li>keeps the current settings otherwise.
+ * </ul>
+ * <p>
+ * The merge rate is applied by {@link #getRateLimiter() a rate limiter} that
+ * must be set for {@link IOContext.Context#MERGE merges} on a {@link
+ * RateLimitedDirectoryWrapper}; the scheduler does that itself when the
+ * {@link IndexWriter}'s directory is a {@link RateLimitedDirectoryWrapper}
+ * with no merge limit. Without it, only the number of running merges adapts.
+ *
+ * @lucene.experimental
+ */
+public class AdaptiveMergeScheduler extends ConcurrentMergeScheduler {
+
+  /**
+   * Tells how loaded the system is, for {@link AdaptiveMergeScheduler}.
+   */
+  public interface LoadSignal {
+    /**
+     * Returns the current load: 0 when idle, 1 at the highest acceptable
+     * load, and more than 1 when merges should back off.
+     */
+    double getLoad();
+  }
+
+  /**
+   * A {@link LoadSignal} whose load is a percentile of the recently
+   * {@link #record recorded} latencies, divided by a target latency. Only the
+   * last <code>windowSize</code> latencies that are at most
+   * <code>maxAgeMS</code> old are considered, so that the load drops back to
+   * 0 once searches stop.
+   * <p>
+   * Lucene doesn't know how long the application's requests take, so the
+   * application has to record them. For example, to keep the 99th percentile
+   * of search latencies under 50 ms:
+   * <pre class="prettyprint">
+   * LatencyLoadSignal signal = new LatencyLoadSignal(99, 50, 1000, 10000);
+   * AdaptiveMergeScheduler scheduler = new AdaptiveMergeScheduler();
+   * scheduler.setLoadSignal(signal);
+   * indexWriterConfig.setMergeScheduler(scheduler);
+   * ...
+   * // wherever searches are run
+   * long start = System.nanoTime();
+   * TopDocs hits = searcher.search(query, 10);
+   * signal.record(System.nanoTime() - start);
+   * </pre>
+   */
+  public static class LatencyLoadSignal implements LoadSignal {
+    private final double percentile;
+    private final long targetNS;
+    private final long maxAgeNS;
+    private final long[] latencies;
+    private final long[] times;
+    private int count;
+    private int next;
+
+    /**
+     * @param percentile percentile of the latencies to compare to the target, eg 99
+     * @param targetMS latency at which the load is 1
+     * @param windowSize maximum number of latencies to consider
+     * @param maxAgeMS maximum age of the latencies to consider
+     */
+    public LatencyLoadSignal(double percentile, double targetMS, int windowSize, long maxAgeMS) {
+      if (percentile <= 0 || percentile > 100) {
+        throw new IllegalArgumentException("percentile must be > 0 and <= 100 (got " + percentile + ")");
+      }
+      if (targetMS <= 0) {
+        throw new IllegalArgumentException("targetMS must be > 0 (got " + targetMS + ")");
+      }
+      if (windowSize < 1) {
+        throw new IllegalArgumentException("windowSize must be >= 1 (got " + windowSize + ")");
+      }
+      this.percentile = percentile;
+      this.targetNS = (long) (targetMS * 1000000);
+      this.maxAgeNS = maxAgeMS * 1000000;
+      this.latencies = new long[windowSize];
+      this.times = new long[windowSize];
+    }
+
+    /** Records the latency, in nanoseconds, of an operation that just completed, eg a search. */
+    public synchronized void record(long latencyNS) {
+      latencies[next] = latencyNS;
+      times[next] = System.nanoTime();
+      next = (next + 1) % latencies.length;
+      count = Math.min(count + 1, latencies.length);
+    }
+
+    @Override
+    public double getLoad() {
+      final long[] recent = new long[latencies.length];
+      int numRecent = 0;
+      synchronized (this) {
+        final long minTime = System.nanoTime() - maxAgeNS;
+        for (int i = 0; i < count; i++) {
+          if (times[i] - minTime >= 0) {
+            recent[numRecent++] = latencies[i];
+          }
+        }
+      }
+      if (numRecent == 0) {
+        return 0;
+      }
+      Arrays.sort(recent, 0, numRecent);
+      final int index = (int) Math.ceil(percentile / 100 * numRecent) - 1;
+      return (double) recent[Math.max(0, index)] / targetNS;
+    }
+  }
+
+  private RateLimiter.SimpleRateLimiter rateLimiter;
+  private volatile LoadSignal loadSignal;
+  private double minMBPerSec = 5;
+  private double maxMBPerSec = 200;
+  private double idleLoad = 0.5;
+  private volatile long adjustIntervalNS = 1000000000L;
+  private volatile long lastAdjustNS;
+  private int maxRunningThreadCount;
+
+  /** Sole constructor, with no {@link LoadSignal}, so that merges run at {@link #setMaxMBPerSec max MB/sec} until one is set. */
+  public AdaptiveMergeScheduler() {
+    rateLimiter = new AdaptiveRateLimiter(maxMBPerSec);
+    maxRunningThreadCount = Integer.MAX_VALUE;
+    lastAdjustNS = System.nanoTime();
+  }
+
+  /** Sets the signal that drives the merge rate, or <code>null</code> for no load. */
+  public void setLoadSignal(LoadSignal loadSignal) {
+    this.loadSignal = loadSignal;
+  }
+
+  /** Returns the {@link LoadSignal}. */
+  public LoadSignal getLoadSignal() {
+    return loadSignal;
+  }
+
+  /** Sets the lowest merge rate, in MB/sec, that the scheduler backs off to. */
+  public synchronized void setMinMBPerSec(double mbPerSec) {
+    if (mbPerSec <= 0 || mbPerSec > maxMBPerSec) {
+      throw new IllegalArgumentException("mbPerSec must be > 0 and <= maxMBPerSec (= " + maxMBPerSec + ")");
+    }
+    minMBPerSec = mbPerSec;
+    rateLimiter.setMbPerSec(Math.max(minMBPerSec, rateLimiter.getMbPerSec()));
+  }
+
+  /** Returns the lowest merge rate, in MB/sec. */
+  public synchronized double getMinMBPerSec() {
+    return minMBPerSec;
+  }
+
+  /** Sets the highest merge rate, in MB/sec, that the scheduler catches up at. */
+  public synchronized void setMaxMBPerSec(double mbPerSec) {
+    if (mbPerSec < minMBPerSec) {
+      throw new IllegalArgumentException("mbPerSec must be >= minMBPerSec (= " + minMBPerSec + ")");
+    }
+    maxMBPerSec = mbPerSec;
+    rateLimiter.setMbPerSec(Math.min(maxMBPerSec, rateLimiter.getMbPerSec()));
+  }
+
+  /** Returns the highest merge rate, in MB/sec. */
+  public synchronized double getMaxMBPerSec() {
+    return maxMBPerSec;
+  }
+
+  /** Sets the load below which the system is considered idle and merges speed up. */
+  public synchronized void setIdleLoad(double idleLoad) {
+    if (idleLoad < 0 || idleLoad > 1) {
+      throw new IllegalArgumentException("idleLoad must be >= 0 and <= 1 (got " + idleLoad + ")");
+    }
+    this.idleLoad = idleLoad;
+  }
+
+  /** Returns the load below which merges speed up. */
+  public synchronized double getIdleLoad() {
+    return idleLoad;
+  }
+
+  /** Sets how often, in milliseconds, the merge rate is adjusted to the load. */
+  public synchronized void setAdjustIntervalMS(long ms) {
+    if (ms < 0) {
+      throw new IllegalArgumentException("ms must be >= 0 (got " + ms + ")");
+    }
+    adjustIntervalNS = ms * 1000000;
+  }
+
+  /** Returns how often, in milliseconds, the merge rate is adjusted. */
+  public synchronized long getAdjustIntervalMS() {
+    return adjustIntervalNS / 1000000;
+  }
+
+  /**
+   * Returns the rate limiter of merge writes, to be set for {@link
+   * IOContext.Context#MERGE} on a {@link RateLimitedDirectoryWrapper} with
+   * {@link RateLimitedDirectoryWrapper#setRateLimiter}.
+   */
+  public RateLimiter getRateLimiter() {
+    return rateLimiter;
+  }
+
+  /** Returns the current merge rate, in MB/sec. */
+  public double getMBPerSec() {
+    return rateLimiter.getMbPerSec();
+  }
+
+  @Override
+  protected synchronized int getMaxRunningThreadCount() {
+    return Math.min(maxRunningThreadCount, getMaxThreadCount());
+  }
+
+  @Override
+  public synchronized void merge(IndexWriter writer) throws IOException {
+    final Directory directory = writer.getDirectory();
+    if (directory instanceof RateLimitedDirectoryWrapper) {
+      final RateLimitedDirectoryWrapper rateLimitedDir = (RateLimitedDirectoryWrapper) directory;
+      if (rateLimitedDir.getMaxWriteMBPerSec(IOContext.Context.MERGE) == null) {
+        rateLimitedDir.setRateLimiter(rateLimiter, IOContext.Context.MERGE);
+      }
+    }
+    maybeAdjust();
+    super.merge(writer);
+  }
+
+  @Override
+  protected void doMerge(MergePolicy.OneMerge merge) throws IOException {
+    maybeAdjust();
+    super.doMerge(merge);
+  }
+
+  /** Adjusts the merge rate to the load, if the adjust interval has elapsed since the last adjustment. */
+  void maybeAdjust() {
+    final long now = System.nanoTime();
+    // cheap unsynchronized check first: this is called for every write.
+    // merge() locks this scheduler then the writer, so don't lock them in
+    // the other order if a merge writes while holding the writer's lock:
+    final IndexWriter writer = this.writer;
+    if (now - lastAdjustNS >= adjustIntervalNS && (writer == null || !Thread.holdsLock(writer))) {
+      synchronized (this) {
+        if (now - lastAdjustNS >= adjustIntervalNS) {
+          lastAdjustNS = now;
+          adjust();
+        }
+      }
+    }
+  }
+
+  private synchronized void adjust() {
+    final LoadSignal signal = loadSignal;
+    final double load = signal == null ? 0 : signal.getLoad();
+    final boolean behind = mergeThreadCount() >= getMaxMergeCount();
+    final double mbPerSec = rateLimiter.getMbPerSec();
+    final int runningThreadCount = getMaxRunningThreadCount();
+    double newMBPerSec = mbPerSec;
+    int newRunningThreadCount = runningThreadCount;
+    if (load > 1) {
+      if (!behind) {
+        newMBPerSec = Math.max(minMBPerSec, mbPerSec / 2);
+        newRunningThreadCount = 1;
+      }
+    } else if (load < idleLoad || behind) {
+      newMBPerSec = Math.min(maxMBPerSec, mbPerSec * 2);
+      newRunningThreadCount = Math.min(getMaxThreadCount(), runningThreadCount + 1);
+    }
+
+    if (newMBPerSec != mbPerSec) {
+      rateLimiter.setMbPerSec(newMBPerSec);
+    }
+    if (verbose() && (newMBPerSec != mbPerSec || newRunningThreadCount != runningThreadCount)) {
+      message("load=" + load + " behind=" + behind + ": now merge at " + newMBPerSec
+          + " MB/sec with " + newRunningThreadCount + " running threads");
+    }
+    if (newRunningThreadCount != runningThreadCount) {
+      maxRunningThreadCount = newRunningThreadCount;
+      updateMergeThreads();
+    }
+  }
+
+  /** Rate limiter that also adjusts the rate, as merges write. */
+  private final class AdaptiveRateLimiter extends RateLimiter.SimpleRateLimiter {
+    AdaptiveRateLimiter(double mbPerSec) {
+      super(mbPerSec);
+    }
+
+    @Override
+    public long pause(long bytes) {
+      maybeAdjust();
+      return super.pause(bytes);
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(super.toString());
+    sb.append(", minMBPerSec=").append(minMBPerSec);
+    sb.append(", maxMBPerSec=").append(maxMBPerSec);
+    sb.append(", idleLoad=").append(idleLoad);
+    sb.append(", loadSignal=").append(loadSignal);
+    return sb.toString();
+  }
+
+  @Override
+  public MergeScheduler clone() {
+    AdaptiveMergeScheduler clone = (AdaptiveMergeScheduler) super.clone();
+    clone.rateLimiter = clone.new AdaptiveRateLimiter(rateLimiter.getMbPerSec());
+    return clone;
+  }
+}
@@ -0,0 +1,55 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.search.DocIdSetIterator;
+
+/**
+ * Implemented by {@link DocsEnum}s that know an upper bound of the
+ * frequencies of blocks of their postings without decoding them, so that
+ * scorers can skip blocks that cannot produce competitive scores.
+ * <p>
+ * Moving to a block with {@link #advanceBlock(int)} does not move the
+ * {@link DocsEnum} itself.
+ *
+ * @lucene.experimental
+ */
+public interface BlockMaxFreqs {
+
+  /**
+   * Moves to the block of postings that contains <code>target</code>, or the
+   * first block after it if no posting is equal to <code>target</code>, and
+   * returns the last document of the block. After this call,
+   * {@link #getBlockMaxFreq()} returns an upper bound of the freqs of the
+   * documents between <code>target</code> and the returned document, both
+   * inclusive. Returns {@link DocIdSetIterator#NO_MORE_DOCS} if the bound
+   * of the block is not known, in which case the bound is
+   * {@link #getMaxFreq()}.
+   * <p>
+   * <code>target</code> must not be lower than on the previous call.
+   */
+  int advanceBlock(int target) throws IOException;
+
+  /** Returns an upper bound of the freqs of the block of the last call to {@link #advanceBlock(int)}. */
+  int getBlockMaxFreq();
+
+  /** Returns an upper bound of the freqs of all postings. */
+  int getMaxFreq();
+}
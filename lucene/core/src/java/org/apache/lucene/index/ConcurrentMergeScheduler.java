@@ -188,6 +188,7 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
     
     int pri = mergeThreadPriority;
     final int activeMergeCount = activeMerges.size();
+    final int maxRunningThreadCount = getMaxRunningThreadCount();
     for (threadIdx=0;threadIdx<activeMergeCount;threadIdx++) {
       final MergeThread mergeThread = activeMerges.get(threadIdx);
       final MergePolicy.OneMerge merge = mergeThread.getCurrentMerge();
@@ -196,7 +197,7 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
       }
 
       // pause the thread if maxThreadCount is smaller than the number of merge threads.
-      final boolean doPause = threadIdx < activeMergeCount - maxThreadCount;
+      final boolean doPause = threadIdx < activeMergeCount - maxRunningThreadCount;
 
       if (verbose()) {
         if (doPause != merge.getPause()) {
@@ -221,6 +222,15 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
     }
   }
 
+  /**
+   * Returns how many merge threads may run at once; {@link
+   * #updateMergeThreads} pauses the others. Defaults to {@link
+   * #getMaxThreadCount}, subclasses may return less to throttle merging.
+   */
+  protected int getMaxRunningThreadCount() {
+    return maxThreadCount;
+  }
+
   /**
    * Returns true if verbosing is enabled. This method is usually used in
    * conjunction with {@link #message(String)}, like that:
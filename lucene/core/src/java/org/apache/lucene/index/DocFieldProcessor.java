@@ -23,12 +23,19 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.codecs.FieldInfosWriter;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.Counter;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.ThreadInterruptedException;
 
 /**
  * This is a DocConsumer that gathers all fields under the
@@ -43,6 +50,7 @@ final class DocFieldProcessor extends DocConsumer {
   final DocFieldConsumer consumer;
   final StoredFieldsConsumer storedConsumer;
   final Codec codec;
+  final DocumentsWriter parent;
 
   // Holds all fields seen in current doc
   DocFieldProcessorPerField[] fields = new DocFieldProcessorPerField[1];
@@ -64,6 +72,7 @@ final class DocFieldProcessor extends DocConsumer {
     this.bytesUsed = docWriter.bytesUsed;
     this.consumer = consumer;
     this.storedConsumer = storedConsumer;
+    this.parent = docWriter.parent;
   }
 
   @Override
@@ -77,8 +86,14 @@ final class DocFieldProcessor extends DocConsumer {
 
     assert fields.size() == totalFieldCount;
 
-    storedConsumer.flush(state);
-    consumer.flush(childFields, state);
+    // writes stored fields while the inverted fields are written, if possible
+    final Executor flushExecutor = parent.getFlushExecutor();
+    if (flushExecutor == null) {
+      storedConsumer.flush(state);
+      consumer.flush(childFields, state);
+    } else {
+      flushConcurrently(flushExecutor, childFields, state);
+    }
 
     // Important to save after asking consumer to flush so
     // consumer can alter the FieldInfo* if necessary.  EG,
@@ -88,6 +103,45 @@ final class DocFieldProcessor extends DocConsumer {
     infosWriter.write(state.directory, state.segmentInfo.name, state.fieldInfos, IOContext.DEFAULT);
   }
 
+  /** Writes the stored fields and doc values, which go to other files than
+   *  the inverted fields, on a flush thread while this thread writes the
+   *  inverted fields. */
+  private void flushConcurrently(Executor flushExecutor, Map<String,DocFieldConsumerPerField> childFields, final SegmentWriteState state) throws IOException {
+    final FutureTask<Void> storedFlush = new FutureTask<Void>(new Callable<Void>() {
+      @Override
+      public Void call() throws IOException {
+        storedConsumer.flush(state);
+        return null;
+      }
+    });
+    try {
+      flushExecutor.execute(storedFlush);
+    } catch (RejectedExecutionException ree) {
+      // closed: run below on this thread
+    }
+
+    Throwable th = null;
+    try {
+      consumer.flush(childFields, state);
+    } catch (Throwable t) {
+      th = t;
+    }
+
+    // if all flush threads are busy, don't wait for one:
+    // this is a no-op if the task already started
+    storedFlush.run();
+    try {
+      storedFlush.get();
+    } catch (ExecutionException ee) {
+      if (th == null) {
+        th = ee.getCause();
+      }
+    } catch (InterruptedException ie) {
+      throw new ThreadInterruptedException(ie);
+    }
+    IOUtils.reThrow(th);
+  }
+
   @Override
   public void abort() {
     Throwable th = null;
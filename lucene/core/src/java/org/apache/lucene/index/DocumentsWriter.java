@@ -20,7 +20,14 @@ package org.apache.lucene.index;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.codecs.Codec;
@@ -35,8 +42,10 @@ import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FlushInfo;
 import org.apache.lucene.store.IOContext;
+import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.InfoStream;
 import org.apache.lucene.util.MutableBits;
+import org.apache.lucene.util.ThreadInterruptedException;
 
 /**
  * This class accepts multiple added documents and directly
@@ -136,6 +145,21 @@ final class DocumentsWriter {
   final DocumentsWriterFlushControl flushControl;
   
   final Codec codec;
+
+  /** Number of threads that flush segments off the indexing threads, or 0
+   *  if indexing threads flush; see {@link IndexWriterConfig#setFlushThreadCount}. */
+  final int flushThreadCount;
+  /** Created on first use, so that we don't start threads for writers that are never used */
+  private ExecutorService flushExecutor;
+  private final Object flushExecutorLock = new Object();
+  /** Number of flushes handed to the flush threads that are not done yet, guarded by flushExecutorLock */
+  private int pendingBackgroundFlushes;
+  /** Set when a background flush may have made merges necessary */
+  private final AtomicBoolean flushedInBackground = new AtomicBoolean();
+  /** First exception hit by a background flush; once set, all indexing and
+   *  flushing calls fail until the writer is rolled back */
+  private final AtomicReference<Throwable> backgroundFlushException = new AtomicReference<Throwable>();
+
   DocumentsWriter(Codec codec, LiveIndexWriterConfig config, Directory directory, IndexWriter writer, FieldNumbers globalFieldNumbers,
       BufferedDeletesStream bufferedDeletesStream) {
     this.codec = codec;
@@ -150,9 +174,35 @@ final class DocumentsWriter {
     assert flushPolicy != null;
     flushPolicy.init(this);
     flushControl = new DocumentsWriterFlushControl(this, config);
+    flushThreadCount = config.getFlushThreadCount();
+  }
+
+  /** Returns the executor of the flush threads, or <code>null</code> if
+   *  indexing threads flush or if we are closed. */
+  ExecutorService getFlushExecutor() {
+    if (flushThreadCount == 0) {
+      return null;
+    }
+    synchronized (flushExecutorLock) {
+      if (flushExecutor == null && !closed) {
+        flushExecutor = Executors.newFixedThreadPool(flushThreadCount, new ThreadFactory() {
+          private final AtomicInteger threadCount = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, "Lucene Flush Thread #" + threadCount.getAndIncrement());
+            // like merge threads, flush threads don't keep the JVM alive
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+      }
+      return flushExecutor;
+    }
   }
 
   synchronized void deleteQueries(final Query... queries) throws IOException {
+    ensureNoBackgroundFlushException();
     deleteQueue.addDelete(queries);
     flushControl.doOnDelete();
     if (flushControl.doApplyAllDeletes()) {
@@ -164,6 +214,7 @@ final class DocumentsWriter {
   // term doesn't exist, don't bother buffering into the
   // per-DWPT map (but still must go into the global map)
   synchronized void deleteTerms(final Term... terms) throws IOException {
+    ensureNoBackgroundFlushException();
     final DocumentsWriterDeleteQueue deleteQueue = this.deleteQueue;
     deleteQueue.addDelete(terms);
     flushControl.doOnDelete();
@@ -274,10 +325,42 @@ final class DocumentsWriter {
   void close() {
     closed = true;
     flushControl.setClosed();
+    final ExecutorService executor;
+    synchronized (flushExecutorLock) {
+      executor = flushExecutor;
+      if (executor != null) {
+        // flushes that are already queued still run
+        executor.shutdown();
+      }
+    }
+    if (executor != null) {
+      // wait for the flush threads to publish their segments, so that they
+      // are committed on close; don't hold flushExecutorLock as they may
+      // need it to write stored fields concurrently
+      try {
+        while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+          if (infoStream.isEnabled("DW")) {
+            infoStream.message("DW", "waiting for flush threads to finish");
+          }
+        }
+      } catch (InterruptedException ie) {
+        throw new ThreadInterruptedException(ie);
+      }
+    }
+  }
+
+  /** Throws an exception if a background flush failed: the segment it was
+   *  flushing is lost, so we must not go on as if it was flushed. */
+  private void ensureNoBackgroundFlushException() {
+    final Throwable th = backgroundFlushException.get();
+    if (th != null) {
+      throw new IllegalStateException("this writer hit an exception while flushing a segment in the background; it must be rolled back", th);
+    }
   }
 
   private boolean preUpdate() throws IOException {
     ensureOpen();
+    ensureNoBackgroundFlushException();
     boolean maybeMerge = false;
     if (flushControl.anyStalledThreads() || flushControl.numQueuedFlushes() > 0) {
       // Help out flushing any queued DWPTs so we can un-stall:
@@ -312,18 +395,103 @@ final class DocumentsWriter {
     if (flushControl.doApplyAllDeletes()) {
       applyAllDeletes(deleteQueue);
     }
+    if (flushingDWPT == null) {
+      flushingDWPT = flushControl.nextPendingFlush();
+    }
     if (flushingDWPT != null) {
-      maybeMerge |= doFlush(flushingDWPT);
-    } else {
-      final DocumentsWriterPerThread nextPendingFlush = flushControl.nextPendingFlush();
-      if (nextPendingFlush != null) {
-        maybeMerge |= doFlush(nextPendingFlush);
+      if (flushThreadCount == 0) {
+        maybeMerge |= doFlush(flushingDWPT);
+      } else {
+        flushInBackground(flushingDWPT);
       }
     }
+    if (flushThreadCount != 0 && flushedInBackground.getAndSet(false)) {
+      // publish the segments that flush threads could not publish because
+      // another thread was purging the ticket queue, and trigger merges
+      purgeTicketQueue();
+      maybeApplyAllDeletes();
+      maybeMerge = true;
+    }
 
     return maybeMerge;
   }
 
+  /** Hands the DWPT, and the next pending ones, to a flush thread. */
+  private void flushInBackground(final DocumentsWriterPerThread flushingDWPT) throws IOException {
+    // take the ticket on this thread, so that the segments of an indexing
+    // thread are published in the order of its documents
+    final SegmentFlushTicket ticket;
+    boolean success = false;
+    try {
+      ticket = ticketQueue.addFlushTicket(flushingDWPT);
+      success = true;
+    } finally {
+      if (!success) {
+        afterFlush(flushingDWPT);
+      }
+    }
+    final ExecutorService executor = getFlushExecutor();
+    synchronized (flushExecutorLock) {
+      pendingBackgroundFlushes++;
+    }
+    try {
+      if (executor == null) {
+        throw new RejectedExecutionException("closed");
+      }
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            doFlush(flushingDWPT, ticket, false);
+            DocumentsWriterPerThread dwpt;
+            while ((dwpt = flushControl.nextPendingFlush()) != null) {
+              doFlush(dwpt, null, false);
+            }
+            // publishing a segment needs the IndexWriter's lock, which
+            // may be held by a thread waiting for these flushes: only
+            // publish once they are marked as done
+            purgeTicketQueue();
+          } catch (Throwable t) {
+            // a no-op if doFlush already recorded it
+            backgroundFlushException.compareAndSet(null, t);
+          } finally {
+            flushedInBackground.set(true);
+            backgroundFlushDone();
+          }
+        }
+      });
+    } catch (RejectedExecutionException ree) {
+      backgroundFlushDone();
+      // we are closing: flush on this thread
+      if (doFlush(flushingDWPT, ticket, true)) {
+        flushedInBackground.set(true);
+      }
+    }
+  }
+
+  private void backgroundFlushDone() {
+    synchronized (flushExecutorLock) {
+      if (--pendingBackgroundFlushes == 0) {
+        flushExecutorLock.notifyAll();
+      }
+    }
+  }
+
+  /** Waits until the flush threads have flushed and published the segments
+   *  they were handed. Must not be called while holding the IndexWriter's
+   *  lock, which flush threads need. */
+  void waitForBackgroundFlushes() {
+    synchronized (flushExecutorLock) {
+      while (pendingBackgroundFlushes > 0) {
+        try {
+          flushExecutorLock.wait();
+        } catch (InterruptedException ie) {
+          throw new ThreadInterruptedException(ie);
+        }
+      }
+    }
+  }
+
   boolean updateDocuments(final Iterable<? extends IndexDocument> docs, final Analyzer analyzer,
                           final Term delTerm) throws IOException {
     boolean maybeMerge = preUpdate();
@@ -389,12 +557,22 @@ final class DocumentsWriter {
     return postUpdate(flushingDWPT, maybeMerge);
   }
 
-  private  boolean doFlush(DocumentsWriterPerThread flushingDWPT) throws IOException {
+  private boolean doFlush(DocumentsWriterPerThread flushingDWPT) throws IOException {
+    return doFlush(flushingDWPT, null, true);
+  }
+
+  /** Flushes the DWPT, and the next pending ones, and publishes the flushed
+   *  segments if <code>publish</code> is true. Otherwise, only flushes the
+   *  given DWPT. <code>preparedTicket</code> is the ticket of the given DWPT
+   *  if it was already added to the ticket queue, or null. */
+  private boolean doFlush(DocumentsWriterPerThread flushingDWPT, SegmentFlushTicket preparedTicket, boolean publish) throws IOException {
     boolean maybeMerge = false;
     while (flushingDWPT != null) {
       maybeMerge = true;
       boolean success = false;
-      SegmentFlushTicket ticket = null;
+      SegmentFlushTicket ticket = preparedTicket;
+      preparedTicket = null;
+      final String segment = publish ? null : flushingDWPT.getSegmentInfo().name;
       try {
         assert currentFullFlushDelQueue == null
             || flushingDWPT.deleteQueue == currentFullFlushDelQueue : "expected: "
@@ -416,7 +594,9 @@ final class DocumentsWriter {
          */
         try {
           // Each flush is assigned a ticket in the order they acquire the ticketQueue lock
-          ticket = ticketQueue.addFlushTicket(flushingDWPT);
+          if (ticket == null) {
+            ticket = ticketQueue.addFlushTicket(flushingDWPT);
+          }
   
           // flush concurrently without locking
           final FlushedSegment newSegment = flushingDWPT.flush();
@@ -435,26 +615,54 @@ final class DocumentsWriter {
          * Now we are done and try to flush the ticket queue if the head of the
          * queue has already finished the flush.
          */
-        if (ticketQueue.getTicketCount() >= perThreadPool.getActiveThreadState()) {
-          // This means there is a backlog: the one
-          // thread in innerPurge can't keep up with all
-          // other threads flushing segments.  In this case
-          // we forcefully stall the producers.
-          ticketQueue.forcePurge(this);
-        } else {
-          ticketQueue.tryPurge(this);
+        if (publish) {
+          purgeTicketQueue();
         }
 
+      } catch (Throwable t) {
+        if (!publish) {
+          // record it before the flush is marked as done, so that full
+          // flushes waiting for this flush see it
+          if (infoStream.isEnabled("DW")) {
+            infoStream.message("DW", "hit exception flushing segment " + segment + " in the background: " + t);
+          }
+          backgroundFlushException.compareAndSet(null, new IOException("background flush of segment " + segment + " failed", t));
+        }
+        IOUtils.reThrow(t);
       } finally {
-        flushControl.doAfterFlush(flushingDWPT);
-        flushingDWPT.checkAndResetHasAborted();
-        indexWriter.flushCount.incrementAndGet();
-        indexWriter.doAfterFlush();
+        afterFlush(flushingDWPT);
       }
      
-      flushingDWPT = flushControl.nextPendingFlush();
+      flushingDWPT = publish ? flushControl.nextPendingFlush() : null;
+    }
+
+    if (publish) {
+      maybeApplyAllDeletes();
     }
 
+    return maybeMerge;
+  }
+
+  private void afterFlush(DocumentsWriterPerThread flushingDWPT) throws IOException {
+    flushControl.doAfterFlush(flushingDWPT);
+    flushingDWPT.checkAndResetHasAborted();
+    indexWriter.flushCount.incrementAndGet();
+    indexWriter.doAfterFlush();
+  }
+
+  private void purgeTicketQueue() throws IOException {
+    if (ticketQueue.getTicketCount() >= perThreadPool.getActiveThreadState()) {
+      // This means there is a backlog: the one
+      // thread in innerPurge can't keep up with all
+      // other threads flushing segments.  In this case
+      // we forcefully stall the producers.
+      ticketQueue.forcePurge(this);
+    } else {
+      ticketQueue.tryPurge(this);
+    }
+  }
+
+  private void maybeApplyAllDeletes() throws IOException {
     // If deletes alone are consuming > 1/2 our RAM
     // buffer, force them all to apply now. This is to
     // prevent too-frequent flushing of a long tail of
@@ -467,8 +675,6 @@ final class DocumentsWriter {
       }
       applyAllDeletes(deleteQueue);
     }
-
-    return maybeMerge;
   }
   
 
@@ -534,6 +740,7 @@ final class DocumentsWriter {
    */
   final boolean flushAllThreads()
     throws IOException {
+    ensureNoBackgroundFlushException();
     final DocumentsWriterDeleteQueue flushingDeleteQueue;
     if (infoStream.isEnabled("DW")) {
       infoStream.message("DW", Thread.currentThread().getName() + " startFullFlush");
@@ -560,6 +767,7 @@ final class DocumentsWriter {
       }
       // If a concurrent flush is still in flight wait for it
       flushControl.waitForFlush();  
+      ensureNoBackgroundFlushException();
       if (!anythingFlushed && flushingDeleteQueue.anyChanges()) { // apply deletes if we did not flush any document
         if (infoStream.isEnabled("DW")) {
           infoStream.message("DW", Thread.currentThread().getName() + ": flush naked frozen global deletes");
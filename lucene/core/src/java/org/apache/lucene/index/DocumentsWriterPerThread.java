@@ -207,7 +207,8 @@ class DocumentsWriterPerThread {
     this.codec = parent.codec;
     this.docState = new DocState(this, infoStream);
     this.docState.similarity = parent.indexWriter.getConfig().getSimilarity();
-    bytesUsed = Counter.newCounter();
+    // flushes may update it from several threads
+    bytesUsed = Counter.newCounter(parent.flushThreadCount != 0);
     byteBlockAllocator = new DirectTrackingAllocator(bytesUsed);
     pendingDeletes = new BufferedDeletes();
     intBlockAllocator = new IntBlockAllocator(bytesUsed);
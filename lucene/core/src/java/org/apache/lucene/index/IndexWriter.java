@@ -31,6 +31,9 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.analysis.Analyzer;
@@ -52,6 +55,7 @@ import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.Constants;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.InfoStream;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.util.ThreadInterruptedException;
 
 /**
@@ -250,6 +254,11 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
   private long mergeGen;
   private boolean stopMerges;
 
+  // writes the parts of merged segments concurrently, created on first use
+  private ExecutorService mergePhaseExecutor;
+  private boolean mergePhaseExecutorClosed;
+  private final Object mergePhaseExecutorLock = new Object();
+
   final AtomicInteger flushCount = new AtomicInteger();
   final AtomicInteger flushDeletesCount = new AtomicInteger();
 
@@ -980,6 +989,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
         } finally {
           // shutdown policy, scheduler and all threads (this call is not interruptible):
           IOUtils.closeWhileHandlingException(mergePolicy, mergeScheduler);
+          closeMergePhaseExecutor();
         }
       }
 
@@ -1980,6 +1990,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
       // before calling closeInternal
       mergePolicy.close();
       mergeScheduler.close();
+      closeMergePhaseExecutor();
 
       bufferedDeletesStream.clear();
       docWriter.close(); // mark it as closed first to prevent subsequent indexing actions/flushes 
@@ -2051,7 +2062,15 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
    *    {@link #forceMergeDeletes} methods, they may receive
    *    {@link MergePolicy.MergeAbortedException}s.
    */
-  public synchronized void deleteAll() throws IOException {
+  public void deleteAll() throws IOException {
+    ensureOpen();
+    // aborting waits for the segments being flushed, and flush threads need
+    // this writer's lock to seal them: wait for them before taking it
+    docWriter.waitForBackgroundFlushes();
+    doDeleteAll();
+  }
+
+  private synchronized void doDeleteAll() throws IOException {
     ensureOpen();
     boolean success = false;
     try {
@@ -2424,7 +2443,8 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
                                          false, codec, null, null);
 
       SegmentMerger merger = new SegmentMerger(mergeReaders, info, infoStream, trackingDir, config.getTermIndexInterval(),
-                                               MergeState.CheckAbort.NONE, globalFieldNumberMap, context);
+                                               MergeState.CheckAbort.NONE, globalFieldNumberMap, context,
+                                               getMergePhaseExecutor());
 
       MergeState mergeState;
       boolean success = false;
@@ -3561,6 +3581,31 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
     }
   }
 
+  /** Returns the executor that writes the parts of merged segments
+   *  concurrently, or null if merges write them one after the other. */
+  private Executor getMergePhaseExecutor() {
+    final int threadCount = config.getMergePhaseThreadCount();
+    if (threadCount == 0) {
+      return null;
+    }
+    synchronized (mergePhaseExecutorLock) {
+      if (mergePhaseExecutor == null && !mergePhaseExecutorClosed) {
+        mergePhaseExecutor = Executors.newFixedThreadPool(threadCount, new NamedThreadFactory("Lucene Merge Phase Thread"));
+      }
+      return mergePhaseExecutor;
+    }
+  }
+
+  private void closeMergePhaseExecutor() {
+    synchronized (mergePhaseExecutorLock) {
+      mergePhaseExecutorClosed = true;
+      if (mergePhaseExecutor != null) {
+        // all merges are done by now
+        mergePhaseExecutor.shutdown();
+      }
+    }
+  }
+
   /** Does the actual (time-consuming) work of the merge,
    *  but without holding synchronized lock on IndexWriter
    *  instance */
@@ -3653,7 +3698,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
       // OneMerge to return a view over the actual segments to merge
       final SegmentMerger merger = new SegmentMerger(merge.getMergeReaders(),
           merge.info.info, infoStream, dirWrapper, config.getTermIndexInterval(),
-          checkAbort, globalFieldNumberMap, context);
+          checkAbort, globalFieldNumberMap, context, getMergePhaseExecutor());
 
       merge.checkAborted(directory);
 
@@ -109,6 +109,14 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig implements Cl
    *  than this many threads arrive they will wait for
    *  others to finish. Default value is 8. */
   public final static int DEFAULT_MAX_THREAD_STATES = 8;
+
+  /** Default value is 0, which means that segments are flushed by the
+   *  indexing threads. Change using {@link #setFlushThreadCount(int)}. */
+  public final static int DEFAULT_FLUSH_THREAD_COUNT = 0;
+
+  /** Default value is 0, which means that each merge writes its files one
+   *  after the other. Change using {@link #setMergePhaseThreadCount(int)}. */
+  public final static int DEFAULT_MERGE_PHASE_THREAD_COUNT = 0;
   
   /**
    * Sets the default (for any instance) maximum time to wait for a write lock
@@ -369,6 +377,59 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig implements Cl
     }
   }
 
+  /**
+   * Expert: Sets the number of threads that flush segments in the background.
+   * With the default of 0, a segment is flushed by the indexing thread that
+   * triggered the flush, which does not index documents until the flush is
+   * done. Otherwise, flushes are handed to a pool of that many threads so that
+   * indexing threads can go on indexing; the flush threads also write the
+   * stored fields and doc values of a segment while its postings are written.
+   * Indexing threads are still stalled if flushing falls too far behind, see
+   * {@link #setRAMBufferSizeMB}.
+   *
+   * <p>If a flush thread hits an exception, the documents of the segment it
+   * was flushing are lost, so all following indexing, flushing and commit
+   * calls throw an {@link IllegalStateException} whose cause is that
+   * exception, and the writer must be rolled back.
+   *
+   * <p>Only takes effect when IndexWriter is first created. */
+  public IndexWriterConfig setFlushThreadCount(int flushThreadCount) {
+    if (flushThreadCount < 0) {
+      throw new IllegalArgumentException("flushThreadCount must be >= 0 (got " + flushThreadCount + ")");
+    }
+    this.flushThreadCount = flushThreadCount;
+    return this;
+  }
+
+  @Override
+  public int getFlushThreadCount() {
+    return flushThreadCount;
+  }
+
+  /**
+   * Expert: Sets the number of threads that merges use to write the different
+   * parts of the merged segment concurrently. With the default of 0, a merge
+   * writes stored fields, postings, doc values, norms and term vectors one
+   * after the other. Otherwise, the merge thread hands these phases, which
+   * write to different files, to a pool of that many threads shared by all
+   * merges, and writes the segment's field infos once they are all done. This
+   * mostly speeds up large merges, like {@link IndexWriter#forceMerge}, on
+   * machines that have spare cores and fast enough storage.
+   *
+   * <p>Only takes effect when IndexWriter is first created. */
+  public IndexWriterConfig setMergePhaseThreadCount(int mergePhaseThreadCount) {
+    if (mergePhaseThreadCount < 0) {
+      throw new IllegalArgumentException("mergePhaseThreadCount must be >= 0 (got " + mergePhaseThreadCount + ")");
+    }
+    this.mergePhaseThreadCount = mergePhaseThreadCount;
+    return this;
+  }
+
+  @Override
+  public int getMergePhaseThreadCount() {
+    return mergePhaseThreadCount;
+  }
+
   /** By default, IndexWriter does not pool the
    *  SegmentReaders it must open for deletions and
    *  merging, unless a near-real-time reader has been
@@ -95,6 +95,12 @@ public class LiveIndexWriterConfig {
    *  segment, after which the segment is forced to flush. */
   protected volatile int perThreadHardLimitMB;
 
+  /** Number of threads that flush segments in the background. */
+  protected volatile int flushThreadCount;
+
+  /** Number of threads that merges use to write the parts of a segment concurrently. */
+  protected volatile int mergePhaseThreadCount;
+
   /** {@link Version} that {@link IndexWriter} should emulate. */
   protected final Version matchVersion;
 
@@ -125,6 +131,8 @@ public class LiveIndexWriterConfig {
     readerPooling = IndexWriterConfig.DEFAULT_READER_POOLING;
     indexerThreadPool = new ThreadAffinityDocumentsWriterThreadPool(IndexWriterConfig.DEFAULT_MAX_THREAD_STATES);
     perThreadHardLimitMB = IndexWriterConfig.DEFAULT_RAM_PER_THREAD_HARD_LIMIT_MB;
+    flushThreadCount = IndexWriterConfig.DEFAULT_FLUSH_THREAD_COUNT;
+    mergePhaseThreadCount = IndexWriterConfig.DEFAULT_MERGE_PHASE_THREAD_COUNT;
   }
   
   /**
@@ -154,6 +162,8 @@ public class LiveIndexWriterConfig {
     readerPooling = config.getReaderPooling();
     flushPolicy = config.getFlushPolicy();
     perThreadHardLimitMB = config.getRAMPerThreadHardLimitMB();
+    flushThreadCount = config.getFlushThreadCount();
+    mergePhaseThreadCount = config.getMergePhaseThreadCount();
   }
 
   /** Returns the default analyzer to use for indexing documents. */
@@ -527,6 +537,26 @@ public class LiveIndexWriterConfig {
     return perThreadHardLimitMB;
   }
   
+  /**
+   * Returns the number of threads that flush segments in the background, or 0
+   * if indexing threads flush segments.
+   *
+   * @see IndexWriterConfig#setFlushThreadCount(int)
+   */
+  public int getFlushThreadCount() {
+    return flushThreadCount;
+  }
+
+  /**
+   * Returns the number of threads that merges use to write the parts of a
+   * segment concurrently, or 0 if merges write them one after the other.
+   *
+   * @see IndexWriterConfig#setMergePhaseThreadCount(int)
+   */
+  public int getMergePhaseThreadCount() {
+    return mergePhaseThreadCount;
+  }
+
   /**
    * @see IndexWriterConfig#setFlushPolicy(FlushPolicy)
    */
@@ -567,6 +597,8 @@ public class LiveIndexWriterConfig {
     sb.append("indexerThreadPool=").append(getIndexerThreadPool()).append("\n");
     sb.append("readerPooling=").append(getReaderPooling()).append("\n");
     sb.append("perThreadHardLimitMB=").append(getRAMPerThreadHardLimitMB()).append("\n");
+    sb.append("flushThreadCount=").append(getFlushThreadCount()).append("\n");
+    sb.append("mergePhaseThreadCount=").append(getMergePhaseThreadCount()).append("\n");
     return sb.toString();
   }
 
@@ -20,6 +20,11 @@ package org.apache.lucene.index;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.codecs.FieldInfosWriter;
@@ -32,6 +37,7 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.InfoStream;
+import org.apache.lucene.util.ThreadInterruptedException;
 
 /**
  * The SegmentMerger class combines two or more Segments, represented by an
@@ -51,15 +57,21 @@ final class SegmentMerger {
   private final MergeState mergeState;
   private final FieldInfos.Builder fieldInfosBuilder;
 
+  // runs the phases of the merge concurrently, or null
+  private final Executor executor;
+  private volatile boolean phaseFailed;
+
   // note, just like in codec apis Directory 'dir' is NOT the same as segmentInfo.dir!!
   SegmentMerger(List<AtomicReader> readers, SegmentInfo segmentInfo, InfoStream infoStream, Directory dir, int termIndexInterval,
-                MergeState.CheckAbort checkAbort, FieldInfos.FieldNumbers fieldNumbers, IOContext context) {
+                MergeState.CheckAbort checkAbort, FieldInfos.FieldNumbers fieldNumbers, IOContext context,
+                Executor executor) {
     mergeState = new MergeState(readers, segmentInfo, infoStream, checkAbort);
     directory = dir;
     this.termIndexInterval = termIndexInterval;
     this.codec = segmentInfo.getCodec();
     this.context = context;
     this.fieldInfosBuilder = new FieldInfos.Builder(fieldNumbers);
+    this.executor = executor;
   }
 
   /**
@@ -79,61 +91,49 @@ final class SegmentMerger {
     mergeState.segmentInfo.setDocCount(setDocMaps());
     mergeFieldInfos();
     setMatchingSegmentReaders();
-    long t0 = 0;
-    if (mergeState.infoStream.isEnabled("SM")) {
-      t0 = System.nanoTime();
-    }
-    int numMerged = mergeFields();
-    if (mergeState.infoStream.isEnabled("SM")) {
-      long t1 = System.nanoTime();
-      mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge stored fields [" + numMerged + " docs]");
-    }
-    assert numMerged == mergeState.segmentInfo.getDocCount();
 
-    final SegmentWriteState segmentWriteState = new SegmentWriteState(mergeState.infoStream, directory, mergeState.segmentInfo,
-                                                                      mergeState.fieldInfos, termIndexInterval, null, context);
-    if (mergeState.infoStream.isEnabled("SM")) {
-      t0 = System.nanoTime();
-    }
-    mergeTerms(segmentWriteState);
-    if (mergeState.infoStream.isEnabled("SM")) {
-      long t1 = System.nanoTime();
-      mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge postings [" + numMerged + " docs]");
-    }
-
-    if (mergeState.infoStream.isEnabled("SM")) {
-      t0 = System.nanoTime();
-    }
+    // each phase writes its own files, so that they can run concurrently
+    final List<MergePhase> phases = new ArrayList<MergePhase>();
+    phases.add(new MergePhase("stored fields") {
+      @Override
+      int doMerge() throws IOException {
+        return mergeFields();
+      }
+    });
+    phases.add(new MergePhase("postings") {
+      @Override
+      int doMerge() throws IOException {
+        mergeTerms(newSegmentWriteState());
+        return mergeState.segmentInfo.getDocCount();
+      }
+    });
     if (mergeState.fieldInfos.hasDocValues()) {
-      mergeDocValues(segmentWriteState);
-    }
-    if (mergeState.infoStream.isEnabled("SM")) {
-      long t1 = System.nanoTime();
-      mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge doc values [" + numMerged + " docs]");
+      phases.add(new MergePhase("doc values") {
+        @Override
+        int doMerge() throws IOException {
+          mergeDocValues(newSegmentWriteState());
+          return mergeState.segmentInfo.getDocCount();
+        }
+      });
     }
-    
     if (mergeState.fieldInfos.hasNorms()) {
-      if (mergeState.infoStream.isEnabled("SM")) {
-        t0 = System.nanoTime();
-      }
-      mergeNorms(segmentWriteState);
-      if (mergeState.infoStream.isEnabled("SM")) {
-        long t1 = System.nanoTime();
-        mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge norms [" + numMerged + " docs]");
-      }
+      phases.add(new MergePhase("norms") {
+        @Override
+        int doMerge() throws IOException {
+          mergeNorms(newSegmentWriteState());
+          return mergeState.segmentInfo.getDocCount();
+        }
+      });
     }
-
     if (mergeState.fieldInfos.hasVectors()) {
-      if (mergeState.infoStream.isEnabled("SM")) {
-        t0 = System.nanoTime();
-      }
-      numMerged = mergeVectors();
-      if (mergeState.infoStream.isEnabled("SM")) {
-        long t1 = System.nanoTime();
-        mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge vectors [" + numMerged + " docs]");
-      }
-      assert numMerged == mergeState.segmentInfo.getDocCount();
+      phases.add(new MergePhase("vectors") {
+        @Override
+        int doMerge() throws IOException {
+          return mergeVectors();
+        }
+      });
     }
+    runPhases(phases);
     
     // write the merged infos
     FieldInfosWriter fieldInfosWriter = codec.fieldInfosFormat().getFieldInfosWriter();
@@ -142,6 +142,98 @@ final class SegmentMerger {
     return mergeState;
   }
 
+  private SegmentWriteState newSegmentWriteState() {
+    return new SegmentWriteState(mergeState.infoStream, directory, mergeState.segmentInfo,
+                                 mergeState.fieldInfos, termIndexInterval, null, context);
+  }
+
+  /** A part of the merge that writes its own files. */
+  private abstract class MergePhase implements Callable<Void> {
+    private final String name;
+
+    MergePhase(String name) {
+      this.name = name;
+    }
+
+    /** Merges and returns the number of merged documents. */
+    abstract int doMerge() throws IOException;
+
+    @Override
+    public Void call() throws IOException {
+      if (phaseFailed) {
+        // the merge fails anyway
+        return null;
+      }
+      boolean success = false;
+      try {
+        long t0 = 0;
+        if (mergeState.infoStream.isEnabled("SM")) {
+          t0 = System.nanoTime();
+        }
+        final int numMerged = doMerge();
+        if (mergeState.infoStream.isEnabled("SM")) {
+          long t1 = System.nanoTime();
+          mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge " + name + " [" + numMerged + " docs]");
+        }
+        assert numMerged == mergeState.segmentInfo.getDocCount();
+        success = true;
+      } finally {
+        if (!success) {
+          phaseFailed = true;
+        }
+      }
+      return null;
+    }
+  }
+
+  /** Runs the phases on the executor if there is one, else one after the
+   *  other, and returns once they are all done. */
+  private void runPhases(List<MergePhase> phases) throws IOException {
+    final List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>();
+    for (MergePhase phase : phases) {
+      tasks.add(new FutureTask<Void>(phase));
+    }
+    if (executor != null) {
+      // this thread runs the first phase
+      for (int i = 1; i < tasks.size(); i++) {
+        try {
+          executor.execute(tasks.get(i));
+        } catch (RejectedExecutionException ree) {
+          // closed: run below on this thread
+          break;
+        }
+      }
+    }
+
+    Throwable th = null;
+    boolean interrupted = false;
+    for (FutureTask<Void> task : tasks) {
+      // if all threads are busy, don't wait for one:
+      // this is a no-op if the task already started
+      task.run();
+      // files must not be deleted while a phase still writes them, so wait
+      // for all phases even if interrupted
+      while (true) {
+        try {
+          task.get();
+          break;
+        } catch (ExecutionException ee) {
+          if (th == null) {
+            th = ee.getCause();
+          }
+          break;
+        } catch (InterruptedException ie) {
+          interrupted = true;
+          phaseFailed = true;
+        }
+      }
+    }
+    if (interrupted && th == null) {
+      th = new ThreadInterruptedException(new InterruptedException());
+    }
+    IOUtils.reThrow(th);
+  }
+
   private void mergeDocValues(SegmentWriteState segmentWriteState) throws IOException {
     DocValuesConsumer consumer = codec.docValuesFormat().fieldsConsumer(segmentWriteState);
     boolean success = false;
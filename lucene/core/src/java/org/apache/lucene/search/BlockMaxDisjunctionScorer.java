@@ -0,0 +1,296 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.lucene.index.BlockMaxFreqs;
+
+/**
+ * A top-level Scorer for pure disjunctions of {@link TermScorer}s whose
+ * postings know their {@link BlockMaxFreqs block max freqs}.
+ * <p>
+ * When it collects into a {@link TopScoreDocCollector} which doesn't need
+ * {@link TopScoreDocCollector#setExactTotalHits(boolean) exact total hits},
+ * it uses block-max WAND: the score of the worst hit in the queue is a
+ * threshold, and documents that can't score above it are skipped without
+ * being scored, first using the upper bound of the scores of every term, then
+ * the upper bound of the scores of the blocks of postings around the
+ * candidate document. As the skipped documents are not collected,
+ * {@link TopDocs#totalHits} only counts the documents that were collected.
+ * <p>
+ * Other collectors, and {@link #nextDoc()}/{@link #advance(int)}, are served
+ * by the scorer that {@link BooleanQuery} uses for other disjunctions, which
+ * is only created then.
+ */
+final class BlockMaxDisjunctionScorer extends Scorer {
+
+  // scores are compared to the threshold with some slack, since
+  // float scores and their bounds are not rounded the same way
+  private static final float BOUND_SLACK = 1.0001f;
+
+  private final BooleanQuery.BooleanWeight weight;
+  private final List<Scorer> subScorers;
+  private final boolean scoreDocsInOrder;
+  /** the scorer of all other collectors, created on demand */
+  private Scorer fallback;
+
+  /** sorted by docID */
+  private final TermScorer[] scorers;
+  /** block max freqs of {@link #scorers} */
+  private final BlockMaxFreqs[] freqs;
+  /** upper bound of the scores of {@link #scorers} */
+  private final float[] maxScores;
+  private final float[] coord;
+  /** max of {@link #coord} */
+  private final float maxCoord;
+
+  private int doc = -1;
+  private int freq;
+  private float score;
+
+  /**
+   * Returns true if {@link BlockMaxDisjunctionScorer} can score a
+   * disjunction of these scorers.
+   */
+  static boolean canScore(List<Scorer> scorers) {
+    if (scorers.size() < 2) {
+      return false;
+    }
+    for (Scorer scorer : scorers) {
+      if (!(scorer instanceof TermScorer)) {
+        return false;
+      }
+      if (((TermScorer) scorer).blockMaxFreqs() == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Construct a <code>BlockMaxDisjunctionScorer</code>.
+   * @param weight The weight to be used.
+   * @param subScorers Scorers accepted by {@link #canScore(List)}.
+   * @param coord Table of coordination factors
+   * @param scoreDocsInOrder Whether other collectors need docs in order.
+   */
+  BlockMaxDisjunctionScorer(BooleanQuery.BooleanWeight weight, List<Scorer> subScorers, float[] coord,
+      boolean scoreDocsInOrder) {
+    super(weight);
+    assert canScore(subScorers);
+    this.weight = weight;
+    this.subScorers = subScorers;
+    this.scoreDocsInOrder = scoreDocsInOrder;
+    final int numScorers = subScorers.size();
+    scorers = new TermScorer[numScorers];
+    freqs = new BlockMaxFreqs[numScorers];
+    maxScores = new float[numScorers];
+    for (int i = 0; i < numScorers; i++) {
+      scorers[i] = (TermScorer) subScorers.get(i);
+      freqs[i] = scorers[i].blockMaxFreqs();
+    }
+    this.coord = coord;
+    float max = 0f;
+    for (int i = 1; i <= numScorers; i++) {
+      max = Math.max(max, coord[i]);
+    }
+    maxCoord = max;
+  }
+
+  /** Returns the scorer of the collectors that can't skip documents. */
+  private Scorer fallback() throws IOException {
+    if (fallback == null) {
+      assert doc == -1;
+      fallback = weight.disjunctionScorer(subScorers, coord, scoreDocsInOrder);
+    }
+    return fallback;
+  }
+
+  /**
+   * Returns true if block-max WAND may skip documents instead of collecting
+   * them into this collector.
+   */
+  private boolean canSkip(Collector collector) {
+    if (fallback != null || doc != -1 || !(collector instanceof TopScoreDocCollector)
+        || ((TopScoreDocCollector) collector).isExactTotalHits()) {
+      return false;
+    }
+    // the bounds are only computed now, since they may read all norms
+    for (int i = 0; i < scorers.length; i++) {
+      maxScores[i] = scorers[i].maxScore(freqs[i].getMaxFreq());
+      if (Float.isInfinite(maxScores[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void score(Collector collector) throws IOException {
+    if (!canSkip(collector)) {
+      fallback().score(collector);
+      return;
+    }
+    collector.setScorer(this);
+    final TopScoreDocCollector topCollector = (TopScoreDocCollector) collector;
+    for (TermScorer scorer : scorers) {
+      scorer.nextDoc();
+    }
+    sort();
+
+    final int numScorers = scorers.length;
+    while (true) {
+      final float threshold = topCollector.pqTop.score;
+
+      // the pivot is the first scorer such that documents before it can't
+      // be competitive, even if they matched all previous scorers
+      int pivot = -1;
+      double sum = 0;
+      for (int i = 0; i < numScorers && scorers[i].docID() != NO_MORE_DOCS; i++) {
+        sum += maxScores[i];
+        if (bound(sum) > threshold) {
+          pivot = i;
+          break;
+        }
+      }
+      if (pivot == -1) {
+        break; // no remaining document is competitive
+      }
+      final int pivotDoc = scorers[pivot].docID();
+      while (pivot + 1 < numScorers && scorers[pivot + 1].docID() == pivotDoc) {
+        pivot++;
+      }
+
+      // check the blocks of the scorers up to the pivot, since no other
+      // scorer matches documents before the next scorer's
+      int blockEnd = pivot + 1 < numScorers ? scorers[pivot + 1].docID() - 1 : NO_MORE_DOCS;
+      double blockSum = 0;
+      for (int i = 0; i <= pivot; i++) {
+        blockEnd = Math.min(blockEnd, freqs[i].advanceBlock(pivotDoc));
+        blockSum += scorers[i].maxScore(freqs[i].getBlockMaxFreq());
+      }
+
+      if (bound(blockSum) <= threshold) {
+        if (blockEnd == NO_MORE_DOCS) {
+          break;
+        }
+        // skip the rest of the blocks
+        for (int i = 0; i <= pivot; i++) {
+          scorers[i].advance(blockEnd + 1);
+        }
+      } else if (scorers[0].docID() == pivotDoc) {
+        // all scorers up to the pivot match: score the document
+        double docScore = 0;
+        for (int i = 0; i <= pivot; i++) {
+          docScore += scorers[i].score();
+        }
+        doc = pivotDoc;
+        freq = pivot + 1;
+        score = (float) docScore * coord[freq];
+        collector.collect(doc);
+        for (int i = 0; i <= pivot; i++) {
+          scorers[i].nextDoc();
+        }
+      } else {
+        // move the scorers that are behind to the pivot
+        for (int i = 0; i <= pivot && scorers[i].docID() < pivotDoc; i++) {
+          scorers[i].advance(pivotDoc);
+        }
+      }
+      sort();
+    }
+    doc = NO_MORE_DOCS;
+  }
+
+  /** Returns an upper bound of the score of a document matching scorers with this sum of upper bounds. */
+  private float bound(double sum) {
+    return (float) sum * maxCoord * BOUND_SLACK;
+  }
+
+  /** Sorts {@link #scorers} by docID, keeping the other arrays aligned. */
+  private void sort() {
+    // only the scorers that moved are out of order: insertion sort
+    for (int i = 1; i < scorers.length; i++) {
+      final TermScorer scorer = scorers[i];
+      final BlockMaxFreqs blockMaxFreqs = freqs[i];
+      final float maxScore = maxScores[i];
+      final int scorerDoc = scorer.docID();
+      int j = i - 1;
+      for (; j >= 0 && scorers[j].docID() > scorerDoc; j--) {
+        scorers[j + 1] = scorers[j];
+        freqs[j + 1] = freqs[j];
+        maxScores[j + 1] = maxScores[j];
+      }
+      scorers[j + 1] = scorer;
+      freqs[j + 1] = blockMaxFreqs;
+      maxScores[j + 1] = maxScore;
+    }
+  }
+
+  @Override
+  public boolean score(Collector collector, int max, int firstDocID) throws IOException {
+    return fallback().score(collector, max, firstDocID);
+  }
+
+  @Override
+  public int docID() {
+    return fallback == null ? doc : fallback.docID();
+  }
+
+  @Override
+  public int nextDoc() throws IOException {
+    return fallback().nextDoc();
+  }
+
+  @Override
+  public int advance(int target) throws IOException {
+    return fallback().advance(target);
+  }
+
+  @Override
+  public float score() throws IOException {
+    return fallback == null ? score : fallback.score();
+  }
+
+  @Override
+  public int freq() throws IOException {
+    return fallback == null ? freq : fallback.freq();
+  }
+
+  @Override
+  public long cost() {
+    long sum = 0;
+    for (TermScorer scorer : scorers) {
+      sum += scorer.cost();
+    }
+    return sum;
+  }
+
+  @Override
+  public Collection<ChildScorer> getChildren() {
+    ArrayList<ChildScorer> children = new ArrayList<ChildScorer>(scorers.length);
+    for (TermScorer scorer : scorers) {
+      children.add(new ChildScorer(scorer, "SHOULD"));
+    }
+    return children;
+  }
+}
@@ -19,6 +19,7 @@ package org.apache.lucene.search;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -329,6 +330,16 @@ public class BooleanQuery extends Query implements Iterable<BooleanClause> {
       // detect and we never do so today... (ie, we only
       // return BooleanScorer for topScorer):
 
+      // Check if the postings let us skip blocks of documents that can't be competitive
+      if (topScorer && required.size() == 0 && prohibited.size() == 0 && minNrShouldMatch <= 1
+          && BlockMaxDisjunctionScorer.canScore(optional)) {
+        float coord[] = new float[optional.size()+1];
+        for (int i = 0; i < coord.length; i++) {
+          coord[i] = disableCoord ? 1.0f : coord(i, maxCoord);
+        }
+        return new BlockMaxDisjunctionScorer(this, optional, coord, scoreDocsInOrder);
+      }
+
       // Check if we can and should return a BooleanScorer
       // TODO: (LUCENE-4872) in some cases BooleanScorer may be faster for minNrShouldMatch
       // but the same is even true of pure conjunctions...
@@ -365,6 +376,18 @@ public class BooleanQuery extends Query implements Iterable<BooleanClause> {
       return new BooleanScorer2(this, disableCoord, minNrShouldMatch, required, prohibited, optional, maxCoord);
     }
     
+    /**
+     * Returns the scorer of a pure disjunction of the given scorers, which
+     * {@link BlockMaxDisjunctionScorer} falls back to when it can't skip
+     * documents.
+     */
+    Scorer disjunctionScorer(List<Scorer> optional, float[] coord, boolean scoreDocsInOrder) throws IOException {
+      if (!scoreDocsInOrder) {
+        return new BooleanScorer(this, disableCoord, minNrShouldMatch, optional, Collections.<Scorer>emptyList(), maxCoord);
+      }
+      return new DisjunctionSumScorer(this, optional.toArray(new Scorer[optional.size()]), coord);
+    }
+    
     @Override
     public boolean scoresDocsOutOfOrder() {
       for (BooleanClause c : clauses) {
@@ -105,6 +105,55 @@ public class IndexSearcher {
   /** The Similarity implementation used by this searcher. */
   private Similarity similarity = defaultSimilarity;
 
+  // the default query cache and caching policy
+  private static volatile LRUQueryCache defaultQueryCache = null;
+  private static volatile QueryCachingPolicy defaultQueryCachingPolicy = new UsageTrackingQueryCachingPolicy();
+
+  /**
+   * Expert: sets the {@link LRUQueryCache} that new searchers use, which is
+   * <code>null</code> by default to not cache filters. A single cache is
+   * meant to be shared by all searchers, so that cached filters are reused
+   * across reopens of the same index.
+   * @lucene.experimental
+   */
+  public static void setDefaultQueryCache(LRUQueryCache queryCache) {
+    defaultQueryCache = queryCache;
+  }
+
+  /**
+   * Expert: returns the {@link LRUQueryCache} that new searchers use.
+   * @lucene.experimental
+   */
+  public static LRUQueryCache getDefaultQueryCache() {
+    return defaultQueryCache;
+  }
+
+  /**
+   * Expert: sets the {@link QueryCachingPolicy} that new searchers use, which
+   * is a {@link UsageTrackingQueryCachingPolicy} by default.
+   * @lucene.experimental
+   */
+  public static void setDefaultQueryCachingPolicy(QueryCachingPolicy queryCachingPolicy) {
+    if (queryCachingPolicy == null) {
+      throw new IllegalArgumentException("queryCachingPolicy must not be null");
+    }
+    defaultQueryCachingPolicy = queryCachingPolicy;
+  }
+
+  /**
+   * Expert: returns the {@link QueryCachingPolicy} that new searchers use.
+   * @lucene.experimental
+   */
+  public static QueryCachingPolicy getDefaultQueryCachingPolicy() {
+    return defaultQueryCachingPolicy;
+  }
+
+  /** The query cache of this searcher, or null to not cache. */
+  private LRUQueryCache queryCache = defaultQueryCache;
+
+  /** The policy that decides which filters to cache. */
+  private QueryCachingPolicy queryCachingPolicy = defaultQueryCachingPolicy;
+
   /** Creates a searcher searching the provided index. */
   public IndexSearcher(IndexReader r) {
     this(r, null);
@@ -215,9 +264,72 @@ public class IndexSearcher {
     return similarity;
   }
   
+  /**
+   * Expert: sets the {@link LRUQueryCache} that caches the filters of this
+   * searcher, or <code>null</code> to not cache them.
+   * @lucene.experimental
+   */
+  public void setQueryCache(LRUQueryCache queryCache) {
+    this.queryCache = queryCache;
+  }
+
+  /**
+   * Expert: returns the {@link LRUQueryCache} of this searcher, or
+   * <code>null</code> if filters are not cached.
+   * @lucene.experimental
+   */
+  public LRUQueryCache getQueryCache() {
+    return queryCache;
+  }
+
+  /**
+   * Expert: sets the {@link QueryCachingPolicy} that decides which filters
+   * are cached in the {@link #getQueryCache() query cache}.
+   * @lucene.experimental
+   */
+  public void setQueryCachingPolicy(QueryCachingPolicy queryCachingPolicy) {
+    if (queryCachingPolicy == null) {
+      throw new IllegalArgumentException("queryCachingPolicy must not be null");
+    }
+    this.queryCachingPolicy = queryCachingPolicy;
+  }
+
+  /**
+   * Expert: returns the {@link QueryCachingPolicy} of this searcher.
+   * @lucene.experimental
+   */
+  public QueryCachingPolicy getQueryCachingPolicy() {
+    return queryCachingPolicy;
+  }
+
   /** @lucene.internal */
   protected Query wrapFilter(Query query, Filter filter) {
-    return (filter == null) ? query : new FilteredQuery(query, filter);
+    if (filter == null) {
+      return query;
+    }
+    if (queryCache != null) {
+      filter = queryCache.doCache(filter, queryCachingPolicy);
+    }
+    return new FilteredQuery(query, filter);
+  }
+
+  /**
+   * Returns the number of documents that match <code>query</code>. If a
+   * {@link #getQueryCache() query cache} is set, the matching documents of
+   * each segment are cached as for a filter and counted from the cache.
+   */
+  public int count(Query query) throws IOException {
+    if (queryCache == null) {
+      final TotalHitCountCollector collector = new TotalHitCountCollector();
+      search(query, collector);
+      return collector.getTotalHits();
+    }
+    final Filter filter = queryCache.doCache(new QueryWrapperFilter(query), queryCachingPolicy);
+    int count = 0;
+    for (AtomicReaderContext context : leafContexts) {
+      count += queryCache.count(filter, context);
+    }
+    return count;
   }
 
   /** Finds the top <code>n</code>
@@ -899,7 +1011,8 @@ public class IndexSearcher {
    * @lucene.experimental
    */
   public static class LeafSlice {
-    final AtomicReaderContext[] leaves;
+    /** The leaves that make up this slice, in docBase order. */
+    public final AtomicReaderContext[] leaves;
     
     public LeafSlice(AtomicReaderContext... leaves) {
       this.leaves = leaves;
@@ -0,0 +1,386 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * A cache of the {@link DocIdSet}s of {@link Filter}s per segment, shared by
+ * all the searchers that {@link #doCache wrap their filters} with it and
+ * bounded both in number of filters and in memory.
+ * <p>
+ * {@link DocIdSet}s are cached per segment core, without deletions, so that
+ * they keep being used by the readers that are reopened with
+ * {@link org.apache.lucene.index.DirectoryReader#openIfChanged}, and they are
+ * released when the segment core is closed. When the cache is full, the least
+ * recently used filter is evicted, on all segments. Which filters are cached
+ * on which segments is decided by a {@link QueryCachingPolicy}.
+ * <p>
+ * The cache is usually set on {@link IndexSearcher}s with
+ * {@link IndexSearcher#setQueryCache}, which caches the filters given to its
+ * search methods and the counts of {@link IndexSearcher#count}. Scoring
+ * queries are not cached since their scores depend on the searcher: wrap them
+ * in a {@link QueryWrapperFilter} to cache the documents they match.
+ *
+ * @lucene.experimental
+ */
+public class LRUQueryCache {
+
+  /** Estimate of the memory used by a filter key, as filters don't tell. */
+  static final long FILTER_DEFAULT_RAM_BYTES_USED = 1024;
+
+  // memory used by the maps for one entry, roughly
+  static final long HASHTABLE_RAM_BYTES_PER_ENTRY =
+      2 * RamUsageEstimator.NUM_BYTES_OBJECT_REF // key + value
+      * 2; // hash tables need to be oversized to avoid collisions, assume 2x capacity
+
+  static final long LINKED_HASHTABLE_RAM_BYTES_PER_ENTRY =
+      HASHTABLE_RAM_BYTES_PER_ENTRY
+      + 2 * RamUsageEstimator.NUM_BYTES_OBJECT_REF; // previous & next references
+
+  private final int maxSize;
+  private final long maxRamBytesUsed;
+  // filters in access order, the least recently used first
+  private final Map<Filter,Filter> uniqueFilters = new LinkedHashMap<Filter,Filter>(16, 0.75f, true);
+  // segment core key -> cached DocIdSets of the segment
+  private final Map<Object,Map<Filter,CacheEntry>> cache = new HashMap<Object,Map<Filter,CacheEntry>>();
+
+  private long ramBytesUsed;
+  private long hitCount;
+  private long missCount;
+  private long cacheCount;
+  private long evictionCount;
+
+  /**
+   * Creates a cache that holds the {@link DocIdSet}s of at most
+   * <code>maxSize</code> filters, using at most <code>maxRamBytesUsed</code>
+   * bytes of memory.
+   */
+  public LRUQueryCache(int maxSize, long maxRamBytesUsed) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("maxSize must be >= 0 (got " + maxSize + ")");
+    }
+    if (maxRamBytesUsed < 0) {
+      throw new IllegalArgumentException("maxRamBytesUsed must be >= 0 (got " + maxRamBytesUsed + ")");
+    }
+    this.maxSize = maxSize;
+    this.maxRamBytesUsed = maxRamBytesUsed;
+  }
+
+  /** A cached {@link DocIdSet}, with its number of documents. */
+  private static final class CacheEntry {
+    final DocIdSet docIdSet;
+    final int count;
+    final long ramBytesUsed;
+
+    CacheEntry(DocIdSet docIdSet, int count, long ramBytesUsed) {
+      this.docIdSet = docIdSet;
+      this.count = count;
+      this.ramBytesUsed = ramBytesUsed;
+    }
+  }
+
+  private synchronized CacheEntry get(Filter filter, Object coreKey) {
+    final Map<Filter,CacheEntry> leafCache = cache.get(coreKey);
+    if (leafCache == null) {
+      missCount++;
+      return null;
+    }
+    // touch the filter so that it becomes the most recently used
+    final Filter singleton = uniqueFilters.get(filter);
+    if (singleton == null) {
+      missCount++;
+      return null;
+    }
+    final CacheEntry entry = leafCache.get(singleton);
+    if (entry == null) {
+      missCount++;
+    } else {
+      hitCount++;
+    }
+    return entry;
+  }
+
+  private synchronized void put(Filter filter, AtomicReader reader, CacheEntry entry) {
+    Filter singleton = uniqueFilters.get(filter);
+    if (singleton == null) {
+      uniqueFilters.put(filter, filter);
+      ramBytesUsed += LINKED_HASHTABLE_RAM_BYTES_PER_ENTRY + FILTER_DEFAULT_RAM_BYTES_USED;
+      singleton = filter;
+    }
+    final Object coreKey = reader.getCoreCacheKey();
+    Map<Filter,CacheEntry> leafCache = cache.get(coreKey);
+    if (leafCache == null) {
+      leafCache = new HashMap<Filter,CacheEntry>();
+      cache.put(coreKey, leafCache);
+      ramBytesUsed += HASHTABLE_RAM_BYTES_PER_ENTRY;
+      addClosedListener(reader);
+    }
+    final CacheEntry previous = leafCache.put(singleton, entry);
+    if (previous == null) {
+      ramBytesUsed += HASHTABLE_RAM_BYTES_PER_ENTRY + entry.ramBytesUsed;
+      cacheCount++;
+    } else {
+      // computed concurrently by another thread
+      ramBytesUsed += entry.ramBytesUsed - previous.ramBytesUsed;
+    }
+    evictIfNecessary();
+  }
+
+  private void addClosedListener(AtomicReader reader) {
+    if (reader instanceof SegmentReader) {
+      ((SegmentReader) reader).addCoreClosedListener(new SegmentReader.CoreClosedListener() {
+        @Override
+        public void onClose(SegmentReader owner) {
+          clearCoreCacheKey(owner.getCoreCacheKey());
+        }
+      });
+    } else {
+      // a slow reader of some sort: clear its entries when the reader that
+      // is its core key, or the reader itself, is closed
+      final Object coreKey = reader.getCoreCacheKey();
+      final IndexReader keyReader = coreKey instanceof IndexReader ? (IndexReader) coreKey : reader;
+      keyReader.addReaderClosedListener(new IndexReader.ReaderClosedListener() {
+        @Override
+        public void onClose(IndexReader closed) {
+          clearCoreCacheKey(coreKey);
+        }
+      });
+    }
+  }
+
+  private void evictIfNecessary() {
+    final Iterator<Filter> iterator = uniqueFilters.keySet().iterator();
+    while ((uniqueFilters.size() > maxSize || ramBytesUsed > maxRamBytesUsed) && iterator.hasNext()) {
+      final Filter eldest = iterator.next();
+      iterator.remove();
+      onEviction(eldest);
+    }
+  }
+
+  private void onEviction(Filter filter) {
+    ramBytesUsed -= LINKED_HASHTABLE_RAM_BYTES_PER_ENTRY + FILTER_DEFAULT_RAM_BYTES_USED;
+    for (Map<Filter,CacheEntry> leafCache : cache.values()) {
+      final CacheEntry entry = leafCache.remove(filter);
+      if (entry != null) {
+        ramBytesUsed -= HASHTABLE_RAM_BYTES_PER_ENTRY + entry.ramBytesUsed;
+        evictionCount++;
+      }
+    }
+  }
+
+  /** Removes all cached {@link DocIdSet}s of the segment core with this key. */
+  public synchronized void clearCoreCacheKey(Object coreKey) {
+    final Map<Filter,CacheEntry> leafCache = cache.remove(coreKey);
+    if (leafCache != null) {
+      ramBytesUsed -= HASHTABLE_RAM_BYTES_PER_ENTRY;
+      for (CacheEntry entry : leafCache.values()) {
+        ramBytesUsed -= HASHTABLE_RAM_BYTES_PER_ENTRY + entry.ramBytesUsed;
+      }
+      evictionCount += leafCache.size();
+    }
+  }
+
+  /** Removes all cached {@link DocIdSet}s of this filter. */
+  public synchronized void clearFilter(Filter filter) {
+    final Filter singleton = uniqueFilters.remove(filter);
+    if (singleton != null) {
+      onEviction(singleton);
+    }
+  }
+
+  /** Removes everything from the cache. */
+  public synchronized void clear() {
+    cache.clear();
+    uniqueFilters.clear();
+    ramBytesUsed = 0;
+  }
+
+  /**
+   * Returns a filter that caches the {@link DocIdSet}s of <code>filter</code>
+   * in this cache, on the segments that <code>policy</code> selects.
+   */
+  public Filter doCache(Filter filter, QueryCachingPolicy policy) {
+    if (filter instanceof CachingWrapperFilter && ((CachingWrapperFilter) filter).cache() == this) {
+      return filter;
+    }
+    return new CachingWrapperFilter(filter, policy);
+  }
+
+  /**
+   * Returns the number of documents that match <code>filter</code> and are
+   * not deleted on the segment, using the cached {@link DocIdSet} if the
+   * filter was cached by {@link #doCache} and the policy.
+   */
+  int count(Filter filter, AtomicReaderContext context) throws IOException {
+    final Bits liveDocs = context.reader().getLiveDocs();
+    if (filter instanceof CachingWrapperFilter && ((CachingWrapperFilter) filter).cache() == this) {
+      final CachingWrapperFilter cachingFilter = (CachingWrapperFilter) filter;
+      final CacheEntry entry = cachingFilter.getCacheEntry(context);
+      if (entry == null) {
+        // not cached: the wrapper would look it up, and count a use, again
+        return count(cachingFilter.in.getDocIdSet(context, liveDocs));
+      }
+      return liveDocs == null ? entry.count : count(BitsFilteredDocIdSet.wrap(entry.docIdSet, liveDocs));
+    }
+    return count(filter.getDocIdSet(context, liveDocs));
+  }
+
+  private static int count(DocIdSet docIdSet) throws IOException {
+    if (docIdSet == null) {
+      return 0;
+    }
+    final DocIdSetIterator it = docIdSet.iterator();
+    if (it == null) {
+      return 0;
+    }
+    int count = 0;
+    while (it.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+      count++;
+    }
+    return count;
+  }
+
+  /** Computes the entry to cache for a {@link DocIdSet} of a filter. */
+  private static CacheEntry newCacheEntry(DocIdSet docIdSet, AtomicReader reader) throws IOException {
+    final DocIdSetIterator it = docIdSet == null ? null : docIdSet.iterator();
+    if (it == null) {
+      return new CacheEntry(DocIdSet.EMPTY_DOCIDSET, 0, 0);
+    }
+    final FixedBitSet bits = new FixedBitSet(reader.maxDoc());
+    bits.or(it);
+    final long ramBytesUsed = RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.sizeOf(bits.getBits());
+    return new CacheEntry(bits, bits.cardinality(), ramBytesUsed);
+  }
+
+  /** Returns the memory used by the cache, roughly. */
+  public synchronized long ramBytesUsed() {
+    return ramBytesUsed;
+  }
+
+  /** Returns the number of filters in the cache. */
+  public synchronized int getFilterCount() {
+    return uniqueFilters.size();
+  }
+
+  /** Returns the number of {@link DocIdSet}s in the cache. */
+  public synchronized long getCacheSize() {
+    long size = 0;
+    for (Map<Filter,CacheEntry> leafCache : cache.values()) {
+      size += leafCache.size();
+    }
+    return size;
+  }
+
+  /** Returns how many times a {@link DocIdSet} was found in the cache. */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns how many times a {@link DocIdSet} was looked up in the cache but not found. */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns how many {@link DocIdSet}s were ever added to the cache. */
+  public synchronized long getCacheCount() {
+    return cacheCount;
+  }
+
+  /** Returns how many {@link DocIdSet}s were ever removed from the cache, because it was full or segments were closed. */
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return getClass().getSimpleName() + "(maxSize=" + maxSize + ", maxRamBytesUsed=" + maxRamBytesUsed
+        + ", filters=" + uniqueFilters.size() + ", ramBytesUsed=" + ramBytesUsed
+        + ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + ")";
+  }
+
+  private class CachingWrapperFilter extends Filter {
+
+    private final Filter in;
+    private final QueryCachingPolicy policy;
+
+    CachingWrapperFilter(Filter in, QueryCachingPolicy policy) {
+      this.in = in;
+      this.policy = policy;
+    }
+
+    LRUQueryCache cache() {
+      return LRUQueryCache.this;
+    }
+
+    /** Returns the cached entry for the segment, computing it if the policy wants it cached. */
+    CacheEntry getCacheEntry(AtomicReaderContext context) throws IOException {
+      if (context.ord == 0) {
+        // the first segment: once per search
+        policy.onUse(in);
+      }
+      final AtomicReader reader = context.reader();
+      CacheEntry entry = get(in, reader.getCoreCacheKey());
+      if (entry == null && policy.shouldCache(in, context)) {
+        entry = newCacheEntry(in.getDocIdSet(context, null), reader);
+        put(in, reader, entry);
+      }
+      return entry;
+    }
+
+    @Override
+    public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+      final CacheEntry entry = getCacheEntry(context);
+      if (entry == null) {
+        return in.getDocIdSet(context, acceptDocs);
+      }
+      return BitsFilteredDocIdSet.wrap(entry.docIdSet, acceptDocs);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof CachingWrapperFilter)) {
+        return false;
+      }
+      final CachingWrapperFilter other = (CachingWrapperFilter) obj;
+      return cache() == other.cache() && in.equals(other.in);
+    }
+
+    @Override
+    public int hashCode() {
+      return in.hashCode() ^ 0x4B3D7A1F;
+    }
+
+    @Override
+    public String toString() {
+      return "LRUQueryCache(" + in + ")";
+    }
+  }
+}
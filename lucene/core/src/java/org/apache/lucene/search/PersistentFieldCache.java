@@ -0,0 +1,952 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FilterAtomicReader;
+import org.apache.lucene.index.FilterDirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CloseableThreadLocal;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.packed.MonotonicBlockPackedReader;
+import org.apache.lucene.util.packed.MonotonicBlockPackedWriter;
+import org.apache.lucene.util.packed.PackedInts;
+
+/**
+ * A {@link FieldCache} that writes the values it uninverts to files in a
+ * {@link Directory}, one file per segment and field, and reads them from
+ * these files instead of loading them on the heap.
+ * <p>
+ * Ints, longs, floats, doubles and terms indexes of fields that don't have
+ * doc values are written with {@link PackedInts} and read through
+ * {@link PackedInts#getDirectReaderNoHeader direct readers}, so with a
+ * {@link org.apache.lucene.store.MMapDirectory} they live in the page cache
+ * rather than on the Java heap. Files are named after the segment, so that
+ * they are reused when the index is opened again, e.g. after a restart or on
+ * a replica that copied them along with the index, rather than uninverting
+ * again. A file is only reused if its segment still has the same creation
+ * timestamp, number of documents and statistics for the field; otherwise it
+ * is written again. Everything else, including values uninverted with custom parsers,
+ * is delegated to an on-heap {@link FieldCache}.
+ * <p>
+ * Since sorting and function queries read values from
+ * {@link FieldCache#DEFAULT}, which uses doc values when a field has them,
+ * the way to use this cache for them is to {@link #wrap wrap} the reader so
+ * that it exposes the values of this cache as doc values:
+ * <pre class="prettyprint">
+ *   PersistentFieldCache cache = new PersistentFieldCache(MMapDirectory.open(new File("/path/to/cache")));
+ *   Map&lt;String,SortField.Type&gt; fields = new HashMap&lt;String,SortField.Type&gt;();
+ *   fields.put("price", SortField.Type.INT);
+ *   fields.put("title", SortField.Type.STRING);
+ *   DirectoryReader reader = cache.wrap(DirectoryReader.open(indexDir), fields);
+ * </pre>
+ * The directory must only be used by one index and one process at a time.
+ * Files of segments that were merged away are not deleted automatically:
+ * call {@link #deleteUnusedFiles} from time to time.
+ * <p>
+ * <b>NOTE</b>: the values are read with one file handle clone per thread
+ * and per segment, which makes each access slower than reading from an
+ * array: this is a trade-off between heap usage and search speed.
+ *
+ * @lucene.experimental
+ */
+public class PersistentFieldCache implements FieldCache {
+
+  /** Extension of the files written by this cache. */
+  public static final String EXTENSION = "fc";
+
+  static final String CODEC_NAME = "PersistentFieldCache";
+  static final int VERSION_START = 0;
+  static final int VERSION_CURRENT = VERSION_START;
+
+  // written last so that partially written files are detected
+  static final int END_MARKER = 0x3FC0DE;
+
+  static final int BLOCK_SIZE = 4096;
+
+  private final Directory dir;
+  private final FieldCacheImpl delegate = new FieldCacheImpl();
+  // uninverts values before they are written, and is purged right after
+  private final FieldCacheImpl uninverter = new FieldCacheImpl();
+  private final Map<Object,Map<Key,Object>> cache = new HashMap<Object,Map<Key,Object>>();
+  // for testing
+  final AtomicInteger filesWritten = new AtomicInteger();
+
+  /** Creates a cache that writes its files to <code>dir</code>. */
+  public PersistentFieldCache(Directory dir) {
+    this.dir = dir;
+  }
+
+  /** Returns the directory the files are written to. */
+  public Directory getDirectory() {
+    return dir;
+  }
+
+  /** Key of a cached value, also used to name its file. */
+  private static final class Key {
+    final Class<?> type;
+    final String field;
+    final String parser;
+
+    Key(Class<?> type, String field, String parser) {
+      this.type = type;
+      this.field = field;
+      this.parser = parser;
+    }
+
+    // prefix of the names of the files of this key on the segment
+    String filePrefix(String segmentName) {
+      final StringBuilder sb = new StringBuilder(segmentName).append('_');
+      for (int i = 0; i < field.length() && i < 32; i++) {
+        final char c = field.charAt(i);
+        if (Character.isLetterOrDigit(c) && c < 128) {
+          sb.append(c);
+        }
+      }
+      sb.append('_').append(type.getSimpleName().toLowerCase());
+      sb.append('_').append(Long.toString(toString().hashCode() & 0xFFFFFFFFL, Character.MAX_RADIX));
+      return sb.append('_').toString();
+    }
+
+    // files are never overwritten: the stats are part of the name so that a
+    // new file is written when a segment with the same name has other content
+    String fileName(String segmentName, long[] stats) {
+      long hash = 0;
+      for (long stat : stats) {
+        hash = 31 * hash + stat;
+      }
+      return filePrefix(segmentName) + Long.toString(hash & Long.MAX_VALUE, Character.MAX_RADIX) + "." + EXTENSION;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return type == other.type && field.equals(other.field) && parser.equals(other.parser);
+    }
+
+    @Override
+    public int hashCode() {
+      return (type.hashCode() * 31 + field.hashCode()) * 31 + parser.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return type.getName() + "/" + parser + "/" + field;
+    }
+  }
+
+  /** Uninverts a field and writes its values, then reads them back. */
+  private static abstract class Loader {
+    abstract void write(AtomicReader reader, IndexOutput out) throws IOException;
+    abstract Closeable read(IndexInput in, int maxDoc, int packedIntsVersion) throws IOException;
+  }
+
+  // names of the parsers whose values can be written: custom parsers are not
+  // known to behave the same the next time the index is opened
+  private static String parserName(Parser parser) {
+    if (parser == null) {
+      return "auto";
+    } else if (parser == DEFAULT_INT_PARSER || parser == DEFAULT_LONG_PARSER
+        || parser == DEFAULT_FLOAT_PARSER || parser == DEFAULT_DOUBLE_PARSER) {
+      return "default";
+    } else if (parser == NUMERIC_UTILS_INT_PARSER || parser == NUMERIC_UTILS_LONG_PARSER
+        || parser == NUMERIC_UTILS_FLOAT_PARSER || parser == NUMERIC_UTILS_DOUBLE_PARSER) {
+      return "numeric";
+    }
+    return null;
+  }
+
+  // returns the key of the values of the field if they can be written to a file
+  private static Key key(AtomicReader reader, String field, Class<?> type, Parser parser) throws IOException {
+    final String parserName = parserName(parser);
+    if (parserName == null || !(reader instanceof SegmentReader)) {
+      return null;
+    }
+    final FieldInfo info = reader.getFieldInfos().fieldInfo(field);
+    if (info == null || info.hasDocValues() || !info.isIndexed() || reader.terms(field) == null) {
+      // let the delegate return empty values or throw an exception
+      return null;
+    }
+    return new Key(type, field, parserName);
+  }
+
+  private Object get(SegmentReader reader, Key key, Loader loader) throws IOException {
+    final Object readerKey = reader.getCoreCacheKey();
+    Object value;
+    synchronized (cache) {
+      Map<Key,Object> innerCache = cache.get(readerKey);
+      if (innerCache == null) {
+        innerCache = new HashMap<Key,Object>();
+        cache.put(readerKey, innerCache);
+        reader.addCoreClosedListener(purgeCore);
+      }
+      value = innerCache.get(key);
+      if (value == null) {
+        value = new CreationPlaceholder();
+        innerCache.put(key, value);
+      }
+    }
+    if (value instanceof CreationPlaceholder) {
+      synchronized (value) {
+        final CreationPlaceholder progress = (CreationPlaceholder) value;
+        if (progress.value == null) {
+          progress.value = load(reader, key, loader);
+          synchronized (cache) {
+            final Map<Key,Object> innerCache = cache.get(readerKey);
+            if (innerCache != null) {
+              innerCache.put(key, progress.value);
+            }
+          }
+        }
+        return progress.value;
+      }
+    }
+    return value;
+  }
+
+  private Closeable load(SegmentReader reader, Key key, Loader loader) throws IOException {
+    final long[] stats = stats(reader, key.field);
+    final String fileName = key.fileName(reader.getSegmentName(), stats);
+    if (dir.fileExists(fileName)) {
+      final Closeable values = open(fileName, key, stats, reader.maxDoc(), loader);
+      if (values != null) {
+        return values;
+      }
+      // partially written: write it again
+      dir.deleteFile(fileName);
+    } else {
+      // files of a former segment with the same name
+      final String prefix = key.filePrefix(reader.getSegmentName());
+      for (String file : dir.listAll()) {
+        if (file.startsWith(prefix) && file.endsWith("." + EXTENSION)) {
+          IOUtils.deleteFilesIgnoringExceptions(dir, file);
+        }
+      }
+    }
+    write(fileName, reader, key, stats, loader);
+    final Closeable values = open(fileName, key, stats, reader.maxDoc(), loader);
+    if (values == null) {
+      throw new CorruptIndexException("could not read back " + fileName + " after writing it");
+    }
+    return values;
+  }
+
+  // identifies the content of the field on the segment, as segment names are
+  // reused when an index is created again
+  private static long[] stats(SegmentReader reader, String field) throws IOException {
+    final String timestamp = reader.getSegmentInfo().info.getDiagnostics().get("timestamp");
+    final Terms terms = reader.terms(field);
+    final BytesRef firstTerm = terms.iterator(null).next();
+    return new long[] {
+        timestamp == null ? -1 : Long.parseLong(timestamp),
+        reader.maxDoc(), terms.getDocCount(), terms.size(), terms.getSumDocFreq(),
+        firstTerm == null ? 0 : firstTerm.hashCode() };
+  }
+
+  private void write(String fileName, SegmentReader reader, Key key, long[] stats, Loader loader) throws IOException {
+    final IndexOutput out = dir.createOutput(fileName, IOContext.DEFAULT);
+    boolean success = false;
+    try {
+      CodecUtil.writeHeader(out, CODEC_NAME, VERSION_CURRENT);
+      out.writeString(key.toString());
+      for (long stat : stats) {
+        out.writeLong(stat);
+      }
+      out.writeVInt(PackedInts.VERSION_CURRENT);
+      loader.write(reader, out);
+      out.writeInt(END_MARKER);
+      filesWritten.incrementAndGet();
+      success = true;
+    } finally {
+      uninverter.purge(reader);
+      if (success) {
+        IOUtils.close(out);
+      } else {
+        IOUtils.closeWhileHandlingException(out);
+        IOUtils.deleteFilesIgnoringExceptions(dir, fileName);
+      }
+    }
+  }
+
+  // returns null if the file does not hold the values of this segment
+  private Closeable open(String fileName, Key key, long[] stats, int maxDoc, Loader loader) throws IOException {
+    final IndexInput in = dir.openInput(fileName, IOContext.READ);
+    boolean success = false;
+    try {
+      if (in.length() < 4) {
+        return null;
+      }
+      in.seek(in.length() - 4);
+      if (in.readInt() != END_MARKER) {
+        return null;
+      }
+      in.seek(0);
+      try {
+        CodecUtil.checkHeader(in, CODEC_NAME, VERSION_START, VERSION_CURRENT);
+      } catch (CorruptIndexException e) {
+        return null;
+      }
+      if (!key.toString().equals(in.readString())) {
+        return null;
+      }
+      for (long stat : stats) {
+        if (in.readLong() != stat) {
+          return null;
+        }
+      }
+      final int packedIntsVersion = in.readVInt();
+      PackedInts.checkVersion(packedIntsVersion);
+      final Closeable values = loader.read(in, maxDoc, packedIntsVersion);
+      success = true;
+      return values;
+    } catch (EOFException e) {
+      return null;
+    } finally {
+      if (!success) {
+        IOUtils.closeWhileHandlingException(in);
+      }
+    }
+  }
+
+  /** Values of a numeric field, read from a file. */
+  private static final class FileNumericDocValues extends NumericDocValues implements Closeable {
+    private final IndexInput in;
+    private final long minValue;
+    private final CloseableThreadLocal<PackedInts.Reader> values;
+
+    FileNumericDocValues(final IndexInput in, final int maxDoc, final int packedIntsVersion) throws IOException {
+      this.in = in;
+      minValue = in.readLong();
+      final int bitsPerValue = in.readVInt();
+      final long start = in.getFilePointer();
+      values = new CloseableThreadLocal<PackedInts.Reader>() {
+        @Override
+        protected PackedInts.Reader initialValue() {
+          final IndexInput clone = in.clone();
+          try {
+            clone.seek(start);
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+          return PackedInts.getDirectReaderNoHeader(clone, PackedInts.Format.PACKED, packedIntsVersion, maxDoc, bitsPerValue);
+        }
+      };
+    }
+
+    @Override
+    public long get(int docID) {
+      return minValue + values.get().get(docID);
+    }
+
+    @Override
+    public void close() throws IOException {
+      values.close();
+      in.close();
+    }
+  }
+
+  /** Loads numeric values as longs. */
+  private abstract class NumericLoader extends Loader {
+
+    abstract NumericDocValues uninvert(AtomicReader reader) throws IOException;
+
+    @Override
+    void write(AtomicReader reader, IndexOutput out) throws IOException {
+      final NumericDocValues values = uninvert(reader);
+      final int maxDoc = reader.maxDoc();
+      long minValue = Long.MAX_VALUE;
+      long maxValue = Long.MIN_VALUE;
+      for (int doc = 0; doc < maxDoc; doc++) {
+        final long v = values.get(doc);
+        minValue = Math.min(minValue, v);
+        maxValue = Math.max(maxValue, v);
+      }
+      if (maxDoc == 0) {
+        minValue = maxValue = 0;
+      }
+      final long delta = maxValue - minValue;
+      final int bitsPerValue;
+      if (delta < 0) {
+        // overflow
+        minValue = 0;
+        bitsPerValue = 64;
+      } else {
+        bitsPerValue = PackedInts.bitsRequired(delta);
+      }
+      out.writeLong(minValue);
+      out.writeVInt(bitsPerValue);
+      final PackedInts.Writer writer = PackedInts.getWriterNoHeader(out, PackedInts.Format.PACKED, maxDoc, bitsPerValue, PackedInts.DEFAULT_BUFFER_SIZE);
+      for (int doc = 0; doc < maxDoc; doc++) {
+        writer.add(values.get(doc) - minValue);
+      }
+      writer.finish();
+    }
+
+    @Override
+    Closeable read(IndexInput in, int maxDoc, int packedIntsVersion) throws IOException {
+      return new FileNumericDocValues(in, maxDoc, packedIntsVersion);
+    }
+  }
+
+  private NumericDocValues getNumeric(AtomicReader reader, Key key, NumericLoader loader) throws IOException {
+    return (NumericDocValues) get((SegmentReader) reader, key, loader);
+  }
+
+  /** Terms index read from a file. */
+  private static final class FileSortedDocValues extends SortedDocValues implements Closeable {
+
+    private static final class PerThread {
+      PackedInts.Reader ords;
+      IndexInput bytes;
+    }
+
+    private final IndexInput in;
+    private final int valueCount;
+    private final MonotonicBlockPackedReader addresses;
+    private final long bytesStart;
+    private final CloseableThreadLocal<PerThread> perThread;
+
+    FileSortedDocValues(final IndexInput in, final int maxDoc, final int packedIntsVersion) throws IOException {
+      this.in = in;
+      valueCount = in.readVInt();
+      final int bitsPerValue = PackedInts.bitsRequired(valueCount);
+      final long ordsStart = in.getFilePointer();
+      in.seek(ordsStart + PackedInts.Format.PACKED.byteCount(packedIntsVersion, maxDoc, bitsPerValue));
+      addresses = new MonotonicBlockPackedReader(in, packedIntsVersion, BLOCK_SIZE, valueCount + 1L, false);
+      in.readVLong(); // number of bytes of the terms
+      bytesStart = in.getFilePointer();
+      perThread = new CloseableThreadLocal<PerThread>() {
+        @Override
+        protected PerThread initialValue() {
+          final PerThread state = new PerThread();
+          final IndexInput ords = in.clone();
+          try {
+            ords.seek(ordsStart);
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+          state.ords = PackedInts.getDirectReaderNoHeader(ords, PackedInts.Format.PACKED, packedIntsVersion, maxDoc, bitsPerValue);
+          state.bytes = in.clone();
+          return state;
+        }
+      };
+    }
+
+    @Override
+    public int getOrd(int docID) {
+      // ords are stored +1 so that documents without a value are 0
+      return (int) perThread.get().ords.get(docID) - 1;
+    }
+
+    @Override
+    public void lookupOrd(int ord, BytesRef result) {
+      final long start = addresses.get(ord);
+      final int length = (int) (addresses.get(ord + 1) - start);
+      if (result.bytes.length < length) {
+        result.bytes = new byte[ArrayUtil.oversize(length, 1)];
+      }
+      result.offset = 0;
+      result.length = length;
+      final IndexInput bytes = perThread.get().bytes;
+      try {
+        bytes.seek(bytesStart + start);
+        bytes.readBytes(result.bytes, 0, length);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public int getValueCount() {
+      return valueCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+      perThread.close();
+      in.close();
+    }
+  }
+
+  private class SortedLoader extends Loader {
+    private final String field;
+
+    SortedLoader(String field) {
+      this.field = field;
+    }
+
+    @Override
+    void write(AtomicReader reader, IndexOutput out) throws IOException {
+      final SortedDocValues values = uninverter.getTermsIndex(reader, field, PackedInts.COMPACT);
+      final int maxDoc = reader.maxDoc();
+      final int valueCount = values.getValueCount();
+      out.writeVInt(valueCount);
+      final PackedInts.Writer ords = PackedInts.getWriterNoHeader(out, PackedInts.Format.PACKED, maxDoc, PackedInts.bitsRequired(valueCount), PackedInts.DEFAULT_BUFFER_SIZE);
+      for (int doc = 0; doc < maxDoc; doc++) {
+        ords.add(values.getOrd(doc) + 1);
+      }
+      ords.finish();
+      final BytesRef scratch = new BytesRef();
+      final MonotonicBlockPackedWriter addresses = new MonotonicBlockPackedWriter(out, BLOCK_SIZE);
+      long address = 0;
+      for (int ord = 0; ord < valueCount; ord++) {
+        addresses.add(address);
+        values.lookupOrd(ord, scratch);
+        address += scratch.length;
+      }
+      addresses.add(address);
+      addresses.finish();
+      out.writeVLong(address);
+      for (int ord = 0; ord < valueCount; ord++) {
+        values.lookupOrd(ord, scratch);
+        out.writeBytes(scratch.bytes, scratch.offset, scratch.length);
+      }
+    }
+
+    @Override
+    Closeable read(IndexInput in, int maxDoc, int packedIntsVersion) throws IOException {
+      return new FileSortedDocValues(in, maxDoc, packedIntsVersion);
+    }
+  }
+
+  @Override
+  public Bits getDocsWithField(AtomicReader reader, String field) throws IOException {
+    return delegate.getDocsWithField(reader, field);
+  }
+
+  @Override
+  public Bytes getBytes(AtomicReader reader, String field, boolean setDocsWithField) throws IOException {
+    return delegate.getBytes(reader, field, setDocsWithField);
+  }
+
+  @Override
+  public Bytes getBytes(AtomicReader reader, String field, ByteParser parser, boolean setDocsWithField) throws IOException {
+    return delegate.getBytes(reader, field, parser, setDocsWithField);
+  }
+
+  @Override
+  public Shorts getShorts(AtomicReader reader, String field, boolean setDocsWithField) throws IOException {
+    return delegate.getShorts(reader, field, setDocsWithField);
+  }
+
+  @Override
+  public Shorts getShorts(AtomicReader reader, String field, ShortParser parser, boolean setDocsWithField) throws IOException {
+    return delegate.getShorts(reader, field, parser, setDocsWithField);
+  }
+
+  @Override
+  public Ints getInts(AtomicReader reader, String field, boolean setDocsWithField) throws IOException {
+    return getInts(reader, field, null, setDocsWithField);
+  }
+
+  @Override
+  public Ints getInts(AtomicReader reader, final String field, final IntParser parser, final boolean setDocsWithField) throws IOException {
+    final Key key = key(reader, field, Integer.TYPE, parser);
+    if (key == null) {
+      return delegate.getInts(reader, field, parser, setDocsWithField);
+    }
+    final NumericDocValues values = getNumeric(reader, key, new NumericLoader() {
+      @Override
+      NumericDocValues uninvert(AtomicReader reader) throws IOException {
+        final Ints ints = uninverter.getInts(reader, field, parser, false);
+        return new NumericDocValues() {
+          @Override
+          public long get(int docID) {
+            return ints.get(docID);
+          }
+        };
+      }
+    });
+    return new Ints() {
+      @Override
+      public int get(int docID) {
+        return (int) values.get(docID);
+      }
+    };
+  }
+
+  @Override
+  public Floats getFloats(AtomicReader reader, String field, boolean setDocsWithField) throws IOException {
+    return getFloats(reader, field, null, setDocsWithField);
+  }
+
+  @Override
+  public Floats getFloats(AtomicReader reader, final String field, final FloatParser parser, boolean setDocsWithField) throws IOException {
+    final Key key = key(reader, field, Float.TYPE, parser);
+    if (key == null) {
+      return delegate.getFloats(reader, field, parser, setDocsWithField);
+    }
+    final NumericDocValues values = getNumeric(reader, key, new NumericLoader() {
+      @Override
+      NumericDocValues uninvert(AtomicReader reader) throws IOException {
+        final Floats floats = uninverter.getFloats(reader, field, parser, false);
+        return new NumericDocValues() {
+          @Override
+          public long get(int docID) {
+            return Float.floatToRawIntBits(floats.get(docID));
+          }
+        };
+      }
+    });
+    return new Floats() {
+      @Override
+      public float get(int docID) {
+        return Float.intBitsToFloat((int) values.get(docID));
+      }
+    };
+  }
+
+  @Override
+  public Longs getLongs(AtomicReader reader, String field, boolean setDocsWithField) throws IOException {
+    return getLongs(reader, field, null, setDocsWithField);
+  }
+
+  @Override
+  public Longs getLongs(AtomicReader reader, final String field, final LongParser parser, boolean setDocsWithField) throws IOException {
+    final Key key = key(reader, field, Long.TYPE, parser);
+    if (key == null) {
+      return delegate.getLongs(reader, field, parser, setDocsWithField);
+    }
+    final NumericDocValues values = getNumeric(reader, key, new NumericLoader() {
+      @Override
+      NumericDocValues uninvert(AtomicReader reader) throws IOException {
+        final Longs longs = uninverter.getLongs(reader, field, parser, false);
+        return new NumericDocValues() {
+          @Override
+          public long get(int docID) {
+            return longs.get(docID);
+          }
+        };
+      }
+    });
+    return new Longs() {
+      @Override
+      public long get(int docID) {
+        return values.get(docID);
+      }
+    };
+  }
+
+  @Override
+  public Doubles getDoubles(AtomicReader reader, String field, boolean setDocsWithField) throws IOException {
+    return getDoubles(reader, field, null, setDocsWithField);
+  }
+
+  @Override
+  public Doubles getDoubles(AtomicReader reader, final String field, final DoubleParser parser, boolean setDocsWithField) throws IOException {
+    final Key key = key(reader, field, Double.TYPE, parser);
+    if (key == null) {
+      return delegate.getDoubles(reader, field, parser, setDocsWithField);
+    }
+    final NumericDocValues values = getNumeric(reader, key, new NumericLoader() {
+      @Override
+      NumericDocValues uninvert(AtomicReader reader) throws IOException {
+        final Doubles doubles = uninverter.getDoubles(reader, field, parser, false);
+        return new NumericDocValues() {
+          @Override
+          public long get(int docID) {
+            return Double.doubleToRawLongBits(doubles.get(docID));
+          }
+        };
+      }
+    });
+    return new Doubles() {
+      @Override
+      public double get(int docID) {
+        return Double.longBitsToDouble(values.get(docID));
+      }
+    };
+  }
+
+  @Override
+  public BinaryDocValues getTerms(AtomicReader reader, String field) throws IOException {
+    return delegate.getTerms(reader, field);
+  }
+
+  @Override
+  public BinaryDocValues getTerms(AtomicReader reader, String field, float acceptableOverheadRatio) throws IOException {
+    return delegate.getTerms(reader, field, acceptableOverheadRatio);
+  }
+
+  @Override
+  public SortedDocValues getTermsIndex(AtomicReader reader, String field) throws IOException {
+    return getTermsIndex(reader, field, PackedInts.FAST);
+  }
+
+  /** The terms index is always read from a file, so <code>acceptableOverheadRatio</code> is ignored for indexed fields. */
+  @Override
+  public SortedDocValues getTermsIndex(AtomicReader reader, String field, float acceptableOverheadRatio) throws IOException {
+    final Key key = key(reader, field, SortedDocValues.class, null);
+    if (key == null) {
+      return delegate.getTermsIndex(reader, field, acceptableOverheadRatio);
+    }
+    return (SortedDocValues) get((SegmentReader) reader, key, new SortedLoader(field));
+  }
+
+  @Override
+  public SortedSetDocValues getDocTermOrds(AtomicReader reader, String field) throws IOException {
+    return delegate.getDocTermOrds(reader, field);
+  }
+
+  @Override
+  public CacheEntry[] getCacheEntries() {
+    final List<CacheEntry> entries = new ArrayList<CacheEntry>(Arrays.asList(delegate.getCacheEntries()));
+    synchronized (cache) {
+      for (Map.Entry<Object,Map<Key,Object>> readerEntry : cache.entrySet()) {
+        for (Map.Entry<Key,Object> entry : readerEntry.getValue().entrySet()) {
+          final Key key = entry.getKey();
+          entries.add(new CacheEntry(readerEntry.getKey(), key.field, key.type, key.parser, entry.getValue()));
+        }
+      }
+    }
+    return entries.toArray(new CacheEntry[entries.size()]);
+  }
+
+  /**
+   * Drops all cached values, and closes the files that they are read from:
+   * values that were returned before must not be used anymore. Files are
+   * not deleted.
+   */
+  @Override
+  public void purgeAllCaches() {
+    final List<Map<Key,Object>> innerCaches;
+    synchronized (cache) {
+      innerCaches = new ArrayList<Map<Key,Object>>(cache.values());
+      cache.clear();
+    }
+    for (Map<Key,Object> innerCache : innerCaches) {
+      close(innerCache);
+    }
+    delegate.purgeAllCaches();
+  }
+
+  /**
+   * Drops the values cached for this reader and closes the files that they
+   * are read from, which is done automatically when the segment is closed.
+   */
+  @Override
+  public void purge(AtomicReader r) {
+    final Map<Key,Object> innerCache;
+    synchronized (cache) {
+      innerCache = cache.remove(r.getCoreCacheKey());
+    }
+    if (innerCache != null) {
+      close(innerCache);
+    }
+    delegate.purge(r);
+  }
+
+  private static void close(Map<Key,Object> innerCache) {
+    final List<Closeable> closeables = new ArrayList<Closeable>();
+    for (Object value : innerCache.values()) {
+      if (value instanceof Closeable) {
+        closeables.add((Closeable) value);
+      }
+    }
+    IOUtils.closeWhileHandlingException(closeables);
+  }
+
+  // values don't purge until the shared core closes
+  final SegmentReader.CoreClosedListener purgeCore = new SegmentReader.CoreClosedListener() {
+    @Override
+    public void onClose(SegmentReader owner) {
+      PersistentFieldCache.this.purge(owner);
+    }
+  };
+
+  /**
+   * Deletes the files of the segments that are not part of
+   * <code>reader</code> anymore, for instance because they were merged
+   * away. Files that are still read by older readers must not be deleted,
+   * so only call this method once all the readers of previous points in
+   * time of the index have been closed.
+   */
+  public void deleteUnusedFiles(IndexReader reader) throws IOException {
+    final Set<String> segments = new HashSet<String>();
+    for (AtomicReaderContext context : reader.leaves()) {
+      if (context.reader() instanceof SegmentReader) {
+        segments.add(((SegmentReader) context.reader()).getSegmentName());
+      }
+    }
+    for (String file : dir.listAll()) {
+      if (file.endsWith("." + EXTENSION)) {
+        final int end = file.indexOf('_', 1);
+        if (end != -1 && !segments.contains(file.substring(0, end))) {
+          dir.deleteFile(file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Wraps <code>reader</code> so that its leaves expose the values of this
+   * cache for <code>fields</code> as {@link NumericDocValues} for numeric
+   * types, read with the default parsers, and as {@link SortedDocValues} for
+   * {@link SortField.Type#STRING}. Fields that have doc values in the index
+   * are left untouched. The wrapper is kept on reopen.
+   * <p>
+   * <b>NOTE</b>: the wrapped reader must not be added to an index with
+   * {@link org.apache.lucene.index.IndexWriter#addIndexes(IndexReader...)},
+   * as the values would be written as doc values.
+   */
+  public DirectoryReader wrap(DirectoryReader reader, Map<String,SortField.Type> fields) throws IOException {
+    for (Map.Entry<String,SortField.Type> entry : fields.entrySet()) {
+      switch (entry.getValue()) {
+        case INT:
+        case LONG:
+        case FLOAT:
+        case DOUBLE:
+        case STRING:
+          break;
+        default:
+          throw new IllegalArgumentException("unsupported type " + entry.getValue() + " for field " + entry.getKey());
+      }
+    }
+    return new CachedDirectoryReader(reader, this, new HashMap<String,SortField.Type>(fields));
+  }
+
+  private static final class CachedDirectoryReader extends FilterDirectoryReader {
+    private final PersistentFieldCache cache;
+    private final Map<String,SortField.Type> fields;
+
+    CachedDirectoryReader(DirectoryReader in, final PersistentFieldCache cache, final Map<String,SortField.Type> fields) {
+      super(in, new SubReaderWrapper() {
+        @Override
+        public AtomicReader wrap(AtomicReader reader) {
+          return new CachedAtomicReader(reader, cache, fields);
+        }
+      });
+      this.cache = cache;
+      this.fields = fields;
+    }
+
+    @Override
+    protected DirectoryReader doWrapDirectoryReader(DirectoryReader in) {
+      return new CachedDirectoryReader(in, cache, fields);
+    }
+  }
+
+  private static final class CachedAtomicReader extends FilterAtomicReader {
+    private final PersistentFieldCache cache;
+    private final Map<String,SortField.Type> fields;
+
+    CachedAtomicReader(AtomicReader in, PersistentFieldCache cache, Map<String,SortField.Type> fields) {
+      super(in);
+      this.cache = cache;
+      this.fields = fields;
+    }
+
+    @Override
+    public NumericDocValues getNumericDocValues(String field) throws IOException {
+      final NumericDocValues values = super.getNumericDocValues(field);
+      final SortField.Type type = fields.get(field);
+      if (values != null || type == null) {
+        return values;
+      }
+      switch (type) {
+        case INT:
+          final Ints ints = cache.getInts(in, field, false);
+          return new NumericDocValues() {
+            @Override
+            public long get(int docID) {
+              return ints.get(docID);
+            }
+          };
+        case LONG:
+          final Longs longs = cache.getLongs(in, field, false);
+          return new NumericDocValues() {
+            @Override
+            public long get(int docID) {
+              return longs.get(docID);
+            }
+          };
+        case FLOAT:
+          final Floats floats = cache.getFloats(in, field, false);
+          return new NumericDocValues() {
+            @Override
+            public long get(int docID) {
+              return Float.floatToRawIntBits(floats.get(docID));
+            }
+          };
+        case DOUBLE:
+          final Doubles doubles = cache.getDoubles(in, field, false);
+          return new NumericDocValues() {
+            @Override
+            public long get(int docID) {
+              return Double.doubleToRawLongBits(doubles.get(docID));
+            }
+          };
+        default:
+          return null;
+      }
+    }
+
+    @Override
+    public SortedDocValues getSortedDocValues(String field) throws IOException {
+      final SortedDocValues values = super.getSortedDocValues(field);
+      if (values != null || fields.get(field) != SortField.Type.STRING) {
+        return values;
+      }
+      return cache.getTermsIndex(in, field);
+    }
+  }
+
+  @Override
+  public void setInfoStream(PrintStream stream) {
+    delegate.setInfoStream(stream);
+  }
+
+  @Override
+  public PrintStream getInfoStream() {
+    return delegate.getInfoStream();
+  }
+}
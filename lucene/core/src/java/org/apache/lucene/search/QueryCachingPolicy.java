@@ -0,0 +1,58 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.index.AtomicReaderContext;
+
+/**
+ * Decides which {@link Filter}s are worth caching in a {@link LRUQueryCache}.
+ *
+ * @see UsageTrackingQueryCachingPolicy
+ * @lucene.experimental
+ */
+public interface QueryCachingPolicy {
+
+  /** A policy that caches all filters on all segments. */
+  public static final QueryCachingPolicy ALWAYS_CACHE = new QueryCachingPolicy() {
+
+    @Override
+    public void onUse(Filter filter) {}
+
+    @Override
+    public boolean shouldCache(Filter filter, AtomicReaderContext context) {
+      return true;
+    }
+
+  };
+
+  /**
+   * Called once per search that uses the filter, whether or not its
+   * {@link DocIdSet}s are cached, so that the policy can track usage.
+   */
+  void onUse(Filter filter);
+
+  /**
+   * Returns whether the {@link DocIdSet} of the filter on this segment should
+   * be cached. Only called for segments whose {@link DocIdSet} is not cached
+   * yet.
+   */
+  boolean shouldCache(Filter filter, AtomicReaderContext context) throws IOException;
+
+}
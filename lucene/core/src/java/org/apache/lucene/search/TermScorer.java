@@ -19,6 +19,7 @@ package org.apache.lucene.search;
 
 import java.io.IOException;
 
+import org.apache.lucene.index.BlockMaxFreqs;
 import org.apache.lucene.index.DocsEnum;
 import org.apache.lucene.search.similarities.Similarity;
 
@@ -90,6 +91,16 @@ final class TermScorer extends Scorer {
     return docsEnum.cost();
   }
 
+  /** Returns the block max freqs of the postings, or null if the postings don't know them. */
+  BlockMaxFreqs blockMaxFreqs() {
+    return docsEnum instanceof BlockMaxFreqs ? (BlockMaxFreqs) docsEnum : null;
+  }
+
+  /** Returns an upper bound of the score of documents with a freq of at most <code>maxFreq</code>. */
+  float maxScore(int maxFreq) {
+    return docScorer.maxScore(maxFreq);
+  }
+
   /** Returns a string representation of this <code>TermScorer</code>. */
   @Override
   public String toString() { return "scorer(" + weight + ")"; }
@@ -269,6 +269,7 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
   ScoreDoc pqTop;
   int docBase = 0;
   Scorer scorer;
+  private boolean exactTotalHits = true;
     
   // prevents instantiation
   private TopScoreDocCollector(int numHits) {
@@ -278,6 +279,28 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
     pqTop = pq.top();
   }
 
+  /**
+   * Sets whether {@link TopDocs#totalHits} must count all matching documents
+   * (the default). If false, scorers which know that some documents can't
+   * score high enough to be collected may skip them, and the total only
+   * counts the documents that were collected.
+   * 
+   * @lucene.experimental
+   */
+  public void setExactTotalHits(boolean exactTotalHits) {
+    this.exactTotalHits = exactTotalHits;
+  }
+
+  /**
+   * Returns whether {@link TopDocs#totalHits} counts all matching documents.
+   * 
+   * @see #setExactTotalHits(boolean)
+   * @lucene.experimental
+   */
+  public boolean isExactTotalHits() {
+    return exactTotalHits;
+  }
+
   @Override
   protected TopDocs newTopDocs(ScoreDoc[] results, int start) {
     if (results == null) {
@@ -0,0 +1,130 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+
+/**
+ * A {@link QueryCachingPolicy} that caches filters that were used often
+ * enough recently, on segments that are large enough.
+ * <p>
+ * The last <code>historySize</code> uses of filters are tracked. A filter is
+ * cached once it appears at least {@link #minFrequencyToCache(Filter)} times
+ * in this history: twice for filters that are costly to compute because they
+ * visit many terms, like range and prefix filters, 5 times for other filters.
+ * Segments that have less than <code>minSegmentSize</code> documents or less
+ * than <code>minSizeRatio</code> of the documents of the index are never
+ * cached, as they are cheap to search and are soon merged away.
+ *
+ * @lucene.experimental
+ */
+public class UsageTrackingQueryCachingPolicy implements QueryCachingPolicy {
+
+  private final int minSegmentSize;
+  private final float minSizeRatio;
+  private final Filter[] history;
+  private final Map<Filter,Integer> frequencies = new HashMap<Filter,Integer>();
+  private int next;
+
+  /**
+   * Creates a policy.
+   * @param minSegmentSize segments with less documents are not cached
+   * @param minSizeRatio segments with less than this ratio of the documents of the index are not cached
+   * @param historySize number of recent uses of filters to track
+   */
+  public UsageTrackingQueryCachingPolicy(int minSegmentSize, float minSizeRatio, int historySize) {
+    if (minSizeRatio < 0 || minSizeRatio > 1) {
+      throw new IllegalArgumentException("minSizeRatio must be >= 0 and <= 1 (got " + minSizeRatio + ")");
+    }
+    if (historySize < 1) {
+      throw new IllegalArgumentException("historySize must be >= 1 (got " + historySize + ")");
+    }
+    this.minSegmentSize = minSegmentSize;
+    this.minSizeRatio = minSizeRatio;
+    this.history = new Filter[historySize];
+  }
+
+  /** Creates a policy that caches on segments of at least 10000 documents and 3% of the index, tracking 256 uses. */
+  public UsageTrackingQueryCachingPolicy() {
+    this(10000, 0.03f, 256);
+  }
+
+  /**
+   * Returns how many times the filter must have been used recently to be
+   * cached.
+   */
+  protected int minFrequencyToCache(Filter filter) {
+    if (isCostly(filter)) {
+      return 2;
+    }
+    return 5;
+  }
+
+  /** Returns true if the filter visits many terms to compute its {@link DocIdSet}s. */
+  protected boolean isCostly(Filter filter) {
+    if (filter instanceof MultiTermQueryWrapperFilter) {
+      return true;
+    }
+    if (filter instanceof QueryWrapperFilter) {
+      final Query query = ((QueryWrapperFilter) filter).getQuery();
+      return query instanceof MultiTermQuery || query instanceof BooleanQuery;
+    }
+    return false;
+  }
+
+  @Override
+  public synchronized void onUse(Filter filter) {
+    final Filter evicted = history[next];
+    if (evicted != null) {
+      final int frequency = frequencies.get(evicted);
+      if (frequency == 1) {
+        frequencies.remove(evicted);
+      } else {
+        frequencies.put(evicted, frequency - 1);
+      }
+    }
+    history[next] = filter;
+    final Integer frequency = frequencies.get(filter);
+    frequencies.put(filter, frequency == null ? 1 : frequency + 1);
+    next = (next + 1) % history.length;
+  }
+
+  /** Returns how many times the filter was used in the tracked history. */
+  synchronized int frequency(Filter filter) {
+    final Integer frequency = frequencies.get(filter);
+    return frequency == null ? 0 : frequency;
+  }
+
+  @Override
+  public boolean shouldCache(Filter filter, AtomicReaderContext context) {
+    final int maxDoc = context.reader().maxDoc();
+    if (maxDoc < minSegmentSize) {
+      return false;
+    }
+    final int topMaxDoc = ReaderUtil.getTopLevelContext(context).reader().maxDoc();
+    if (maxDoc < minSizeRatio * topMaxDoc) {
+      return false;
+    }
+    return frequency(filter) >= minFrequencyToCache(filter);
+  }
+
+}
@@ -19,6 +19,7 @@ package org.apache.lucene.search.similarities;
 
 import java.io.IOException;
 
+import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.FieldInvertState;
 import org.apache.lucene.index.NumericDocValues;
@@ -217,7 +218,7 @@ public class BM25Similarity extends Similarity {
     final NumericDocValues norms = context.reader().getNormValues(bm25stats.field);
     return norms == null 
       ? new ExactBM25DocScorerNoNorms(bm25stats)
-      : new ExactBM25DocScorer(bm25stats, norms);
+      : new ExactBM25DocScorer(bm25stats, norms, context.reader());
   }
 
   @Override
@@ -231,19 +232,40 @@ public class BM25Similarity extends Similarity {
     private final float weightValue;
     private final NumericDocValues norms;
     private final float[] cache;
+    private final AtomicReader reader;
+    private float minCache = Float.NaN; // shortest document of the segment, computed lazily
     
-    ExactBM25DocScorer(BM25Stats stats, NumericDocValues norms) throws IOException {
+    ExactBM25DocScorer(BM25Stats stats, NumericDocValues norms, AtomicReader reader) throws IOException {
       assert norms != null;
       this.stats = stats;
       this.weightValue = stats.weight * (k1 + 1); // boost * idf * (k1 + 1)
       this.cache = stats.cache;
       this.norms = norms;
+      this.reader = reader;
     }
     
     @Override
     public float score(int doc, int freq) {
       return weightValue * freq / (freq + cache[(byte)norms.get(doc) & 0xFF]);
     }
+
+    @Override
+    public float maxScore(int maxFreq) {
+      if (weightValue < 0) {
+        return 0f;
+      }
+      if (Float.isNaN(minCache)) {
+        final boolean[] present = NormBytes.present(reader, stats.field, norms);
+        float min = Float.POSITIVE_INFINITY;
+        for (int b = 0; b < present.length; b++) {
+          if (present[b]) {
+            min = Math.min(min, cache[b]);
+          }
+        }
+        minCache = min;
+      }
+      return weightValue * maxFreq / (maxFreq + minCache);
+    }
     
     @Override
     public Explanation explain(int doc, Explanation freq) {
@@ -272,6 +294,11 @@ public class BM25Similarity extends Similarity {
         ? scoreCache[freq]                  // cache hit
         : weightValue * freq / (freq + k1); // cache miss
     }
+
+    @Override
+    public float maxScore(int maxFreq) {
+      return weightValue < 0 ? 0f : weightValue * maxFreq / (maxFreq + k1);
+    }
     
     @Override
     public Explanation explain(int doc, Explanation freq) {
@@ -0,0 +1,77 @@
+package org.apache.lucene.search.similarities;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.NumericDocValues;
+
+/**
+ * The distinct byte norms of a segment's field, so that similarities can
+ * bound the scores of a term from its maximum frequency without knowing
+ * which documents have it.
+ * <p>
+ * Finding them reads the norms of every document of the segment, so they are
+ * computed the first time a scorer asks for a bound, and cached by segment
+ * core and field for all the queries and terms that follow. Like
+ * {@link org.apache.lucene.search.CachingWrapperFilter}, the cache is keyed
+ * by the core cache key, so entries go away with their core.
+ */
+final class NormBytes {
+
+  private static final Map<Object,Map<String,boolean[]>> cache =
+      Collections.synchronizedMap(new WeakHashMap<Object,Map<String,boolean[]>>());
+
+  private NormBytes() {}
+
+  /**
+   * Returns which of the 256 byte norms (indexed by <code>b &amp; 0xFF</code>)
+   * at least one document of the reader has in the given field, whose norms
+   * are <code>norms</code>.
+   */
+  static boolean[] present(AtomicReader reader, String field, NumericDocValues norms) {
+    final Object key = reader.getCoreCacheKey();
+    Map<String,boolean[]> fields;
+    synchronized (cache) {
+      fields = cache.get(key);
+      if (fields == null) {
+        fields = new ConcurrentHashMap<String,boolean[]>();
+        cache.put(key, fields);
+      }
+    }
+    boolean[] present = fields.get(field);
+    if (present == null) {
+      // threads that race here compute the same value
+      present = present(norms, reader.maxDoc());
+      fields.put(field, present);
+    }
+    return present;
+  }
+
+  private static boolean[] present(NumericDocValues norms, int maxDoc) {
+    final boolean[] present = new boolean[256];
+    for (int doc = 0; doc < maxDoc; doc++) {
+      present[(byte) norms.get(doc) & 0xFF] = true;
+    }
+    return present;
+  }
+}
@@ -206,6 +206,20 @@ public abstract class Similarity {
      * @return document's score
      */
     public abstract float score(int doc, int freq);
+
+    /**
+     * Returns an upper bound of {@link #score(int, int)} for any document
+     * of this segment whose term frequency is at most <code>maxFreq</code>.
+     * Scorers use it to skip documents that can not be competitive. The
+     * default implementation returns {@link Float#POSITIVE_INFINITY}, which
+     * disables such skipping.
+     * @param maxFreq upper bound of the term frequency
+     * @return upper bound of the score
+     * @lucene.experimental
+     */
+    public float maxScore(int maxFreq) {
+      return Float.POSITIVE_INFINITY;
+    }
     
     /**
      * Explain the score for a single document
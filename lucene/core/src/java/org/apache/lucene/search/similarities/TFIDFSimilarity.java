@@ -19,6 +19,7 @@ package org.apache.lucene.search.similarities;
 
 import java.io.IOException;
 
+import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.FieldInvertState;
 import org.apache.lucene.index.NumericDocValues;
@@ -29,6 +30,7 @@ import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.TermStatistics;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.SmallFloat;
+import org.apache.lucene.util.VirtualMethod;
 
 
 /**
@@ -524,6 +526,17 @@ import org.apache.lucene.util.SmallFloat;
  * @see IndexSearcher#setSimilarity(Similarity)
  */
 public abstract class TFIDFSimilarity extends Similarity {
+
+  private static final VirtualMethod<TFIDFSimilarity> tfIntMethod =
+      new VirtualMethod<TFIDFSimilarity>(TFIDFSimilarity.class, "tf", int.class);
+  private static final VirtualMethod<DefaultSimilarity> tfFloatMethod =
+      new VirtualMethod<DefaultSimilarity>(DefaultSimilarity.class, "tf", float.class);
+
+  /** whether tf is that of {@link DefaultSimilarity}, which doesn't
+   *  decrease as freq increases, so that scores can be bounded */
+  private final boolean monotonicTf = this instanceof DefaultSimilarity
+      && !tfIntMethod.isOverriddenAsOf(getClass())
+      && !tfFloatMethod.isOverriddenAsOf(((DefaultSimilarity) this).getClass());
   
   /**
    * Sole constructor. (For invocation by subclass 
@@ -591,6 +604,11 @@ public abstract class TFIDFSimilarity extends Similarity {
    * when <code>freq</code> is large, and smaller values when <code>freq</code>
    * is small.
    *
+   * <p>Scorers only bound scores from the maximum frequency of a term, to
+   * skip documents that can't be competitive, when neither this method nor
+   * {@link #tf(int)} override those of {@link DefaultSimilarity}, which don't
+   * decrease as <code>freq</code> increases.
+   *
    * @param freq the frequency of a term within a document
    * @return a score factor based on a term's within-document frequency
    */
@@ -757,7 +775,7 @@ public abstract class TFIDFSimilarity extends Similarity {
   @Override
   public final ExactSimScorer exactSimScorer(SimWeight stats, AtomicReaderContext context) throws IOException {
     IDFStats idfstats = (IDFStats) stats;
-    return new ExactTFIDFDocScorer(idfstats, context.reader().getNormValues(idfstats.field));
+    return new ExactTFIDFDocScorer(idfstats, context.reader().getNormValues(idfstats.field), context.reader());
   }
 
   @Override
@@ -772,11 +790,14 @@ public abstract class TFIDFSimilarity extends Similarity {
     private final IDFStats stats;
     private final float weightValue;
     private final NumericDocValues norms;
+    private final AtomicReader reader;
+    private float maxNorm = Float.NaN; // largest norm of the segment, computed lazily
     
-    ExactTFIDFDocScorer(IDFStats stats, NumericDocValues norms) throws IOException {
+    ExactTFIDFDocScorer(IDFStats stats, NumericDocValues norms, AtomicReader reader) throws IOException {
       this.stats = stats;
       this.weightValue = stats.value;
       this.norms = norms; 
+      this.reader = reader;
     }
     
     @Override
@@ -786,6 +807,31 @@ public abstract class TFIDFSimilarity extends Similarity {
       return norms == null ? raw : raw * decodeNormValue((byte)norms.get(doc)); // normalize for field
     }
 
+    @Override
+    public float maxScore(int maxFreq) {
+      if (!monotonicTf) {
+        return super.maxScore(maxFreq); // no bound
+      }
+      if (weightValue < 0) {
+        return 0f; // tf and norms are not negative
+      }
+      final float raw = tf(maxFreq)*weightValue;
+      if (norms == null) {
+        return raw;
+      }
+      if (Float.isNaN(maxNorm)) {
+        final boolean[] present = NormBytes.present(reader, stats.field, norms);
+        float max = 0f;
+        for (int b = 0; b < present.length; b++) {
+          if (present[b]) {
+            max = Math.max(max, decodeNormValue((byte) b));
+          }
+        }
+        maxNorm = max;
+      }
+      return raw * maxNorm;
+    }
+
     @Override
     public Explanation explain(int doc, Explanation freq) {
       return explainScore(doc, freq, stats, norms);
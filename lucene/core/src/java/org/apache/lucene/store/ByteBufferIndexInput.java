@@ -143,6 +143,40 @@ abstract class ByteBufferIndexInput extends IndexInput {
     }
   }
   
+  @Override
+  public final void readInts(int[] dst, int offset, int length) throws IOException {
+    try {
+      final long byteLength = (long) length << 2;
+      if (curBuf.remaining() >= byteLength) {
+        // decode from a view of the buffer, without per-value bounds checks
+        curBuf.asIntBuffer().get(dst, offset, length);
+        curBuf.position(curBuf.position() + (int) byteLength);
+      } else {
+        // the ints span several buffers
+        super.readInts(dst, offset, length);
+      }
+    } catch (NullPointerException npe) {
+      throw new AlreadyClosedException("Already closed: " + this);
+    }
+  }
+
+  @Override
+  public final void readLongs(long[] dst, int offset, int length) throws IOException {
+    try {
+      final long byteLength = (long) length << 3;
+      if (curBuf.remaining() >= byteLength) {
+        // decode from a view of the buffer, without per-value bounds checks
+        curBuf.asLongBuffer().get(dst, offset, length);
+        curBuf.position(curBuf.position() + (int) byteLength);
+      } else {
+        // the longs span several buffers
+        super.readLongs(dst, offset, length);
+      }
+    } catch (NullPointerException npe) {
+      throw new AlreadyClosedException("Already closed: " + this);
+    }
+  }
+
   @Override
   public final long getFilePointer() {
     try {
@@ -85,6 +85,17 @@ public abstract class DataInput implements Cloneable {
          | ((readByte() & 0xFF) <<  8) |  (readByte() & 0xFF);
   }
 
+  /** Reads <code>length</code> ints into <code>dst</code>, starting at
+   * <code>offset</code>, as if by calling {@link #readInt()} that many times.
+   * Implementations may override this method to decode ints in bulk.
+   * @see DataOutput#writeInt(int)
+   */
+  public void readInts(int[] dst, int offset, int length) throws IOException {
+    for (int i = 0; i < length; ++i) {
+      dst[offset + i] = readInt();
+    }
+  }
+
   /** Reads an int stored in variable-length format.  Reads between one and
    * five bytes.  Smaller values take fewer bytes.  Negative numbers are not
    * supported.
@@ -131,6 +142,17 @@ public abstract class DataInput implements Cloneable {
     return (((long)readInt()) << 32) | (readInt() & 0xFFFFFFFFL);
   }
 
+  /** Reads <code>length</code> longs into <code>dst</code>, starting at
+   * <code>offset</code>, as if by calling {@link #readLong()} that many times.
+   * Implementations may override this method to decode longs in bulk.
+   * @see DataOutput#writeLong(long)
+   */
+  public void readLongs(long[] dst, int offset, int length) throws IOException {
+    for (int i = 0; i < length; ++i) {
+      dst[offset + i] = readLong();
+    }
+  }
+
   /** Reads a long stored in variable-length format.  Reads between one and
    * nine bytes.  Smaller values take fewer bytes.  Negative numbers are not
    * supported.
@@ -20,6 +20,7 @@ package org.apache.lucene.store;
 import java.io.IOException;
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedChannelException; // javadoc @link
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
@@ -29,6 +30,10 @@ import java.security.AccessController;
 import java.security.PrivilegedExceptionAction;
 import java.security.PrivilegedActionException;
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.util.Constants;
 
@@ -84,6 +89,10 @@ public class MMapDirectory extends FSDirectory {
    */
   public static final int DEFAULT_MAX_BUFF = Constants.JRE_IS_64BIT ? (1 << 30) : (1 << 28);
   final int chunkSizePower;
+  private volatile Set<String> preloadExtensions = Collections.emptySet();
+  private final AtomicLong preloadedBytes = new AtomicLong();
+  private final AtomicLong preloadNanos = new AtomicLong();
+  private volatile int touched; // so that reads of preloaded pages are not optimized away
 
   /** Create a new MMapDirectory for the named location.
    *
@@ -185,24 +194,86 @@ public class MMapDirectory extends FSDirectory {
     return 1 << chunkSizePower;
   }
 
+  /**
+   * Sets the extensions of the files to load into physical memory as soon
+   * as they are opened, for example <code>tip</code>, <code>doc</code> or
+   * <code>dvd</code>. Otherwise, the first searches against a newly opened
+   * index fault in the pages of these files one at a time, at random.
+   * Files inside compound files are preloaded too when they are opened.
+   * Loading is a best effort: the operating system may evict the pages
+   * again later. Only affects files that are opened after this call.
+   * By default, no file is preloaded.
+   */
+  public void setPreloadExtensions(Set<String> extensions) {
+    this.preloadExtensions = Collections.unmodifiableSet(new HashSet<String>(extensions));
+  }
+
+  /**
+   * Returns the extensions of the files that are preloaded.
+   * @see #setPreloadExtensions
+   */
+  public Set<String> getPreloadExtensions() {
+    return preloadExtensions;
+  }
+
+  /** Returns the number of bytes that were preloaded so far. */
+  public long getPreloadedBytes() {
+    return preloadedBytes.get();
+  }
+
+  /** Returns the time spent preloading files so far, in milliseconds. */
+  public long getPreloadTimeMillis() {
+    return preloadNanos.get() / 1000000;
+  }
+
+  private boolean shouldPreload(String name) {
+    final Set<String> extensions = preloadExtensions;
+    if (extensions.isEmpty()) {
+      return false;
+    }
+    final int idx = name.lastIndexOf('.');
+    return idx != -1 && extensions.contains(name.substring(idx + 1));
+  }
+
   /** Creates an IndexInput for the file with the given name. */
   @Override
   public IndexInput openInput(String name, IOContext context) throws IOException {
     ensureOpen();
     File file = new File(getDirectory(), name);
     try (FileChannel c = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
-      return new MMapIndexInput("MMapIndexInput(path=\"" + file.toString() + "\")", c);
+      final ByteBuffer[] buffers = map(c, 0, c.size());
+      if (shouldPreload(name)) {
+        final long start = System.nanoTime();
+        for (ByteBuffer buffer : buffers) {
+          ((MappedByteBuffer) buffer).load();
+        }
+        preloadNanos.addAndGet(System.nanoTime() - start);
+        preloadedBytes.addAndGet(c.size());
+      }
+      return new MMapIndexInput("MMapIndexInput(path=\"" + file.toString() + "\")", buffers, c.size());
     }
   }
   
   @Override
   public IndexInputSlicer createSlicer(String name, IOContext context) throws IOException {
-    final MMapIndexInput full = (MMapIndexInput) openInput(name, context);
+    ensureOpen();
+    final File file = new File(getDirectory(), name);
+    final ByteBuffer[] buffers;
+    final long length;
+    try (FileChannel c = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      length = c.size();
+      buffers = map(c, 0, length);
+    }
+    final MMapIndexInput full = new MMapIndexInput("MMapIndexInput(path=\"" + file.toString() + "\")", buffers, length);
     return new IndexInputSlicer() {
       @Override
       public IndexInput openSlice(String sliceDescription, long offset, long length) throws IOException {
         ensureOpen();
-        return full.slice(sliceDescription, offset, length);
+        final IndexInput slice = full.slice(sliceDescription, offset, length);
+        if (shouldPreload(sliceDescription)) {
+          preload(buffers, offset, length);
+        }
+        return slice;
       }
       
       @Override
@@ -215,8 +286,8 @@ public class MMapDirectory extends FSDirectory {
   private final class MMapIndexInput extends ByteBufferIndexInput {
     private final boolean useUnmapHack;
     
-    MMapIndexInput(String resourceDescription, FileChannel fc) throws IOException {
-      super(resourceDescription, map(fc, 0, fc.size()), fc.size(), chunkSizePower, getUseUnmap());
+    MMapIndexInput(String resourceDescription, ByteBuffer[] buffers, long length) throws IOException {
+      super(resourceDescription, buffers, length, chunkSizePower, getUseUnmap());
       this.useUnmapHack = getUseUnmap();
     }
     
@@ -252,6 +323,24 @@ public class MMapDirectory extends FSDirectory {
     }
   }
   
+  /** Touches every page of the given range of the buffers, like
+   *  {@link MappedByteBuffer#load()} does for whole buffers. */
+  private void preload(ByteBuffer[] buffers, long offset, long length) {
+    final long start = System.nanoTime();
+    final long chunkSizeMask = (1L << chunkSizePower) - 1L;
+    final long end = offset + length;
+    int x = 0;
+    for (long pos = offset; pos < end; pos += PRELOAD_PAGE_SIZE) {
+      x += buffers[(int) (pos >>> chunkSizePower)].get((int) (pos & chunkSizeMask));
+    }
+    touched = x;
+    preloadNanos.addAndGet(System.nanoTime() - start);
+    preloadedBytes.addAndGet(length);
+  }
+
+  // the smallest page size of common platforms
+  private static final int PRELOAD_PAGE_SIZE = 4096;
+
   /** Maps a file into a set of buffers */
   ByteBuffer[] map(FileChannel fc, long offset, long length) throws IOException {
     if ((length >>> chunkSizePower) >= Integer.MAX_VALUE)
@@ -161,6 +161,21 @@ public final class IOUtils {
     }
   }
   
+  /**
+   * Rethrows the given throwable, unchanged if it is an {@link IOException},
+   * a {@link RuntimeException} or an {@link Error}, or wrapped in a
+   * {@link RuntimeException} otherwise. Does nothing if it is
+   * <code>null</code>.
+   */
+  public static void reThrow(Throwable th) throws IOException {
+    if (th != null) {
+      if (th instanceof IOException) throw (IOException) th;
+      if (th instanceof RuntimeException) throw (RuntimeException) th;
+      if (th instanceof Error) throw (Error) th;
+      throw new RuntimeException(th);
+    }
+  }
+
   /**
    * Closes all given <tt>Closeable</tt>s.
    * @see #close(Closeable...)
@@ -39,9 +39,7 @@ final class Direct32 extends PackedInts.MutableImpl {
 
   Direct32(int packedIntsVersion, DataInput in, int valueCount) throws IOException {
     this(valueCount);
-    for (int i = 0; i < valueCount; ++i) {
-      values[i] = in.readInt();
-    }
+    in.readInts(values, 0, valueCount);
     // because packed ints have not always been byte-aligned
     final int remaining = (int) (PackedInts.Format.PACKED.byteCount(packedIntsVersion, valueCount, 32) - 4L * valueCount);
     for (int i = 0; i < remaining; ++i) {
@@ -39,9 +39,7 @@ final class Direct64 extends PackedInts.MutableImpl {
 
   Direct64(int packedIntsVersion, DataInput in, int valueCount) throws IOException {
     this(valueCount);
-    for (int i = 0; i < valueCount; ++i) {
-      values[i] = in.readLong();
-    }
+    in.readLongs(values, 0, valueCount);
   }
 
   @Override
@@ -91,9 +91,7 @@ class Packed64 extends PackedInts.MutableImpl {
     final int longCount = format.longCount(PackedInts.VERSION_CURRENT, valueCount, bitsPerValue); // to size the array
     blocks = new long[longCount];
     // read as many longs as we can
-    for (int i = 0; i < byteCount / 8; ++i) {
-      blocks[i] = in.readLong();
-    }
+    in.readLongs(blocks, 0, (int) (byteCount / 8));
     final int remaining = (int) (byteCount % 8);
     if (remaining != 0) {
       // read the last bytes
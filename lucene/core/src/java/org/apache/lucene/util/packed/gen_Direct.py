@@ -69,6 +69,8 @@ if __name__ == '__main__':
     f.write("    this(valueCount);\n")
     if bpv == 8:
       f.write("    in.readBytes(values, 0, valueCount);\n")
+    elif bpv in (32, 64):
+      f.write("    in.read%ss(values, 0, valueCount);\n" %TYPES[bpv].title())
     else:
       f.write("    for (int i = 0; i < valueCount; ++i) {\n")
       f.write("      values[i] = in.read%s();\n" %TYPES[bpv].title())
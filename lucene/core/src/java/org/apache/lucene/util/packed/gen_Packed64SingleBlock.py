@@ -223,9 +223,7 @@ abstract class Packed64SingleBlock extends PackedInts.MutableImpl {
   public static Packed64SingleBlock create(DataInput in,
       int valueCount, int bitsPerValue) throws IOException {
     Packed64SingleBlock reader = create(valueCount, bitsPerValue);
-    for (int i = 0; i < reader.blocks.length; ++i) {
-      reader.blocks[i] = in.readLong();
-    }
+    in.readLongs(reader.blocks, 0, reader.blocks.length);
     return reader;
   }
 
@@ -18,18 +18,33 @@ package org.apache.lucene.codecs.compressing;
  */
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.FilterCodec;
+import org.apache.lucene.codecs.StoredFieldsFormat;
+import org.apache.lucene.codecs.StoredFieldsReader;
+import org.apache.lucene.codecs.StoredFieldsWriter;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.BaseStoredFieldsFormatTestCase;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogDocMergePolicy;
 import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.SegmentInfo;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
 import org.junit.Test;
 
 import com.carrotsearch.randomizedtesting.generators.RandomInts;
@@ -86,4 +101,71 @@ public class TestCompressingStoredFieldsFormat extends BaseStoredFieldsFormatTes
       dir.close();
     }
   }
+
+  public void testBulkMergeWithDeletions() throws IOException {
+    Directory dir = newDirectory();
+    final List<CompressingStoredFieldsWriter> mergeWriters = Collections.synchronizedList(new ArrayList<CompressingStoredFieldsWriter>());
+    final Codec codec = CompressingCodec.randomInstance(random(), 128, false);
+    IndexWriterConfig iwConf = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    // same name, so that the index can be read with the delegate
+    iwConf.setCodec(new FilterCodec(codec.getName(), codec) {
+      @Override
+      public StoredFieldsFormat storedFieldsFormat() {
+        final StoredFieldsFormat format = delegate.storedFieldsFormat();
+        return new StoredFieldsFormat() {
+          @Override
+          public StoredFieldsReader fieldsReader(Directory directory, SegmentInfo si, FieldInfos fn, IOContext context) throws IOException {
+            return format.fieldsReader(directory, si, fn, context);
+          }
+
+          @Override
+          public StoredFieldsWriter fieldsWriter(Directory directory, SegmentInfo si, IOContext context) throws IOException {
+            StoredFieldsWriter writer = format.fieldsWriter(directory, si, context);
+            if (context.context == IOContext.Context.MERGE) {
+              mergeWriters.add((CompressingStoredFieldsWriter) writer);
+            }
+            return writer;
+          }
+        };
+      }
+    });
+    // no natural merge of the few segments below
+    iwConf.setMergePolicy(new LogDocMergePolicy());
+    iwConf.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    iwConf.setRAMBufferSizeMB(16);
+    IndexWriter iw = new IndexWriter(dir, iwConf);
+    final int numSegments = 3;
+    final int docsPerSegment = 500;
+    for (int i = 0; i < numSegments * docsPerSegment; ++i) {
+      Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Store.YES));
+      doc.add(new StringField("body", "value" + i, Store.YES));
+      iw.addDocument(doc);
+      if ((i + 1) % docsPerSegment == 0) {
+        iw.commit();
+      }
+    }
+    // a deletion in the first chunk of each segment
+    for (int i = 0; i < numSegments; ++i) {
+      iw.deleteDocuments(new Term("id", Integer.toString(i * docsPerSegment + 1)));
+    }
+    iw.forceMerge(1);
+    iw.close();
+
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(numSegments * (docsPerSegment - 1), reader.numDocs());
+    for (int i = 0; i < reader.maxDoc(); ++i) {
+      assertEquals(reader.document(i).get("body"), "value" + reader.document(i).get("id"));
+    }
+    reader.close();
+
+    // the chunks that follow the deletions are still copied
+    assertEquals(1, mergeWriters.size());
+    CompressingStoredFieldsWriter mergeWriter = mergeWriters.get(0);
+    assertTrue(mergeWriter.getNumCopiedChunks() > 0);
+    assertTrue(mergeWriter.getNumCopiedDocs() > numSegments * docsPerSegment / 2);
+    assertTrue(mergeWriter.getNumCompressedChunks() > 0);
+    assertEquals(numSegments * (docsPerSegment - 1), mergeWriter.getNumCopiedDocs() + mergeWriter.getNumCompressedDocs());
+    dir.close();
+  }
 }
@@ -37,6 +37,29 @@ import com.carrotsearch.randomizedtesting.generators.RandomInts;
 public class TestForUtil extends LuceneTestCase {
 
   public void testEncodeDecode() throws IOException {
+    doTestEncodeDecode(Lucene41PostingsWriter.VERSION_CURRENT);
+  }
+
+  public void testEncodeDecodePackedInts() throws IOException {
+    doTestEncodeDecode(Lucene41PostingsWriter.VERSION_START);
+  }
+
+  public void testIntBlocksAllBitsPerValue() {
+    final byte[] encoded = new byte[MAX_ENCODED_SIZE];
+    for (int bpv = 1; bpv <= 32; ++bpv) {
+      final int[] values = new int[BLOCK_SIZE];
+      for (int i = 0; i < BLOCK_SIZE; ++i) {
+        values[i] = bpv == 32 ? random().nextInt() : RandomInts.randomIntBetween(random(), 0, (int) PackedInts.maxValue(bpv));
+      }
+      values[random().nextInt(BLOCK_SIZE)] = (int) PackedInts.maxValue(bpv);
+      ForUtil.encodeInts(values, bpv, encoded);
+      final int[] restored = new int[MAX_DATA_SIZE];
+      ForUtil.decodeInts(encoded, bpv, restored);
+      assertArrayEquals("bpv=" + bpv, values, Arrays.copyOf(restored, BLOCK_SIZE));
+    }
+  }
+
+  private void doTestEncodeDecode(int version) throws IOException {
     final int iterations = RandomInts.randomIntBetween(random(), 1, 1000);
     final float acceptableOverheadRatio = random().nextFloat();
     final int[] values = new int[(iterations - 1) * BLOCK_SIZE + ForUtil.MAX_DATA_SIZE];
@@ -61,7 +84,7 @@ public class TestForUtil extends LuceneTestCase {
     {
       // encode
       IndexOutput out = d.createOutput("test.bin", IOContext.DEFAULT);
-      final ForUtil forUtil = new ForUtil(acceptableOverheadRatio, out);
+      final ForUtil forUtil = new ForUtil(acceptableOverheadRatio, out, version);
       
       for (int i = 0; i < iterations; ++i) {
         forUtil.writeBlock(
@@ -75,7 +98,7 @@ public class TestForUtil extends LuceneTestCase {
     {
       // decode
       IndexInput in = d.openInput("test.bin", IOContext.READONCE);
-      final ForUtil forUtil = new ForUtil(in);
+      final ForUtil forUtil = new ForUtil(in, version);
       for (int i = 0; i < iterations; ++i) {
         if (random().nextBoolean()) {
           forUtil.skipBlock(in);
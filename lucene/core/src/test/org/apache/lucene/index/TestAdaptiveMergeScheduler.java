@@ -0,0 +1,195 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.RateLimitedDirectoryWrapper;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestAdaptiveMergeScheduler extends LuceneTestCase {
+
+  private static class FixedLoadSignal implements AdaptiveMergeScheduler.LoadSignal {
+    volatile double load;
+
+    @Override
+    public double getLoad() {
+      return load;
+    }
+  }
+
+  public void testBacksOffAndCatchesUp() {
+    AdaptiveMergeScheduler ams = new AdaptiveMergeScheduler();
+    ams.setMaxMergeCount(4);
+    ams.setMaxThreadCount(3);
+    ams.setMinMBPerSec(10);
+    ams.setMaxMBPerSec(80);
+    ams.setAdjustIntervalMS(0);
+    FixedLoadSignal signal = new FixedLoadSignal();
+    ams.setLoadSignal(signal);
+    assertEquals(80, ams.getMBPerSec(), 0);
+    assertEquals(3, ams.getMaxRunningThreadCount());
+
+    signal.load = 2;
+    ams.maybeAdjust();
+    assertEquals(40, ams.getMBPerSec(), 0);
+    assertEquals(1, ams.getMaxRunningThreadCount());
+    for (int i = 0; i < 5; i++) {
+      ams.maybeAdjust();
+    }
+    assertEquals(10, ams.getMBPerSec(), 0);
+    assertEquals(1, ams.getMaxRunningThreadCount());
+
+    // between idle and overloaded: hold
+    signal.load = 0.8;
+    ams.maybeAdjust();
+    assertEquals(10, ams.getMBPerSec(), 0);
+    assertEquals(1, ams.getMaxRunningThreadCount());
+
+    signal.load = 0.1;
+    ams.maybeAdjust();
+    assertEquals(20, ams.getMBPerSec(), 0);
+    assertEquals(2, ams.getMaxRunningThreadCount());
+    for (int i = 0; i < 5; i++) {
+      ams.maybeAdjust();
+    }
+    assertEquals(80, ams.getMBPerSec(), 0);
+    assertEquals(3, ams.getMaxRunningThreadCount());
+  }
+
+  public void testAdjustInterval() {
+    AdaptiveMergeScheduler ams = new AdaptiveMergeScheduler();
+    ams.setAdjustIntervalMS(1000000);
+    FixedLoadSignal signal = new FixedLoadSignal();
+    signal.load = 5;
+    ams.setLoadSignal(signal);
+    ams.maybeAdjust();
+    assertEquals(ams.getMaxMBPerSec(), ams.getMBPerSec(), 0);
+  }
+
+  public void testLatencyLoadSignal() {
+    AdaptiveMergeScheduler.LatencyLoadSignal signal = new AdaptiveMergeScheduler.LatencyLoadSignal(90, 10, 10, 1000000);
+    assertEquals(0, signal.getLoad(), 0);
+    for (int i = 1; i <= 10; i++) {
+      signal.record(i * 1000000L);
+    }
+    // p90 of 1..10ms is 9ms
+    assertEquals(0.9, signal.getLoad(), 0.0001);
+    // only the last 10 latencies count
+    for (int i = 0; i < 10; i++) {
+      signal.record(30 * 1000000L);
+    }
+    assertEquals(3, signal.getLoad(), 0.0001);
+
+    AdaptiveMergeScheduler.LatencyLoadSignal expired = new AdaptiveMergeScheduler.LatencyLoadSignal(99, 10, 10, 0);
+    expired.record(100 * 1000000L);
+    assertEquals(0, expired.getLoad(), 0);
+
+    try {
+      new AdaptiveMergeScheduler.LatencyLoadSignal(0, 10, 10, 1000);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  /** Feeds a {@link AdaptiveMergeScheduler.LatencyLoadSignal} with the latencies of real searches, as applications do. */
+  public void testSearchLatencies() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    AdaptiveMergeScheduler ams = new AdaptiveMergeScheduler();
+    ams.setAdjustIntervalMS(0);
+    ams.setMinMBPerSec(10);
+    ams.setMaxMBPerSec(80);
+    iwc.setMergeScheduler(ams);
+    IndexWriter writer = new IndexWriter(dir, iwc);
+    int numDocs = atLeast(50);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(newField("body", "some text " + i, TextField.TYPE_NOT_STORED));
+      writer.addDocument(doc);
+    }
+    DirectoryReader reader = DirectoryReader.open(writer, true);
+    IndexSearcher searcher = newSearcher(reader);
+
+    // every search takes longer than a target of 1 ns: merges back off
+    AdaptiveMergeScheduler.LatencyLoadSignal slow = new AdaptiveMergeScheduler.LatencyLoadSignal(99, 0.000001, 100, 100000);
+    ams.setLoadSignal(slow);
+    for (int i = 0; i < 10; i++) {
+      long start = System.nanoTime();
+      TopDocs hits = searcher.search(new TermQuery(new Term("body", "text")), 10);
+      slow.record(System.nanoTime() - start);
+      assertEquals(numDocs, hits.totalHits);
+      ams.maybeAdjust();
+    }
+    assertTrue(slow.getLoad() > 1);
+    assertEquals(10, ams.getMBPerSec(), 0);
+    assertEquals(1, ams.getMaxRunningThreadCount());
+
+    // and catch up again when searches are well within the target
+    AdaptiveMergeScheduler.LatencyLoadSignal fast = new AdaptiveMergeScheduler.LatencyLoadSignal(99, 1000000, 100, 100000);
+    ams.setLoadSignal(fast);
+    for (int i = 0; i < 10; i++) {
+      long start = System.nanoTime();
+      searcher.search(new TermQuery(new Term("body", "text")), 10);
+      fast.record(System.nanoTime() - start);
+      ams.maybeAdjust();
+    }
+    assertTrue(fast.getLoad() < ams.getIdleLoad());
+    assertEquals(80, ams.getMBPerSec(), 0);
+
+    reader.close();
+    writer.close();
+    dir.close();
+  }
+
+  public void testIndexing() throws Exception {
+    RateLimitedDirectoryWrapper dir = new RateLimitedDirectoryWrapper(newDirectory());
+    AdaptiveMergeScheduler ams = new AdaptiveMergeScheduler();
+    ams.setAdjustIntervalMS(0);
+    FixedLoadSignal signal = new FixedLoadSignal();
+    signal.load = random().nextDouble() * 2;
+    ams.setLoadSignal(signal);
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setMergeScheduler(ams);
+    iwc.setMaxBufferedDocs(5);
+    iwc.setMergePolicy(newLogMergePolicy(2));
+    IndexWriter writer = new IndexWriter(dir, iwc);
+    int numDocs = atLeast(100);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(newField("body", "some text " + i, TextField.TYPE_NOT_STORED));
+      writer.addDocument(doc);
+      if (i % 20 == 0) {
+        signal.load = random().nextDouble() * 2;
+      }
+    }
+    // merges use the scheduler's rate limiter
+    assertNotNull(dir.getMaxWriteMBPerSec(IOContext.Context.MERGE));
+    writer.close();
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(numDocs, reader.numDocs());
+    reader.close();
+    dir.close();
+  }
+}
@@ -507,6 +507,8 @@ public class TestAddIndexes extends LuceneTestCase {
   private IndexWriter newWriter(Directory dir, IndexWriterConfig conf)
       throws IOException {
     conf.setMergePolicy(new LogDocMergePolicy());
+    // the tests count segments right after adding documents
+    conf.setFlushThreadCount(0);
     final IndexWriter writer = new IndexWriter(dir, conf);
     return writer;
   }
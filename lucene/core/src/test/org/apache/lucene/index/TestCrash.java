@@ -38,7 +38,9 @@ public class TestCrash extends LuceneTestCase {
     dir.setLockFactory(NoLockFactory.getNoLockFactory());
 
     IndexWriter writer  = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random))
-        .setMaxBufferedDocs(10).setMergeScheduler(new ConcurrentMergeScheduler()));
+        .setMaxBufferedDocs(10).setMergeScheduler(new ConcurrentMergeScheduler())
+        // crash() only waits for merges to finish, not for background flushes
+        .setFlushThreadCount(0));
     ((ConcurrentMergeScheduler) writer.getConfig().getMergeScheduler()).setSuppressExceptions();
     if (initialCommit) {
       writer.commit();
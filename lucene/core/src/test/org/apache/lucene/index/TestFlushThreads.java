@@ -0,0 +1,301 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.DocValuesConsumer;
+import org.apache.lucene.codecs.DocValuesFormat;
+import org.apache.lucene.codecs.DocValuesProducer;
+import org.apache.lucene.codecs.FieldsConsumer;
+import org.apache.lucene.codecs.FieldsProducer;
+import org.apache.lucene.codecs.FilterCodec;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MockDirectoryWrapper;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.ThreadInterruptedException;
+import org.apache.lucene.util._TestUtil;
+
+/** Tests flushing segments on the threads of {@link IndexWriterConfig#setFlushThreadCount}. */
+public class TestFlushThreads extends LuceneTestCase {
+
+  private static Document newDoc(int id, int version) {
+    Document doc = new Document();
+    doc.add(new StringField("id", Integer.toString(id), Field.Store.YES));
+    FieldType vectors = new FieldType(TextField.TYPE_NOT_STORED);
+    vectors.setStoreTermVectors(true);
+    doc.add(new Field("body", "text id" + id + " version" + version, vectors));
+    doc.add(new NumericDocValuesField("version", version));
+    return doc;
+  }
+
+  public void testConcurrentIndexing() throws Exception {
+    Directory dir = newDirectory();
+    final Set<String> flushThreads = Collections.synchronizedSet(new HashSet<String>());
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setFlushThreadCount(_TestUtil.nextInt(random(), 1, 3));
+    iwc.setMaxBufferedDocs(_TestUtil.nextInt(random(), 2, 20));
+    iwc.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    final IndexWriter writer = new IndexWriter(dir, iwc) {
+      @Override
+      protected void doAfterFlush() {
+        final Thread thread = Thread.currentThread();
+        // like merge threads, flush threads don't keep the JVM alive
+        if (thread.getName().startsWith("Lucene Flush Thread")) {
+          assertTrue(thread.isDaemon());
+        }
+        flushThreads.add(thread.getName());
+      }
+    };
+
+    final int numThreads = _TestUtil.nextInt(random(), 2, 4);
+    final int numDocs = atLeast(200);
+    final int numVersions = 3;
+    final CountDownLatch start = new CountDownLatch(1);
+    final Throwable[] failure = new Throwable[1];
+    Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final int thread = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for (int version = 0; version < numVersions; version++) {
+              for (int id = thread; id < numDocs; id += numThreads) {
+                writer.updateDocument(new Term("id", Integer.toString(id)), newDoc(id, version));
+              }
+            }
+          } catch (Throwable t) {
+            failure[0] = t;
+          }
+        }
+      };
+      threads[t].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(failure[0]);
+    writer.commit();
+
+    boolean flushedByFlushThread = false;
+    for (String name : flushThreads) {
+      flushedByFlushThread |= name.startsWith("Lucene Flush Thread");
+    }
+    assertTrue(flushThreads.toString(), flushedByFlushThread);
+
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(numDocs, reader.numDocs());
+    IndexSearcher searcher = newSearcher(reader);
+    for (int id = 0; id < numDocs; id++) {
+      TopDocs hits = searcher.search(new TermQuery(new Term("body", "id" + id)), 2);
+      assertEquals(1, hits.totalHits);
+      final int doc = hits.scoreDocs[0].doc;
+      assertEquals(Integer.toString(id), searcher.doc(doc).get("id"));
+      final AtomicReaderContext leaf = reader.leaves().get(ReaderUtil.subIndex(doc, reader.leaves()));
+      assertEquals(numVersions - 1, leaf.reader().getNumericDocValues("version").get(doc - leaf.docBase));
+      assertNotNull(reader.getTermVectors(doc));
+    }
+    reader.close();
+    writer.close();
+    dir.close();
+  }
+
+  public void testSingleThreadKeepsDocOrder() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setFlushThreadCount(_TestUtil.nextInt(random(), 2, 4));
+    iwc.setMaxBufferedDocs(2);
+    iwc.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    iwc.setMergePolicy(newLogMergePolicy());
+    IndexWriter writer = new IndexWriter(dir, iwc);
+    final int numDocs = atLeast(100);
+    for (int id = 0; id < numDocs; id++) {
+      writer.addDocument(newDoc(id, 0));
+    }
+    writer.close();
+
+    // the segments of one indexing thread are published in the order of its documents
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(numDocs, reader.maxDoc());
+    for (int doc = 0; doc < numDocs; doc++) {
+      assertEquals(Integer.toString(doc), reader.document(doc).get("id"));
+    }
+    reader.close();
+    dir.close();
+  }
+
+  public void testFlushException() throws Exception {
+    MockDirectoryWrapper dir = newMockDirectory();
+    MockDirectoryWrapper.Failure failure = new MockDirectoryWrapper.Failure() {
+      @Override
+      public void eval(MockDirectoryWrapper dir) throws IOException {
+        if (doFail && Thread.currentThread().getName().startsWith("Lucene Flush Thread")) {
+          throw new IOException("now failing on flush thread");
+        }
+      }
+    };
+    failure.setDoFail();
+    dir.failOn(failure);
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setFlushThreadCount(1);
+    iwc.setMaxBufferedDocs(2);
+    iwc.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    iwc.setMergeScheduler(new SerialMergeScheduler());
+    IndexWriter writer = new IndexWriter(dir, iwc);
+    // the documents of the failed flush are lost: all following indexing
+    // and flushing calls fail, until the writer is rolled back
+    try {
+      for (int id = 0; id < 100; id++) {
+        writer.addDocument(newDoc(id, 0));
+      }
+      writer.commit();
+      fail("background flush did not fail");
+    } catch (IllegalStateException expected) {
+      assertFlushFailure(expected);
+    }
+    failure.clearDoFail();
+    try {
+      writer.addDocument(newDoc(100, 0));
+      fail("writer did not fail");
+    } catch (IllegalStateException expected) {
+      assertFlushFailure(expected);
+    }
+    try {
+      writer.commit();
+      fail("writer did not fail");
+    } catch (IllegalStateException expected) {
+      assertFlushFailure(expected);
+    }
+    writer.rollback();
+    dir.close();
+  }
+
+  private static void assertFlushFailure(IllegalStateException e) {
+    assertTrue(e.getCause().getMessage(), e.getCause().getMessage().startsWith("background flush of segment"));
+    assertEquals("now failing on flush thread", e.getCause().getCause().getMessage());
+  }
+
+  public void testFlushThreadPublishes() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setFlushThreadCount(1);
+    iwc.setMaxBufferedDocs(2);
+    iwc.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    iwc.setMergePolicy(NoMergePolicy.COMPOUND_FILES);
+    IndexWriter writer = new IndexWriter(dir, iwc);
+    final int numSegments = _TestUtil.nextInt(random(), 1, 5);
+    for (int id = 0; id < 2 * numSegments; id++) {
+      writer.addDocument(newDoc(id, 0));
+    }
+    // no indexing thread comes back: the flush thread publishes its segments
+    final long deadline = System.currentTimeMillis() + 30000;
+    while (writer.getSegmentCount() < numSegments && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(numSegments, writer.getSegmentCount());
+    writer.close();
+    dir.close();
+  }
+
+  public void testDocValuesWrittenConcurrently() throws Exception {
+    Directory dir = newDirectory();
+    final CountDownLatch docValuesStarted = new CountDownLatch(1);
+    final Set<String> docValuesThreads = Collections.synchronizedSet(new HashSet<String>());
+    final Codec codec = Codec.getDefault();
+    final DocValuesFormat docValuesFormat = codec.docValuesFormat();
+    final PostingsFormat postingsFormat = codec.postingsFormat();
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setFlushThreadCount(1);
+    iwc.setMaxBufferedDocs(1000);
+    iwc.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    // same names, so that the index can be read with the wrapped formats
+    iwc.setCodec(new FilterCodec(codec.getName(), codec) {
+      @Override
+      public DocValuesFormat docValuesFormat() {
+        return new DocValuesFormat(docValuesFormat.getName()) {
+          @Override
+          public DocValuesConsumer fieldsConsumer(SegmentWriteState state) throws IOException {
+            docValuesThreads.add(Thread.currentThread().getName());
+            docValuesStarted.countDown();
+            return docValuesFormat.fieldsConsumer(state);
+          }
+
+          @Override
+          public DocValuesProducer fieldsProducer(SegmentReadState state) throws IOException {
+            return docValuesFormat.fieldsProducer(state);
+          }
+        };
+      }
+
+      @Override
+      public PostingsFormat postingsFormat() {
+        return new PostingsFormat(postingsFormat.getName()) {
+          @Override
+          public FieldsConsumer fieldsConsumer(SegmentWriteState state) throws IOException {
+            // doc values are written while the postings are
+            try {
+              assertTrue(docValuesStarted.await(30, TimeUnit.SECONDS));
+            } catch (InterruptedException ie) {
+              throw new ThreadInterruptedException(ie);
+            }
+            return postingsFormat.fieldsConsumer(state);
+          }
+
+          @Override
+          public FieldsProducer fieldsProducer(SegmentReadState state) throws IOException {
+            return postingsFormat.fieldsProducer(state);
+          }
+        };
+      }
+    });
+    IndexWriter writer = new IndexWriter(dir, iwc);
+    final int numDocs = atLeast(10);
+    for (int id = 0; id < numDocs; id++) {
+      writer.addDocument(newDoc(id, 0));
+    }
+    writer.commit();
+    assertEquals(1, docValuesThreads.size());
+    assertTrue(docValuesThreads.toString(), docValuesThreads.iterator().next().startsWith("Lucene Flush Thread"));
+    writer.close();
+
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(numDocs, reader.numDocs());
+    reader.close();
+    dir.close();
+  }
+}
@@ -54,6 +54,8 @@ public class TestIndexFileDeleter extends LuceneTestCase {
         dir,
         newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())).
             setMaxBufferedDocs(10).
+            // the segments must be flushed before the compound file setting changes
+            setFlushThreadCount(0).
             setMergePolicy(mergePolicy)
     );
 
@@ -283,6 +283,8 @@ public class TestIndexWriter extends LuceneTestCase {
           dir,
           newIndexWriterConfig( TEST_VERSION_CURRENT, new MockAnalyzer(random())).
               setRAMBufferSizeMB(0.000001).
+              // the new segment must be written before addDocument returns
+              setFlushThreadCount(0).
               setMergePolicy(newLogMergePolicy(10))
       );
       int lastNumFile = dir.listAll().length;
@@ -304,7 +306,8 @@ public class TestIndexWriter extends LuceneTestCase {
     // maxBufferedDocs in a write session
     public void testChangingRAMBuffer() throws IOException {
       Directory dir = newDirectory();      
-      IndexWriter writer  = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())));
+      // counts flushes right after adding documents
+      IndexWriter writer  = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())).setFlushThreadCount(0));
       writer.getConfig().setMaxBufferedDocs(10);
       writer.getConfig().setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
 
@@ -1428,7 +1431,9 @@ public class TestIndexWriter extends LuceneTestCase {
     Directory dir = newDirectory();
     IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(
         TEST_VERSION_CURRENT, new MockAnalyzer(random()))
-                                         .setMaxBufferedDocs(2).setMergePolicy(newLogMergePolicy()));
+                                         .setMaxBufferedDocs(2).setMergePolicy(newLogMergePolicy())
+                                         // counts files right after adding documents
+                                         .setFlushThreadCount(0));
     String[] files = dir.listAll();
 
     // Creating over empty dir should not create any files,
@@ -76,6 +76,8 @@ public class TestIndexWriterConfig extends LuceneTestCase {
     assertEquals(ThreadAffinityDocumentsWriterThreadPool.class, conf.getIndexerThreadPool().getClass());
     assertEquals(FlushByRamOrCountsPolicy.class, conf.getFlushPolicy().getClass());
     assertEquals(IndexWriterConfig.DEFAULT_RAM_PER_THREAD_HARD_LIMIT_MB, conf.getRAMPerThreadHardLimitMB());
+    assertEquals(IndexWriterConfig.DEFAULT_FLUSH_THREAD_COUNT, conf.getFlushThreadCount());
+    assertEquals(IndexWriterConfig.DEFAULT_MERGE_PHASE_THREAD_COUNT, conf.getMergePhaseThreadCount());
     assertEquals(Codec.getDefault(), conf.getCodec());
     assertEquals(InfoStream.getDefault(), conf.getInfoStream());
     // Sanity check - validate that all getters are covered.
@@ -102,6 +104,8 @@ public class TestIndexWriterConfig extends LuceneTestCase {
     getters.add("getReaderTermsIndexDivisor");
     getters.add("getFlushPolicy");
     getters.add("getRAMPerThreadHardLimitMB");
+    getters.add("getFlushThreadCount");
+    getters.add("getMergePhaseThreadCount");
     getters.add("getCodec");
     getters.add("getInfoStream");
     
@@ -35,7 +35,7 @@ public class TestIndexWriterMergePolicy extends LuceneTestCase {
 
     IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(
         TEST_VERSION_CURRENT, new MockAnalyzer(random()))
-        .setMaxBufferedDocs(10).setMergePolicy(new LogDocMergePolicy()));
+        .setMaxBufferedDocs(10).setFlushThreadCount(0).setMergePolicy(new LogDocMergePolicy()));
 
     for (int i = 0; i < 100; i++) {
       addDoc(writer);
@@ -52,7 +52,7 @@ public class TestIndexWriterMergePolicy extends LuceneTestCase {
 
     IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(
         TEST_VERSION_CURRENT, new MockAnalyzer(random()))
-        .setMaxBufferedDocs(10).setMergePolicy(new LogDocMergePolicy()));
+        .setMaxBufferedDocs(10).setFlushThreadCount(0).setMergePolicy(new LogDocMergePolicy()));
 
     boolean noOverMerge = false;
     for (int i = 0; i < 100; i++) {
@@ -77,7 +77,7 @@ public class TestIndexWriterMergePolicy extends LuceneTestCase {
     mp.setMergeFactor(10);
     IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(
         TEST_VERSION_CURRENT, new MockAnalyzer(random()))
-        .setMaxBufferedDocs(10).setMergePolicy(mp));
+        .setMaxBufferedDocs(10).setFlushThreadCount(0).setMergePolicy(mp));
 
     for (int i = 0; i < 100; i++) {
       addDoc(writer);
@@ -87,7 +87,7 @@ public class TestIndexWriterMergePolicy extends LuceneTestCase {
       mp.setMergeFactor(10);
       writer = new IndexWriter(dir, newIndexWriterConfig( TEST_VERSION_CURRENT,
           new MockAnalyzer(random())).setOpenMode(
-          OpenMode.APPEND).setMaxBufferedDocs(10).setMergePolicy(mp));
+          OpenMode.APPEND).setMaxBufferedDocs(10).setFlushThreadCount(0).setMergePolicy(mp));
       mp.setMinMergeDocs(100);
       checkInvariants(writer);
     }
@@ -103,7 +103,7 @@ public class TestIndexWriterMergePolicy extends LuceneTestCase {
     IndexWriter writer = new IndexWriter(
         dir,
         newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())).
-            setMaxBufferedDocs(10).
+            setMaxBufferedDocs(10).setFlushThreadCount(0).
             setMergePolicy(newLogMergePolicy()).
             setMergeScheduler(new SerialMergeScheduler())
     );
@@ -132,7 +132,7 @@ public class TestIndexWriterMergePolicy extends LuceneTestCase {
 
     IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(
         TEST_VERSION_CURRENT, new MockAnalyzer(random()))
-        .setMaxBufferedDocs(101).setMergePolicy(new LogDocMergePolicy())
+        .setMaxBufferedDocs(101).setFlushThreadCount(0).setMergePolicy(new LogDocMergePolicy())
         .setMergeScheduler(new SerialMergeScheduler()));
 
     // leftmost* segment has 1 doc
@@ -146,7 +146,7 @@ public class TestIndexWriterMergePolicy extends LuceneTestCase {
 
       writer = new IndexWriter(dir, newIndexWriterConfig( TEST_VERSION_CURRENT,
           new MockAnalyzer(random())).setOpenMode(
-          OpenMode.APPEND).setMaxBufferedDocs(101).setMergePolicy(new LogDocMergePolicy())
+          OpenMode.APPEND).setMaxBufferedDocs(101).setFlushThreadCount(0).setMergePolicy(new LogDocMergePolicy())
                           .setMergeScheduler(new SerialMergeScheduler()));
     }
 
@@ -155,7 +155,7 @@ public class TestIndexWriterMergePolicy extends LuceneTestCase {
     ldmp.setMergeFactor(10);
     writer = new IndexWriter(dir, newIndexWriterConfig( TEST_VERSION_CURRENT,
         new MockAnalyzer(random())).setOpenMode(
-        OpenMode.APPEND).setMaxBufferedDocs(10).setMergePolicy(ldmp).setMergeScheduler(new SerialMergeScheduler()));
+        OpenMode.APPEND).setMaxBufferedDocs(10).setFlushThreadCount(0).setMergePolicy(ldmp).setMergeScheduler(new SerialMergeScheduler()));
 
     // merge policy only fixes segments on levels where merges
     // have been triggered, so check invariants after all adds
@@ -184,7 +184,7 @@ public class TestIndexWriterMergePolicy extends LuceneTestCase {
     ldmp.setMergeFactor(100);
     IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(
         TEST_VERSION_CURRENT, new MockAnalyzer(random()))
-        .setMaxBufferedDocs(10).setMergePolicy(ldmp));
+        .setMaxBufferedDocs(10).setFlushThreadCount(0).setMergePolicy(ldmp));
 
     for (int i = 0; i < 250; i++) {
       addDoc(writer);
@@ -205,7 +205,7 @@ public class TestIndexWriterMergePolicy extends LuceneTestCase {
     ldmp.setMergeFactor(5);
     writer = new IndexWriter(dir, newIndexWriterConfig( TEST_VERSION_CURRENT,
         new MockAnalyzer(random())).setOpenMode(
-        OpenMode.APPEND).setMaxBufferedDocs(10).setMergePolicy(ldmp).setMergeScheduler(new ConcurrentMergeScheduler()));
+        OpenMode.APPEND).setMaxBufferedDocs(10).setFlushThreadCount(0).setMergePolicy(ldmp).setMergeScheduler(new ConcurrentMergeScheduler()));
 
     // merge factor is changed, so check invariants after all adds
     for (int i = 0; i < 10; i++) {
@@ -227,6 +227,8 @@ public class TestIndexWriterMergePolicy extends LuceneTestCase {
     writer.addDocument(doc);
   }
 
+  // the buffered docs and segments are only checked right after the adds
+  // when the indexing threads flush, so all writers set flushThreadCount to 0
   private void checkInvariants(IndexWriter writer) {
     writer.waitForMerges();
     int maxBufferedDocs = writer.getConfig().getMaxBufferedDocs();
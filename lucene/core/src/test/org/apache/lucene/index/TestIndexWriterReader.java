@@ -941,6 +941,8 @@ public class TestIndexWriterReader extends LuceneTestCase {
         dir,
         newIndexWriterConfig( TEST_VERSION_CURRENT, new MockAnalyzer(random())).
             setMaxBufferedDocs(2).
+            // the merge must be started by the time the last addDocument returns
+            setFlushThreadCount(0).
             setReaderPooling(true).
             setMergedSegmentWarmer(new IndexWriter.IndexReaderWarmer() {
               @Override
@@ -139,6 +139,8 @@ public class TestIndexWriterWithThreads extends LuceneTestCase {
           dir,
           newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())).
               setMaxBufferedDocs(2).
+              // the indexing threads must see the exceptions hit while flushing
+              setFlushThreadCount(0).
               setMergeScheduler(new ConcurrentMergeScheduler()).
               setMergePolicy(newLogMergePolicy(4))
       );
@@ -255,6 +257,8 @@ public class TestIndexWriterWithThreads extends LuceneTestCase {
           dir,
           newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())).
               setMaxBufferedDocs(2).
+              // the indexing threads must see the exceptions hit while flushing
+              setFlushThreadCount(0).
               setMergeScheduler(new ConcurrentMergeScheduler()).
               setMergePolicy(newLogMergePolicy(4))
       );
@@ -312,7 +316,9 @@ public class TestIndexWriterWithThreads extends LuceneTestCase {
     MockDirectoryWrapper dir = newMockDirectory();
 
     IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig( TEST_VERSION_CURRENT, new MockAnalyzer(random()))
-      .setMaxBufferedDocs(2).setMergeScheduler(new ConcurrentMergeScheduler()));
+      .setMaxBufferedDocs(2).setMergeScheduler(new ConcurrentMergeScheduler())
+      // addDocument must see the exceptions hit while flushing
+      .setFlushThreadCount(0));
     final Document doc = new Document();
     FieldType customType = new FieldType(TextField.TYPE_STORED);
     customType.setStoreTermVectors(true);
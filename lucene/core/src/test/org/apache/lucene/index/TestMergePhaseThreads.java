@@ -0,0 +1,136 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MockDirectoryWrapper;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+/** Tests merging the parts of a segment on the threads of {@link IndexWriterConfig#setMergePhaseThreadCount}. */
+public class TestMergePhaseThreads extends LuceneTestCase {
+
+  private static Document newDoc(int id) {
+    Document doc = new Document();
+    doc.add(new StringField("id", Integer.toString(id), Field.Store.YES));
+    FieldType vectors = new FieldType(TextField.TYPE_NOT_STORED);
+    vectors.setStoreTermVectors(true);
+    doc.add(new Field("body", "text id" + id, vectors));
+    doc.add(new NumericDocValuesField("value", id * 3L));
+    return doc;
+  }
+
+  public void testForceMerge() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setMergePhaseThreadCount(_TestUtil.nextInt(random(), 1, 4));
+    iwc.setMaxBufferedDocs(_TestUtil.nextInt(random(), 10, 50));
+    IndexWriter writer = new IndexWriter(dir, iwc);
+    final int numDocs = atLeast(300);
+    for (int id = 0; id < numDocs; id++) {
+      writer.addDocument(newDoc(id));
+    }
+    writer.deleteDocuments(new Term("id", "7"));
+    writer.forceMerge(1);
+    writer.close();
+
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(1, reader.leaves().size());
+    assertEquals(numDocs - 1, reader.numDocs());
+    IndexSearcher searcher = newSearcher(reader);
+    NumericDocValues values = reader.leaves().get(0).reader().getNumericDocValues("value");
+    for (int id = 0; id < numDocs; id++) {
+      TopDocs hits = searcher.search(new TermQuery(new Term("body", "id" + id)), 2);
+      if (id == 7) {
+        assertEquals(0, hits.totalHits);
+        continue;
+      }
+      assertEquals(1, hits.totalHits);
+      final int doc = hits.scoreDocs[0].doc;
+      assertEquals(Integer.toString(id), searcher.doc(doc).get("id"));
+      assertEquals(id * 3L, values.get(doc));
+      assertNotNull(reader.getTermVectors(doc).terms("body"));
+    }
+    reader.close();
+    dir.close();
+  }
+
+  public void testPhaseException() throws Exception {
+    MockDirectoryWrapper dir = newMockDirectory();
+    MockDirectoryWrapper.Failure failure = new MockDirectoryWrapper.Failure() {
+      @Override
+      public void eval(MockDirectoryWrapper dir) throws IOException {
+        if (doFail) {
+          for (StackTraceElement element : new Exception().getStackTrace()) {
+            if ("mergeNorms".equals(element.getMethodName())) {
+              throw new IOException("now failing on merge of norms");
+            }
+          }
+        }
+      }
+    };
+    failure.setDoFail();
+    dir.failOn(failure);
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setMergePhaseThreadCount(2);
+    iwc.setMaxBufferedDocs(10);
+    iwc.setMergePolicy(NoMergePolicy.COMPOUND_FILES);
+    iwc.setMergeScheduler(new SerialMergeScheduler());
+    IndexWriter writer = new IndexWriter(dir, iwc);
+    for (int id = 0; id < 50; id++) {
+      writer.addDocument(newDoc(id));
+    }
+    writer.commit();
+    writer.close();
+
+    iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setMergePhaseThreadCount(2);
+    iwc.setMergeScheduler(new SerialMergeScheduler());
+    writer = new IndexWriter(dir, iwc);
+    try {
+      writer.forceMerge(1);
+      fail("merge did not fail");
+    } catch (IOException expected) {
+      Throwable cause = expected;
+      while (cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      assertEquals("now failing on merge of norms", cause.getMessage());
+    }
+    failure.clearDoFail();
+    writer.rollback();
+
+    // the index is intact
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(50, reader.numDocs());
+    reader.close();
+    dir.close();
+  }
+}
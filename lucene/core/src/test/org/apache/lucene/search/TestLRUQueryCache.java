@@ -0,0 +1,284 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestLRUQueryCache extends LuceneTestCase {
+
+  private static final String[] COLORS = new String[] { "blue", "red", "green", "yellow" };
+
+  private static IndexWriter newWriter(Directory dir) throws Exception {
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setMergePolicy(NoMergePolicy.COMPOUND_FILES);
+    return new IndexWriter(dir, iwc);
+  }
+
+  private static void addDocs(IndexWriter writer, int start, int numDocs) throws Exception {
+    for (int i = start; i < start + numDocs; i++) {
+      Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+      doc.add(new StringField("color", COLORS[i % COLORS.length], Field.Store.NO));
+      writer.addDocument(doc);
+    }
+    writer.commit();
+  }
+
+  private static int totalHits(IndexSearcher searcher, Query query) throws Exception {
+    TotalHitCountCollector collector = new TotalHitCountCollector();
+    searcher.search(query, collector);
+    return collector.getTotalHits();
+  }
+
+  public void testCountAndFilter() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = newWriter(dir);
+    addDocs(writer, 0, 100);
+    addDocs(writer, 100, 50);
+    writer.deleteDocuments(new Term("id", "3"), new Term("id", "120"));
+    DirectoryReader reader = DirectoryReader.open(writer, true);
+    IndexSearcher uncached = new IndexSearcher(reader);
+    IndexSearcher searcher = new IndexSearcher(reader);
+    LRUQueryCache cache = new LRUQueryCache(100, 1 << 20);
+    searcher.setQueryCache(cache);
+    searcher.setQueryCachingPolicy(QueryCachingPolicy.ALWAYS_CACHE);
+
+    for (int iter = 0; iter < 2; iter++) {
+      for (String color : COLORS) {
+        Query query = new TermQuery(new Term("color", color));
+        assertEquals(totalHits(uncached, query), searcher.count(query));
+        Filter filter = new QueryWrapperFilter(query);
+        TopDocs expected = uncached.search(new MatchAllDocsQuery(), filter, 200);
+        TopDocs actual = searcher.search(new MatchAllDocsQuery(), filter, 200);
+        assertEquals(expected.totalHits, actual.totalHits);
+        for (int i = 0; i < expected.scoreDocs.length; i++) {
+          assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+        }
+      }
+    }
+    assertEquals(COLORS.length, cache.getFilterCount());
+    assertEquals(COLORS.length * reader.leaves().size(), cache.getCacheSize());
+    assertEquals(cache.getCacheSize(), cache.getCacheCount());
+    assertEquals(cache.getCacheSize(), cache.getMissCount());
+    assertEquals(3 * cache.getCacheSize(), cache.getHitCount());
+    assertTrue(cache.ramBytesUsed() > 0);
+
+    reader.close();
+    writer.close();
+    dir.close();
+  }
+
+  public void testEviction() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = newWriter(dir);
+    addDocs(writer, 0, 100);
+    DirectoryReader reader = DirectoryReader.open(writer, true);
+    IndexSearcher searcher = new IndexSearcher(reader);
+    LRUQueryCache cache = new LRUQueryCache(2, 1 << 20);
+    searcher.setQueryCache(cache);
+    searcher.setQueryCachingPolicy(QueryCachingPolicy.ALWAYS_CACHE);
+
+    searcher.count(new TermQuery(new Term("color", "blue")));
+    searcher.count(new TermQuery(new Term("color", "red")));
+    // blue becomes the most recently used
+    searcher.count(new TermQuery(new Term("color", "blue")));
+    searcher.count(new TermQuery(new Term("color", "green")));
+    assertEquals(2, cache.getFilterCount());
+    // red was evicted on all segments
+    final int numLeaves = reader.leaves().size();
+    assertEquals(numLeaves, cache.getEvictionCount());
+    final long hits = cache.getHitCount();
+    searcher.count(new TermQuery(new Term("color", "blue")));
+    assertEquals(hits + numLeaves, cache.getHitCount());
+    searcher.count(new TermQuery(new Term("color", "red")));
+    assertEquals(hits + numLeaves, cache.getHitCount());
+
+    cache.clearFilter(new QueryWrapperFilter(new TermQuery(new Term("color", "red"))));
+    assertEquals(1, cache.getFilterCount());
+    cache.clear();
+    assertEquals(0, cache.getFilterCount());
+    assertEquals(0, cache.ramBytesUsed());
+
+    // a cache that only has room for a couple of bit sets
+    final long bitSetRamBytesUsed = LRUQueryCache.FILTER_DEFAULT_RAM_BYTES_USED + 100;
+    cache = new LRUQueryCache(100, 2 * bitSetRamBytesUsed + 100);
+    searcher.setQueryCache(cache);
+    for (String color : COLORS) {
+      searcher.count(new TermQuery(new Term("color", color)));
+      assertTrue(cache.ramBytesUsed() <= 2 * bitSetRamBytesUsed + 100);
+    }
+    assertTrue(cache.getFilterCount() < COLORS.length);
+
+    reader.close();
+    writer.close();
+    dir.close();
+  }
+
+  public void testReuseAcrossReopens() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = newWriter(dir);
+    addDocs(writer, 0, 100);
+    DirectoryReader reader = DirectoryReader.open(writer, true);
+    LRUQueryCache cache = new LRUQueryCache(100, 1 << 20);
+    Query query = new TermQuery(new Term("color", "red"));
+
+    IndexSearcher searcher = new IndexSearcher(reader);
+    searcher.setQueryCache(cache);
+    searcher.setQueryCachingPolicy(QueryCachingPolicy.ALWAYS_CACHE);
+    assertEquals(25, searcher.count(query));
+    final int oldLeaves = reader.leaves().size();
+    assertEquals(oldLeaves, cache.getCacheSize());
+
+    addDocs(writer, 100, 20);
+    writer.deleteDocuments(new Term("id", "1"));
+    DirectoryReader newReader = DirectoryReader.openIfChanged(reader, writer, true);
+    assertNotNull(newReader);
+    reader.close();
+    reader = newReader;
+    searcher = new IndexSearcher(reader);
+    searcher.setQueryCache(cache);
+    searcher.setQueryCachingPolicy(QueryCachingPolicy.ALWAYS_CACHE);
+    final long hits = cache.getHitCount();
+    // the segments that were already cached are reused, with their new deletions
+    assertEquals(29, searcher.count(query));
+    assertEquals(hits + oldLeaves, cache.getHitCount());
+
+    // closing the segments releases their bit sets
+    reader.close();
+    writer.close();
+    assertEquals(0, cache.getCacheSize());
+    dir.close();
+  }
+
+  public void testCountsWithFrequencyPolicy() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = newWriter(dir);
+    addDocs(writer, 0, 100);
+    addDocs(writer, 100, 50);
+    DirectoryReader reader = DirectoryReader.open(writer, true);
+    final int numLeaves = reader.leaves().size();
+    LRUQueryCache cache = new LRUQueryCache(100, 1 << 20);
+    // caches filters from their second use on
+    final Map<Filter,Integer> uses = new HashMap<Filter,Integer>();
+    QueryCachingPolicy policy = new QueryCachingPolicy() {
+      @Override
+      public void onUse(Filter filter) {
+        final Integer count = uses.get(filter);
+        uses.put(filter, count == null ? 1 : count + 1);
+      }
+
+      @Override
+      public boolean shouldCache(Filter filter, AtomicReaderContext context) {
+        return uses.get(filter) >= 2;
+      }
+    };
+    IndexSearcher searcher = new IndexSearcher(reader);
+    searcher.setQueryCache(cache);
+    searcher.setQueryCachingPolicy(policy);
+
+    Query query = new TermQuery(new Term("color", "red"));
+    Filter filter = new QueryWrapperFilter(query);
+    // not cached yet: one use and one miss per segment, not more
+    assertEquals(38, searcher.count(query));
+    assertEquals(1, uses.get(filter).intValue());
+    assertEquals(numLeaves, cache.getMissCount());
+    assertEquals(0, cache.getHitCount());
+    assertEquals(0, cache.getCacheCount());
+
+    // cached on the second use
+    assertEquals(38, searcher.count(query));
+    assertEquals(2, uses.get(filter).intValue());
+    assertEquals(2 * numLeaves, cache.getMissCount());
+    assertEquals(0, cache.getHitCount());
+    assertEquals(numLeaves, cache.getCacheCount());
+
+    assertEquals(38, searcher.count(query));
+    assertEquals(3, uses.get(filter).intValue());
+    assertEquals(2 * numLeaves, cache.getMissCount());
+    assertEquals(numLeaves, cache.getHitCount());
+
+    // same for filters given to search
+    Filter blue = new QueryWrapperFilter(new TermQuery(new Term("color", "blue")));
+    for (int i = 1; i <= 3; i++) {
+      assertEquals(38, searcher.search(new MatchAllDocsQuery(), blue, 1).totalHits);
+      assertEquals(i, uses.get(blue).intValue());
+    }
+    assertEquals(4 * numLeaves, cache.getMissCount());
+    assertEquals(2 * numLeaves, cache.getHitCount());
+    assertEquals(2 * numLeaves, cache.getCacheCount());
+
+    reader.close();
+    writer.close();
+    dir.close();
+  }
+
+  public void testUsageTrackingPolicy() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = newWriter(dir);
+    addDocs(writer, 0, 100);
+    DirectoryReader reader = DirectoryReader.open(writer, true);
+    AtomicReaderContext leaf = reader.leaves().get(0);
+
+    UsageTrackingQueryCachingPolicy policy = new UsageTrackingQueryCachingPolicy(0, 0, 8);
+    Filter termFilter = new QueryWrapperFilter(new TermQuery(new Term("color", "red")));
+    for (int i = 0; i < 4; i++) {
+      policy.onUse(termFilter);
+      assertFalse(policy.shouldCache(termFilter, leaf));
+    }
+    policy.onUse(termFilter);
+    assertTrue(policy.shouldCache(termFilter, leaf));
+
+    // costly filters are cached sooner
+    Filter prefixFilter = new PrefixFilter(new Term("color", "r"));
+    policy.onUse(prefixFilter);
+    assertFalse(policy.shouldCache(prefixFilter, leaf));
+    policy.onUse(prefixFilter);
+    assertTrue(policy.shouldCache(prefixFilter, leaf));
+
+    // only recent uses count
+    for (int i = 0; i < 8; i++) {
+      policy.onUse(new QueryWrapperFilter(new TermQuery(new Term("color", "blue"))));
+    }
+    assertFalse(policy.shouldCache(termFilter, leaf));
+    assertFalse(policy.shouldCache(prefixFilter, leaf));
+
+    // small segments are not cached
+    policy = new UsageTrackingQueryCachingPolicy(1000, 0, 8);
+    policy.onUse(prefixFilter);
+    policy.onUse(prefixFilter);
+    assertFalse(policy.shouldCache(prefixFilter, leaf));
+
+    reader.close();
+    writer.close();
+    dir.close();
+  }
+}
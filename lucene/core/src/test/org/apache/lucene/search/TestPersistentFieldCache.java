@@ -0,0 +1,242 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoubleField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FloatField;
+import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FilterAtomicReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestPersistentFieldCache extends LuceneTestCase {
+
+  private static void addDocs(IndexWriter writer, int numDocs) throws Exception {
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      if (random().nextInt(10) != 0) {
+        doc.add(new IntField("int", random().nextInt(), Field.Store.NO));
+        doc.add(new LongField("long", random().nextLong(), Field.Store.NO));
+        doc.add(new FloatField("float", random().nextFloat() - 0.5f, Field.Store.NO));
+        doc.add(new DoubleField("double", random().nextDouble() * 1000, Field.Store.NO));
+        doc.add(new StringField("intstr", Integer.toString(random().nextInt(100)), Field.Store.NO));
+        doc.add(new StringField("string", _TestUtil.randomRealisticUnicodeString(random()), Field.Store.NO));
+      }
+      writer.addDocument(doc);
+    }
+  }
+
+  private static void assertSameValues(FieldCache expected, FieldCache actual, AtomicReader reader) throws Exception {
+    FieldCache.Ints expectedInts = expected.getInts(reader, "int", false);
+    FieldCache.Ints actualInts = actual.getInts(reader, "int", false);
+    FieldCache.Ints expectedIntStrs = expected.getInts(reader, "intstr", FieldCache.DEFAULT_INT_PARSER, false);
+    FieldCache.Ints actualIntStrs = actual.getInts(reader, "intstr", FieldCache.DEFAULT_INT_PARSER, false);
+    FieldCache.Longs expectedLongs = expected.getLongs(reader, "long", false);
+    FieldCache.Longs actualLongs = actual.getLongs(reader, "long", false);
+    FieldCache.Floats expectedFloats = expected.getFloats(reader, "float", false);
+    FieldCache.Floats actualFloats = actual.getFloats(reader, "float", false);
+    FieldCache.Doubles expectedDoubles = expected.getDoubles(reader, "double", false);
+    FieldCache.Doubles actualDoubles = actual.getDoubles(reader, "double", false);
+    SortedDocValues expectedSorted = expected.getTermsIndex(reader, "string");
+    SortedDocValues actualSorted = actual.getTermsIndex(reader, "string");
+    assertEquals(expectedSorted.getValueCount(), actualSorted.getValueCount());
+    BytesRef expectedTerm = new BytesRef();
+    BytesRef actualTerm = new BytesRef();
+    for (int doc = 0; doc < reader.maxDoc(); doc++) {
+      assertEquals(expectedInts.get(doc), actualInts.get(doc));
+      assertEquals(expectedIntStrs.get(doc), actualIntStrs.get(doc));
+      assertEquals(expectedLongs.get(doc), actualLongs.get(doc));
+      assertEquals(Float.floatToIntBits(expectedFloats.get(doc)), Float.floatToIntBits(actualFloats.get(doc)));
+      assertEquals(Double.doubleToLongBits(expectedDoubles.get(doc)), Double.doubleToLongBits(actualDoubles.get(doc)));
+      assertEquals(expectedSorted.getOrd(doc), actualSorted.getOrd(doc));
+    }
+    for (int ord = 0; ord < expectedSorted.getValueCount(); ord++) {
+      expectedSorted.lookupOrd(ord, expectedTerm);
+      actualSorted.lookupOrd(ord, actualTerm);
+      assertEquals(expectedTerm, actualTerm);
+    }
+  }
+
+  public void testValuesAndReuse() throws Exception {
+    Directory dir = newDirectory();
+    Directory cacheDir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())));
+    addDocs(writer, atLeast(300));
+    writer.close();
+
+    DirectoryReader reader = DirectoryReader.open(dir);
+    PersistentFieldCache cache = new PersistentFieldCache(cacheDir);
+    for (AtomicReaderContext context : reader.leaves()) {
+      assertSameValues(FieldCache.DEFAULT, cache, context.reader());
+    }
+    final int numFiles = cacheDir.listAll().length;
+    assertTrue(numFiles > 0);
+    assertEquals(numFiles, cache.filesWritten.get());
+    // cached values are reused
+    for (AtomicReaderContext context : reader.leaves()) {
+      assertSameValues(FieldCache.DEFAULT, cache, context.reader());
+    }
+    assertEquals(numFiles, cache.filesWritten.get());
+    reader.close();
+    assertEquals(0, cache.getCacheEntries().length);
+
+    // files are reused after a restart
+    reader = DirectoryReader.open(dir);
+    cache = new PersistentFieldCache(cacheDir);
+    for (AtomicReaderContext context : reader.leaves()) {
+      assertSameValues(FieldCache.DEFAULT, cache, context.reader());
+    }
+    assertEquals(0, cache.filesWritten.get());
+    reader.close();
+
+    dir.close();
+    cacheDir.close();
+  }
+
+  public void testStaleFiles() throws Exception {
+    Directory cacheDir = newDirectory();
+    PersistentFieldCache cache = new PersistentFieldCache(cacheDir);
+    for (int iter = 0; iter < 2; iter++) {
+      // a different index whose segments have the same names
+      Directory dir = newDirectory();
+      IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())));
+      addDocs(writer, atLeast(50));
+      writer.close();
+      DirectoryReader reader = DirectoryReader.open(dir);
+      for (AtomicReaderContext context : reader.leaves()) {
+        assertSameValues(FieldCache.DEFAULT, cache, context.reader());
+      }
+      reader.close();
+      dir.close();
+    }
+    cacheDir.close();
+  }
+
+  private static Set<String> segmentNames(IndexReader reader) {
+    Set<String> names = new HashSet<String>();
+    for (AtomicReaderContext context : reader.leaves()) {
+      names.add(((SegmentReader) context.reader()).getSegmentName());
+    }
+    return names;
+  }
+
+  public void testSortWrappedReader() throws Exception {
+    Directory dir = newDirectory();
+    Directory cacheDir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())));
+    addDocs(writer, atLeast(100));
+    writer.commit();
+    DirectoryReader reader = DirectoryReader.open(dir);
+    PersistentFieldCache cache = new PersistentFieldCache(cacheDir);
+    Map<String,SortField.Type> fields = new HashMap<String,SortField.Type>();
+    fields.put("string", SortField.Type.STRING);
+    fields.put("long", SortField.Type.LONG);
+    fields.put("float", SortField.Type.FLOAT);
+    DirectoryReader wrapped = cache.wrap(DirectoryReader.open(dir), fields);
+    Sort[] sorts = new Sort[] {
+        new Sort(new SortField("string", SortField.Type.STRING), new SortField("long", SortField.Type.LONG)),
+        new Sort(new SortField("float", SortField.Type.FLOAT, true))
+    };
+    for (int iter = 0; iter < 2; iter++) {
+      IndexSearcher searcher = new IndexSearcher(reader);
+      IndexSearcher wrappedSearcher = new IndexSearcher(wrapped);
+      for (Sort sort : sorts) {
+        TopFieldDocs expected = searcher.search(new MatchAllDocsQuery(), 20, sort);
+        TopFieldDocs actual = wrappedSearcher.search(new MatchAllDocsQuery(), 20, sort);
+        assertEquals(expected.totalHits, actual.totalHits);
+        for (int i = 0; i < expected.scoreDocs.length; i++) {
+          assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+        }
+      }
+      assertTrue(cache.filesWritten.get() > 0);
+      assertTrue(cache.filesWritten.get() <= 3 * wrapped.leaves().size());
+
+      // the wrapper is kept on reopen, and files are only written for new segments
+      addDocs(writer, 10);
+      writer.commit();
+      Set<String> oldSegments = segmentNames(reader);
+      DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+      reader.close();
+      reader = newReader;
+      DirectoryReader newWrapped = DirectoryReader.openIfChanged(wrapped);
+      wrapped.close();
+      wrapped = newWrapped;
+      assertTrue(wrapped.leaves().get(0).reader() instanceof FilterAtomicReader);
+      Set<String> newSegments = segmentNames(reader);
+      newSegments.removeAll(oldSegments);
+      cache.filesWritten.set(0);
+      for (Sort sort : sorts) {
+        new IndexSearcher(wrapped).search(new MatchAllDocsQuery(), 20, sort);
+      }
+      assertTrue(cache.filesWritten.get() <= 3 * newSegments.size());
+    }
+    writer.close();
+    reader.close();
+    wrapped.close();
+    dir.close();
+    cacheDir.close();
+  }
+
+  public void testDeleteUnusedFiles() throws Exception {
+    Directory dir = newDirectory();
+    Directory cacheDir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setMaxBufferedDocs(20);
+    IndexWriter writer = new IndexWriter(dir, iwc);
+    addDocs(writer, 50);
+    writer.commit();
+    PersistentFieldCache cache = new PersistentFieldCache(cacheDir);
+    DirectoryReader reader = DirectoryReader.open(dir);
+    for (AtomicReaderContext context : reader.leaves()) {
+      cache.getTermsIndex(context.reader(), "string");
+    }
+    writer.forceMerge(1);
+    writer.close();
+    DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+    assertNotNull(newReader);
+    reader.close();
+    reader = newReader;
+    cache.getTermsIndex(reader.leaves().get(0).reader(), "string");
+    assertTrue(cacheDir.listAll().length > 1);
+    cache.deleteUnusedFiles(reader);
+    assertEquals(1, cacheDir.listAll().length);
+    reader.close();
+    dir.close();
+    cacheDir.close();
+  }
+}
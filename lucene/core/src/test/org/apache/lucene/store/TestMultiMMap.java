@@ -18,12 +18,18 @@ package org.apache.lucene.store;
  */
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Random;
 
 import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
 import org.apache.lucene.index.RandomIndexWriter;
 import org.apache.lucene.store.Directory.IndexInputSlicer;
 import org.apache.lucene.util.BytesRef;
@@ -187,6 +193,53 @@ public class TestMultiMMap extends LuceneTestCase {
     }
   }
   
+  public void testReadIntsAndLongs() throws Exception {
+    for (int i = 2; i < 12; i++) {
+      MMapDirectory mmapDir = new MMapDirectory(_TestUtil.getTempDir("testReadIntsAndLongs"), null, 1<<i);
+      IndexOutput io = mmapDir.createOutput("values", newIOContext(random()));
+      // values are not necessarily aligned
+      final int padding = random().nextInt(8);
+      for (int j = 0; j < padding; j++) {
+        io.writeByte((byte) j);
+      }
+      final int[] ints = new int[atLeast(100)];
+      for (int j = 0; j < ints.length; j++) {
+        ints[j] = random().nextInt();
+        io.writeInt(ints[j]);
+      }
+      final long[] longs = new long[atLeast(100)];
+      for (int j = 0; j < longs.length; j++) {
+        longs[j] = random().nextLong();
+        io.writeLong(longs[j]);
+      }
+      io.close();
+
+      IndexInput ii = mmapDir.openInput("values", newIOContext(random()));
+      ii.seek(padding);
+      final int[] actualInts = new int[ints.length + 1];
+      for (int read = 0; read < ints.length; ) {
+        final int len = Math.min(ints.length - read, _TestUtil.nextInt(random(), 1, 50));
+        ii.readInts(actualInts, read + 1, len);
+        read += len;
+      }
+      for (int j = 0; j < ints.length; j++) {
+        assertEquals(ints[j], actualInts[j + 1]);
+      }
+      final long[] actualLongs = new long[longs.length + 1];
+      for (int read = 0; read < longs.length; ) {
+        final int len = Math.min(longs.length - read, _TestUtil.nextInt(random(), 1, 50));
+        ii.readLongs(actualLongs, read + 1, len);
+        read += len;
+      }
+      for (int j = 0; j < longs.length; j++) {
+        assertEquals(longs[j], actualLongs[j + 1]);
+      }
+      assertEquals(ii.length(), ii.getFilePointer());
+      ii.close();
+      mmapDir.close();
+    }
+  }
+
   public void testSeekSliceZero() throws Exception {
     for (int i = 0; i < 31; i++) {
       MMapDirectory mmapDir = new MMapDirectory(_TestUtil.getTempDir("testSeekSliceZero"), null, 1<<i);
@@ -294,6 +347,41 @@ public class TestMultiMMap extends LuceneTestCase {
     }
   }
   
+  public void testPreload() throws Exception {
+    MMapDirectory mmapDir = new MMapDirectory(_TestUtil.getTempDir("testPreload"), null, 1 << _TestUtil.nextInt(random(), 10, 20));
+    mmapDir.setPreloadExtensions(new HashSet<String>(Arrays.asList("hot", "fdt")));
+    final int length = atLeast(10000);
+    for (String name : new String[] { "a.hot", "b.cold" }) {
+      IndexOutput io = mmapDir.createOutput(name, newIOContext(random()));
+      for (int i = 0; i < length; i++) {
+        io.writeByte((byte) i);
+      }
+      io.close();
+    }
+    assertEquals(0, mmapDir.getPreloadedBytes());
+    IndexInput in = mmapDir.openInput("a.hot", newIOContext(random()));
+    assertEquals(length, mmapDir.getPreloadedBytes());
+    in.seek(length - 1);
+    assertEquals((byte) (length - 1), in.readByte());
+    in.close();
+    mmapDir.openInput("b.cold", newIOContext(random())).close();
+    assertEquals(length, mmapDir.getPreloadedBytes());
+
+    // files in compound files are preloaded when they are opened
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setMergePolicy(NoMergePolicy.COMPOUND_FILES);
+    IndexWriter writer = new IndexWriter(mmapDir, iwc);
+    Document doc = new Document();
+    doc.add(newStringField("id", "0", Field.Store.YES));
+    writer.addDocument(doc);
+    writer.close();
+    IndexReader reader = DirectoryReader.open(mmapDir);
+    assertTrue(mmapDir.getPreloadedBytes() > length);
+    assertEquals("0", reader.document(0).get("id"));
+    reader.close();
+    mmapDir.close();
+  }
+
   public void testRandomChunkSizes() throws Exception {
     int num = atLeast(10);
     for (int i = 0; i < num; i++)
@@ -32,6 +32,11 @@ import org.apache.lucene.facet.search.OrdinalsCache.CachedOrds;
  */
 public class CachedOrdsCountingFacetsAggregator extends IntRollupFacetsAggregator {
   
+  @Override
+  public boolean supportsSparseArrays() {
+    return true;
+  }
+  
   @Override
   public void aggregate(MatchingDocs matchingDocs, CategoryListParams clp, FacetArrays facetArrays) throws IOException {
     final CachedOrds ords = OrdinalsCache.getCachedOrds(matchingDocs.context, clp);
@@ -39,13 +44,17 @@ public class CachedOrdsCountingFacetsAggregator extends IntRollupFacetsAggregato
       return; // this segment has no ordinals for the given category list
     }
     final int[] counts = facetArrays.getIntArray();
+    boolean sparse = facetArrays.isSparse();
     int doc = 0;
     int length = matchingDocs.bits.length();
     while (doc < length && (doc = matchingDocs.bits.nextSetBit(doc)) != -1) {
       int start = ords.offsets[doc];
       int end = ords.offsets[doc + 1];
       for (int i = start; i < end; i++) {
-        ++counts[ords.ordinals[i]];
+        final int ord = ords.ordinals[i];
+        if (counts[ord]++ == 0 && sparse) {
+          sparse = facetArrays.touch(ord);
+        }
       }
       ++doc;
     }
@@ -36,6 +36,11 @@ public class CountingFacetsAggregator extends IntRollupFacetsAggregator {
   
   private final IntsRef ordinals = new IntsRef(32);
   
+  @Override
+  public boolean supportsSparseArrays() {
+    return true;
+  }
+  
   @Override
   public void aggregate(MatchingDocs matchingDocs, CategoryListParams clp, FacetArrays facetArrays) throws IOException {
     final CategoryListIterator cli = clp.createCategoryListIterator(0);
@@ -45,12 +50,16 @@ public class CountingFacetsAggregator extends IntRollupFacetsAggregator {
     
     final int length = matchingDocs.bits.length();
     final int[] counts = facetArrays.getIntArray();
+    boolean sparse = facetArrays.isSparse();
     int doc = 0;
     while (doc < length && (doc = matchingDocs.bits.nextSetBit(doc)) != -1) {
       cli.getOrdinals(doc, ordinals);
       final int upto = ordinals.offset + ordinals.length;
       for (int i = ordinals.offset; i < upto; i++) {
-        ++counts[ordinals.ints[i]];
+        final int ord = ordinals.ints[i];
+        if (counts[ord]++ == 0 && sparse) {
+          sparse = facetArrays.touch(ord);
+        }
       }
       ++doc;
     }
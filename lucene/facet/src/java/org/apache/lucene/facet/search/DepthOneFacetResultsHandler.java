@@ -83,7 +83,7 @@ public abstract class DepthOneFacetResultsHandler extends FacetResultsHandler {
    * {@link PriorityQueue#updateTop()} for best performance.  Returns the total
    * number of siblings.
    */
-  protected abstract int addSiblings(int ordinal, int[] siblings, PriorityQueue<FacetResultNode> pq);
+  protected abstract int addSiblings(int ordinal, int[] siblings, PriorityQueue<FacetResultNode> pq) throws IOException;
   
   @Override
   public final FacetResult compute() throws IOException {
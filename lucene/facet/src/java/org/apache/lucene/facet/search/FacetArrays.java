@@ -1,5 +1,7 @@
 package org.apache.lucene.facet.search;
 
+import java.util.Arrays;
+
 /*
  * Licensed to the Apache Software Foundation (ASF) under one or more
  * contributor license agreements.  See the NOTICE file distributed with
@@ -28,6 +30,13 @@ package org.apache.lucene.facet.search;
  * requests, use {@link ReusingFacetArrays}.
  * 
  * <p>
+ * When few categories are expected to be counted, for example for a selective
+ * query over a large taxonomy, the arrays can be made {@link #setSparse(int)
+ * sparse}: aggregators then record the ordinals whose int value becomes
+ * non-zero, so that the top categories can be computed from these ordinals
+ * only, instead of visiting the whole taxonomy.
+ * 
+ * <p>
  * <b>NOTE:</b> this class is not thread safe. You typically allocate it per
  * search.
  * 
@@ -38,6 +47,11 @@ public class FacetArrays {
   private int[] ints;
   private float[] floats;
   
+  // ordinals whose int value is non-zero, or null if not sparse
+  private int[] touched;
+  private int numTouched;
+  private int maxTouched;
+  
   public final int arrayLength;
 
   /** Arrays will be allocated at the specified length. */
@@ -64,6 +78,7 @@ public class FacetArrays {
     doFree(floats, ints);
     ints = null;
     floats = null;
+    setDense();
   }
 
   public final int[] getIntArray() {
@@ -80,4 +95,76 @@ public class FacetArrays {
     return floats;
   }
 
+  /**
+   * Makes the arrays sparse: the ordinals whose int value becomes non-zero are
+   * recorded by {@link #touch(int)}, until more than {@code maxOrdinals} are
+   * touched, in which case the arrays go back to being dense. This is a no-op
+   * if the int array was already obtained, since its values may not all be
+   * zero.
+   */
+  public final void setSparse(int maxOrdinals) {
+    if (ints == null && maxOrdinals > 0) {
+      touched = new int[Math.min(maxOrdinals, 64)];
+      numTouched = 0;
+      maxTouched = maxOrdinals;
+    }
+  }
+  
+  /**
+   * Stops recording the touched ordinals, e.g. when values are set without
+   * calling {@link #touch(int)}.
+   */
+  public final void setDense() {
+    touched = null;
+    numTouched = 0;
+  }
+  
+  /**
+   * Returns true if the ordinals of all the non-zero values of the int array
+   * are returned by {@link #getTouchedOrdinals()}.
+   */
+  public final boolean isSparse() {
+    return touched != null;
+  }
+  
+  /**
+   * Records that the int value of the given ordinal became non-zero, if the
+   * arrays are sparse. Aggregators that support sparse arrays must call it
+   * exactly once per such ordinal. Returns {@link #isSparse()}, so that
+   * aggregators can stop calling this method once the arrays became dense.
+   */
+  public final boolean touch(int ordinal) {
+    if (touched == null) {
+      return false;
+    }
+    if (numTouched == touched.length) {
+      if (numTouched >= maxTouched) {
+        // too many ordinals: it is cheaper to visit the taxonomy
+        setDense();
+        return false;
+      }
+      touched = Arrays.copyOf(touched, (int) Math.min(maxTouched, 2L * numTouched));
+    }
+    touched[numTouched++] = ordinal;
+    return true;
+  }
+  
+  /**
+   * Returns the touched ordinals, in the first {@link #getNumTouchedOrdinals()}
+   * slots of the returned array. Only valid if {@link #isSparse()}.
+   */
+  public final int[] getTouchedOrdinals() {
+    return touched;
+  }
+  
+  /** Returns the maximum number of touched ordinals of sparse arrays. */
+  public final int getMaxTouchedOrdinals() {
+    return maxTouched;
+  }
+  
+  /** Returns the number of touched ordinals. */
+  public final int getNumTouchedOrdinals() {
+    return numTouched;
+  }
+  
 }
@@ -44,6 +44,12 @@ import org.apache.lucene.index.IndexReader;
  */
 public class FacetsAccumulator {
 
+  /**
+   * The default ratio of the taxonomy size to the number of matching documents
+   * above which {@link FacetArrays#setSparse(int) sparse arrays} are used.
+   */
+  public static final int DEFAULT_SPARSE_RATIO = 16;
+
   public final TaxonomyReader taxonomyReader;
   public final IndexReader indexReader;
   public final FacetArrays facetArrays;
@@ -163,13 +169,16 @@ public class FacetsAccumulator {
    *          the documents that matched the query, per-segment.
    */
   public List<FacetResult> accumulate(List<MatchingDocs> matchingDocs) throws IOException {
-    // aggregate facets per category list (usually onle one category list)
     FacetsAggregator aggregator = getAggregator();
-    for (CategoryListParams clp : getCategoryLists()) {
-      for (MatchingDocs md : matchingDocs) {
-        aggregator.aggregate(md, clp, facetArrays);
-      }
+    int totalHits = 0;
+    for (MatchingDocs md : matchingDocs) {
+      totalHits += md.totalHits;
+    }
+    final int maxSparseOrdinals = getMaxSparseOrdinals(aggregator, totalHits);
+    if (maxSparseOrdinals > 0) {
+      facetArrays.setSparse(maxSparseOrdinals);
     }
+    aggregate(aggregator, matchingDocs, facetArrays);
     
     ParallelTaxonomyArrays arrays = taxonomyReader.getParallelTaxonomyArrays();
     
@@ -199,4 +208,40 @@ public class FacetsAccumulator {
     return res;
   }
 
+  /**
+   * Returns the maximum number of categories to count into
+   * {@link FacetArrays#setSparse(int) sparse} arrays when aggregating the facets
+   * of {@code totalHits} matching documents, or 0 to count into dense arrays.
+   * With sparse arrays, the top categories are computed from the counted
+   * categories only, instead of visiting the taxonomy. The default
+   * implementation returns the taxonomy size divided by
+   * {@link #DEFAULT_SPARSE_RATIO}, if the aggregator
+   * {@link IntRollupFacetsAggregator#supportsSparseArrays() supports} sparse
+   * arrays and there are fewer matching documents than that.
+   */
+  protected int getMaxSparseOrdinals(FacetsAggregator aggregator, int totalHits) {
+    final int maxOrdinals = facetArrays.arrayLength / DEFAULT_SPARSE_RATIO;
+    if (aggregator instanceof IntRollupFacetsAggregator 
+        && ((IntRollupFacetsAggregator) aggregator).supportsSparseArrays()
+        && totalHits < maxOrdinals) {
+      return maxOrdinals;
+    }
+    return 0;
+  }
+
+  /**
+   * Aggregates the facets of the given matching documents into the given
+   * {@link FacetArrays}, with the given aggregator. Called by
+   * {@link #accumulate(List)} with {@link #facetArrays}.
+   */
+  protected void aggregate(FacetsAggregator aggregator, List<MatchingDocs> matchingDocs, 
+      FacetArrays facetArrays) throws IOException {
+    // aggregate facets per category list (usually onle one category list)
+    for (CategoryListParams clp : getCategoryLists()) {
+      for (MatchingDocs md : matchingDocs) {
+        aggregator.aggregate(md, clp, facetArrays);
+      }
+    }
+  }
+
 }
@@ -57,6 +57,11 @@ public final class FastCountingFacetsAggregator extends IntRollupFacetsAggregato
     return true;
   }
 
+  @Override
+  public final boolean supportsSparseArrays() {
+    return true;
+  }
+  
   @Override
   public final void aggregate(MatchingDocs matchingDocs, CategoryListParams clp, FacetArrays facetArrays) 
       throws IOException {
@@ -70,6 +75,7 @@ public final class FastCountingFacetsAggregator extends IntRollupFacetsAggregato
     
     final int length = matchingDocs.bits.length();
     final int[] counts = facetArrays.getIntArray();
+    boolean sparse = facetArrays.isSparse();
     int doc = 0;
     while (doc < length && (doc = matchingDocs.bits.nextSetBit(doc)) != -1) {
       dv.get(doc, buf);
@@ -84,7 +90,9 @@ public final class FastCountingFacetsAggregator extends IntRollupFacetsAggregato
           if (b >= 0) {
             prev = ord = ((ord << 7) | b) + prev;
             assert ord < counts.length: "ord=" + ord + " vs maxOrd=" + counts.length;
-            ++counts[ord];
+            if (counts[ord]++ == 0 && sparse) {
+              sparse = facetArrays.touch(ord);
+            }
             ord = 0;
           } else {
             ord = (ord << 7) | (b & 0x7F);
@@ -43,10 +43,42 @@ public final class IntFacetResultsHandler extends DepthOneFacetResultsHandler {
     return values[ordinal];
   }
   
+  /**
+   * Returns the ordinals of the non-zero values if the arrays are
+   * {@link FacetArrays#isSparse() sparse}, so that only these ordinals are
+   * visited, otherwise {@code null}.
+   */
+  private int[] touchedOrdinals() {
+    return facetArrays.isSparse() ? facetArrays.getTouchedOrdinals() : null;
+  }
+  
   @Override
-  protected final int addSiblings(int ordinal, int[] siblings, PriorityQueue<FacetResultNode> pq) {
+  protected final int addSiblings(int ordinal, int[] siblings, PriorityQueue<FacetResultNode> pq) throws IOException {
     FacetResultNode top = pq.top();
     int numResults = 0;
+    final int[] touched = touchedOrdinals();
+    if (touched != null) {
+      if (ordinal == TaxonomyReader.INVALID_ORDINAL) {
+        return 0;
+      }
+      final int[] parents = taxonomyReader.getParallelTaxonomyArrays().parents();
+      final int parent = parents[ordinal];
+      for (int i = 0; i < facetArrays.getNumTouchedOrdinals(); i++) {
+        final int ord = touched[i];
+        int value = values[ord];
+        if (value > 0 && parents[ord] == parent) {
+          ++numResults;
+          // touched ordinals are not in order: break ties like the queue,
+          // and like the siblings loop below, in favor of larger ordinals
+          if (value > top.value || (value == top.value && ord > top.ordinal)) {
+            top.value = value;
+            top.ordinal = ord;
+            top = pq.updateTop();
+          }
+        }
+      }
+      return numResults;
+    }
     while (ordinal != TaxonomyReader.INVALID_ORDINAL) {
       int value = values[ordinal];
       if (value > 0) {
@@ -64,6 +96,24 @@ public final class IntFacetResultsHandler extends DepthOneFacetResultsHandler {
   
   @Override
   protected final void addSiblings(int ordinal, int[] siblings, ArrayList<FacetResultNode> nodes) throws IOException {
+    final int[] touched = touchedOrdinals();
+    if (touched != null) {
+      if (ordinal == TaxonomyReader.INVALID_ORDINAL) {
+        return;
+      }
+      final int[] parents = taxonomyReader.getParallelTaxonomyArrays().parents();
+      final int parent = parents[ordinal];
+      for (int i = 0; i < facetArrays.getNumTouchedOrdinals(); i++) {
+        final int ord = touched[i];
+        int value = values[ord];
+        if (value > 0 && parents[ord] == parent) {
+          FacetResultNode node = new FacetResultNode(ord, value);
+          node.label = taxonomyReader.getPath(ord);
+          nodes.add(node);
+        }
+      }
+      return;
+    }
     while (ordinal != TaxonomyReader.INVALID_ORDINAL) {
       int value = values[ordinal];
       if (value > 0) {
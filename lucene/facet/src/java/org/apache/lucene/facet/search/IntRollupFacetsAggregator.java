@@ -51,10 +51,22 @@ public abstract class IntRollupFacetsAggregator implements FacetsAggregator {
 
   @Override
   public final void rollupValues(FacetRequest fr, int ordinal, int[] children, int[] siblings, FacetArrays facetArrays) {
+    // rolled up parents are not touched
+    facetArrays.setDense();
     final int[] values = facetArrays.getIntArray();
     values[ordinal] += rollupValues(children[ordinal], children, siblings, values);
   }
   
+  /**
+   * Returns true if {@link #aggregate} {@link FacetArrays#touch(int) touches}
+   * the ordinals whose count becomes non-zero, so that it can aggregate into
+   * {@link FacetArrays#setSparse(int) sparse} arrays. The default returns
+   * false.
+   */
+  public boolean supportsSparseArrays() {
+    return false;
+  }
+  
   @Override
   public final boolean requiresDocScores() {
     return false;
@@ -1,17 +1,27 @@
 package org.apache.lucene.facet.search;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.codecs.DocValuesFormat;
 import org.apache.lucene.facet.encoding.IntDecoder;
 import org.apache.lucene.facet.params.CategoryListParams;
+import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.packed.GrowableWriter;
+import org.apache.lucene.util.packed.PackedInts;
 
 /*
  * Licensed to the Apache Software Foundation (ASF) under one or more
@@ -33,21 +43,33 @@ import org.apache.lucene.util.IntsRef;
 /**
  * A per-segment cache of documents' category ordinals. Every {@link CachedOrds}
  * holds the ordinals in a raw {@code int[]}, and therefore consumes as much RAM
- * as the total number of ordinals found in the segment.
- * 
+ * as the total number of ordinals found in the segment. Every
+ * {@link PackedCachedOrds} holds them in packed arrays instead, which use only
+ * as many bits per ordinal as the largest ordinal of the segment requires, at
+ * the cost of slower access.
+ *
+ * <p>
+ * Ordinals are cached per segment core and category list, and loaded lazily
+ * the first time they are requested: only the threads that request the
+ * ordinals of the same segment wait for each other while they are loaded.
+ * Entries are released when their segment core is closed, and the least
+ * recently used ones are evicted when the cache uses more memory than
+ * {@link #setMaxRamBytesUsed(long) allowed}, which is unbounded by default.
+ *
  * <p>
- * <b>NOTE:</b> every {@link CachedOrds} is limited to 2.1B total ordinals. If
+ * <b>NOTE:</b> every {@link CachedOrds} and {@link PackedCachedOrds} is limited
+ * to 2.1B total ordinals. If
  * that is a limitation for you then consider limiting the segment size to less
  * documents, or use an alternative cache which pages through the category
  * ordinals.
- * 
+ *
  * <p>
  * <b>NOTE:</b> when using this cache, it is advised to use a
  * {@link DocValuesFormat} that does not cache the data in memory, at least for
  * the category lists fields, or otherwise you'll be doing double-caching.
  */
 public class OrdinalsCache {
-  
+
   /** Holds the cached ordinals in two paralel {@code int[]} arrays. */
   public static final class CachedOrds {
     
@@ -92,27 +114,293 @@ public class OrdinalsCache {
         this.ordinals = ords;
       }
     }
+
+    /** Returns the number of bytes used by this instance. */
+    public long ramBytesUsed() {
+      return RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+          + 2 * RamUsageEstimator.NUM_BYTES_OBJECT_REF
+          + RamUsageEstimator.sizeOf(offsets)
+          + RamUsageEstimator.sizeOf(ordinals);
+    }
+  }
+
+  /**
+   * Holds the cached ordinals in two parallel packed arrays: the ordinals of
+   * document {@code doc} are {@code ordinals[offsets[doc]:offsets[doc+1]]}.
+   */
+  public static final class PackedCachedOrds {
+
+    public final PackedInts.Reader offsets;
+    public final PackedInts.Reader ordinals;
+
+    /**
+     * Creates a new {@link PackedCachedOrds} from the {@link BinaryDocValues}.
+     * Assumes that the {@link BinaryDocValues} is not {@code null}.
+     */
+    public PackedCachedOrds(BinaryDocValues dv, int maxDoc, CategoryListParams clp) {
+      final BytesRef buf = new BytesRef();
+
+      final GrowableWriter offsets = new GrowableWriter(1, maxDoc + 1, PackedInts.COMPACT);
+      // let's assume one ordinal per-document as an initial size
+      GrowableWriter ords = new GrowableWriter(1, Math.max(1, maxDoc), PackedInts.COMPACT);
+
+      // this aggregator is limited to Integer.MAX_VALUE total ordinals.
+      int totOrds = 0;
+      final IntDecoder decoder = clp.createEncoder().createMatchingDecoder();
+      final IntsRef values = new IntsRef(32);
+      for (int docID = 0; docID < maxDoc; docID++) {
+        offsets.set(docID, totOrds);
+        dv.get(docID, buf);
+        if (buf.length > 0) {
+          // this document has facets
+          decoder.decode(buf, values);
+          if (totOrds + values.length >= ords.size()) {
+            ords = ords.resize(ArrayUtil.oversize(totOrds + values.length + 1, 1));
+          }
+          for (int i = 0; i < values.length; i++) {
+            ords.set(totOrds++, values.ints[i]);
+          }
+        }
+      }
+      offsets.set(maxDoc, totOrds);
+      this.offsets = offsets.getMutable();
+
+      // if ords array is bigger by more than 10% of what we really need, shrink it
+      if ((double) totOrds / ords.size() < 0.9) {
+        final PackedInts.Mutable ordinals = PackedInts.getMutable(totOrds, ords.getBitsPerValue(), PackedInts.COMPACT);
+        PackedInts.copy(ords, 0, ordinals, 0, totOrds, PackedInts.DEFAULT_BUFFER_SIZE);
+        this.ordinals = ordinals;
+      } else {
+        this.ordinals = ords.getMutable();
+      }
+    }
+
+    /** Returns the number of bytes used by this instance. */
+    public long ramBytesUsed() {
+      return RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+          + 2 * RamUsageEstimator.NUM_BYTES_OBJECT_REF
+          + offsets.ramBytesUsed()
+          + ordinals.ramBytesUsed();
+    }
+  }
+
+  /** Key of the cached ordinals of a category list in a segment core. */
+  private static final class Key {
+    final Object coreKey;
+    final String field;
+    final boolean packed;
+
+    Key(Object coreKey, String field, boolean packed) {
+      this.coreKey = coreKey;
+      this.field = field;
+      this.packed = packed;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * coreKey.hashCode() + field.hashCode()) + (packed ? 1 : 0);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return coreKey == other.coreKey && field.equals(other.field) && packed == other.packed;
+    }
+  }
+
+  /** A cache slot, whose ordinals are loaded by the first thread to need them. */
+  private static final class Entry {
+    // a CachedOrds or a PackedCachedOrds, depending on the key
+    volatile Object ords;
+    volatile long lastAccess;
+    // the size of ords, and whether it is accounted in ramBytesUsed, guarded by this
+    long ordsRamBytesUsed;
+    boolean accounted;
   }
 
-  private static final Map<BinaryDocValues,CachedOrds> intsCache = new WeakHashMap<BinaryDocValues,CachedOrds>();
-  
+  // memory used by a cache entry, besides the ordinals: the key, the entry and the hash table slot
+  static final long ENTRY_RAM_BYTES_USED =
+      2 * RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 3 * RamUsageEstimator.NUM_BYTES_OBJECT_REF
+      + RamUsageEstimator.NUM_BYTES_BOOLEAN // key
+      + RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_OBJECT_REF
+      + 2 * RamUsageEstimator.NUM_BYTES_LONG + RamUsageEstimator.NUM_BYTES_BOOLEAN // entry
+      + 4 * RamUsageEstimator.NUM_BYTES_OBJECT_REF; // hash table, assume 2x capacity
+
+  private static final ConcurrentHashMap<Key,Entry> cache = new ConcurrentHashMap<Key,Entry>();
+  // cores that have a listener to clear their entries once closed
+  private static final Set<Object> listenedCores = Collections.newSetFromMap(new ConcurrentHashMap<Object,Boolean>());
+  private static final AtomicLong ramBytesUsed = new AtomicLong();
+  private static volatile long maxRamBytesUsed = Long.MAX_VALUE;
+
   /**
    * Returns the {@link CachedOrds} relevant to the given
    * {@link AtomicReaderContext}, or {@code null} if there is no
    * {@link BinaryDocValues} in this reader for the requested
    * {@link CategoryListParams#field}.
    */
-  public static synchronized CachedOrds getCachedOrds(AtomicReaderContext context, CategoryListParams clp) throws IOException {
-    BinaryDocValues dv = context.reader().getBinaryDocValues(clp.field);
-    if (dv == null) {
-      return null;
+  public static CachedOrds getCachedOrds(AtomicReaderContext context, CategoryListParams clp) throws IOException {
+    return (CachedOrds) getOrds(context, clp, false);
+  }
+
+  /**
+   * Returns the {@link PackedCachedOrds} relevant to the given
+   * {@link AtomicReaderContext}, or {@code null} if there is no
+   * {@link BinaryDocValues} in this reader for the requested
+   * {@link CategoryListParams#field}. They are cached separately from the
+   * {@link #getCachedOrds(AtomicReaderContext, CategoryListParams) CachedOrds}
+   * of the same segment, but share the same memory limit.
+   */
+  public static PackedCachedOrds getPackedCachedOrds(AtomicReaderContext context, CategoryListParams clp) throws IOException {
+    return (PackedCachedOrds) getOrds(context, clp, true);
+  }
+
+  private static Object getOrds(AtomicReaderContext context, CategoryListParams clp, boolean packed) throws IOException {
+    final AtomicReader reader = context.reader();
+    final Key key = new Key(reader.getCoreCacheKey(), clp.field, packed);
+    Entry entry = cache.get(key);
+    if (entry == null) {
+      if (reader.getBinaryDocValues(clp.field) == null) {
+        return null;
+      }
+      final Entry newEntry = new Entry();
+      entry = cache.putIfAbsent(key, newEntry);
+      if (entry == null) {
+        entry = newEntry;
+        if (listenedCores.add(key.coreKey)) {
+          addClosedListener(reader, key.coreKey);
+        }
+      }
+    }
+    // not a shared counter, which all searching threads would contend on
+    entry.lastAccess = System.nanoTime();
+    Object ords = entry.ords;
+    if (ords == null) {
+      synchronized (entry) {
+        ords = entry.ords;
+        if (ords == null) {
+          final BinaryDocValues dv = reader.getBinaryDocValues(clp.field);
+          if (packed) {
+            final PackedCachedOrds packedOrds = new PackedCachedOrds(dv, reader.maxDoc(), clp);
+            entry.ordsRamBytesUsed = packedOrds.ramBytesUsed();
+            ords = packedOrds;
+          } else {
+            final CachedOrds intOrds = new CachedOrds(dv, reader.maxDoc(), clp);
+            entry.ordsRamBytesUsed = intOrds.ramBytesUsed();
+            ords = intOrds;
+          }
+          entry.ords = ords;
+          // the entry might have been removed concurrently
+          if (cache.get(key) == entry) {
+            ramBytesUsed.addAndGet(ENTRY_RAM_BYTES_USED + entry.ordsRamBytesUsed);
+            entry.accounted = true;
+          }
+        }
+      }
+      evictIfNecessary(entry);
+    }
+    return ords;
+  }
+
+  private static void addClosedListener(AtomicReader reader, final Object coreKey) {
+    if (reader instanceof SegmentReader) {
+      ((SegmentReader) reader).addCoreClosedListener(new SegmentReader.CoreClosedListener() {
+        @Override
+        public void onClose(SegmentReader owner) {
+          listenedCores.remove(coreKey);
+          clearCoreCacheKey(coreKey);
+        }
+      });
+    } else {
+      // a slow reader of some sort: clear its entries when the reader that
+      // is its core key, or the reader itself, is closed
+      final IndexReader keyReader = coreKey instanceof IndexReader ? (IndexReader) coreKey : reader;
+      keyReader.addReaderClosedListener(new IndexReader.ReaderClosedListener() {
+        @Override
+        public void onClose(IndexReader closed) {
+          listenedCores.remove(coreKey);
+          clearCoreCacheKey(coreKey);
+        }
+      });
+    }
+  }
+
+  private static void remove(Key key, Entry entry) {
+    if (cache.remove(key, entry)) {
+      synchronized (entry) {
+        if (entry.accounted) {
+          ramBytesUsed.addAndGet(-(ENTRY_RAM_BYTES_USED + entry.ordsRamBytesUsed));
+          entry.accounted = false;
+        }
+      }
     }
-    CachedOrds ci = intsCache.get(dv);
-    if (ci == null) {
-      ci = new CachedOrds(dv, context.reader().maxDoc(), clp);
-      intsCache.put(dv, ci);
+  }
+
+  /** Evicts the least recently used entries, but not the given one, until
+   *  the cache fits in memory. */
+  private static void evictIfNecessary(Entry loaded) {
+    if (ramBytesUsed.get() <= maxRamBytesUsed) {
+      return;
     }
-    return ci;
+    // evictions only happen on loads, which are costly anyway
+    synchronized (cache) {
+      while (ramBytesUsed.get() > maxRamBytesUsed) {
+        Map.Entry<Key,Entry> eldest = null;
+        for (Map.Entry<Key,Entry> e : cache.entrySet()) {
+          final Entry entry = e.getValue();
+          if (entry != loaded && entry.ords != null
+              && (eldest == null || entry.lastAccess < eldest.getValue().lastAccess)) {
+            eldest = e;
+          }
+        }
+        if (eldest == null) {
+          break; // only the entry that was just loaded is left
+        }
+        remove(eldest.getKey(), eldest.getValue());
+      }
+    }
+  }
+
+  /** Removes the cached ordinals of the segment core with this key. */
+  public static void clearCoreCacheKey(Object coreKey) {
+    final Iterator<Map.Entry<Key,Entry>> it = cache.entrySet().iterator();
+    while (it.hasNext()) {
+      final Map.Entry<Key,Entry> e = it.next();
+      if (e.getKey().coreKey == coreKey) {
+        remove(e.getKey(), e.getValue());
+      }
+    }
+  }
+
+  /** Removes all cached ordinals. */
+  public static void clear() {
+    for (Map.Entry<Key,Entry> e : cache.entrySet()) {
+      remove(e.getKey(), e.getValue());
+    }
+  }
+
+  /** Sets the maximum memory that the cached ordinals may use, beyond which
+   *  the least recently used ones are evicted. Each segment's ordinals are
+   *  loaded entirely, so the cache may exceed this limit by the size of the
+   *  ordinals of one segment. */
+  public static void setMaxRamBytesUsed(long maxRamBytesUsed) {
+    if (maxRamBytesUsed < 0) {
+      throw new IllegalArgumentException("maxRamBytesUsed must be >= 0 (got " + maxRamBytesUsed + ")");
+    }
+    OrdinalsCache.maxRamBytesUsed = maxRamBytesUsed;
+  }
+
+  /** Returns the maximum memory that the cached ordinals may use. */
+  public static long getMaxRamBytesUsed() {
+    return maxRamBytesUsed;
+  }
+
+  /** Returns the memory used by the cached ordinals, as estimated with
+   *  {@link RamUsageEstimator}. */
+  public static long ramBytesUsed() {
+    return ramBytesUsed.get();
   }
 
 }
@@ -0,0 +1,70 @@
+package org.apache.lucene.facet.search;
+
+import java.io.IOException;
+
+import org.apache.lucene.facet.params.CategoryListParams;
+import org.apache.lucene.facet.search.FacetsCollector.MatchingDocs;
+import org.apache.lucene.facet.search.OrdinalsCache.PackedCachedOrds;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A {@link FacetsAggregator} which updates categories values by counting their
+ * occurrences in matching documents. Uses the packed ordinals of
+ * {@link OrdinalsCache} to obtain the category ordinals of each segment, which
+ * use less memory than those of {@link CachedOrdsCountingFacetsAggregator}.
+ * 
+ * @lucene.experimental
+ */
+public class PackedCachedOrdsCountingFacetsAggregator extends IntRollupFacetsAggregator {
+  
+  @Override
+  public boolean supportsSparseArrays() {
+    return true;
+  }
+  
+  @Override
+  public void aggregate(MatchingDocs matchingDocs, CategoryListParams clp, FacetArrays facetArrays) throws IOException {
+    final PackedCachedOrds ords = OrdinalsCache.getPackedCachedOrds(matchingDocs.context, clp);
+    if (ords == null) {
+      return; // this segment has no ordinals for the given category list
+    }
+    final int[] counts = facetArrays.getIntArray();
+    boolean sparse = facetArrays.isSparse();
+    final long[] buffer = new long[64];
+    int doc = 0;
+    int length = matchingDocs.bits.length();
+    while (doc < length && (doc = matchingDocs.bits.nextSetBit(doc)) != -1) {
+      int start = (int) ords.offsets.get(doc);
+      int end = (int) ords.offsets.get(doc + 1);
+      while (start < end) {
+        // bulk-decode the packed ordinals
+        final int read = ords.ordinals.get(start, buffer, 0, Math.min(end - start, buffer.length));
+        for (int i = 0; i < read; i++) {
+          final int ord = (int) buffer[i];
+          if (counts[ord]++ == 0 && sparse) {
+            sparse = facetArrays.touch(ord);
+          }
+        }
+        start += read;
+      }
+      ++doc;
+    }
+  }
+  
+}
@@ -0,0 +1,243 @@
+package org.apache.lucene.facet.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.lucene.facet.params.FacetSearchParams;
+import org.apache.lucene.facet.search.FacetRequest.FacetArraysSource;
+import org.apache.lucene.facet.search.FacetsCollector.MatchingDocs;
+import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A {@link FacetsAccumulator} which aggregates the matching documents of
+ * several segments concurrently, on an {@link ExecutorService}.
+ * <p>
+ * The segments are split in up to {@code maxSlices} slices of about the same
+ * number of matching documents. The calling thread aggregates the first slice
+ * into {@link #facetArrays}, and every other slice is aggregated by the
+ * executor into its own {@link FacetArrays}, whose values are then added to
+ * {@link #facetArrays}. When an {@link ArraysPool} is given, all the arrays
+ * are taken from it, and the arrays of the slices are returned to it once
+ * summed. If {@link #facetArrays} are {@link FacetArrays#setSparse(int)
+ * sparse}, so are the arrays of the slices, and only their touched ordinals
+ * are added.
+ * <p>
+ * <b>NOTE:</b> each slice needs arrays as large as the taxonomy, so this
+ * accumulator pays off when there are many matching documents per slice.
+ *
+ * @lucene.experimental
+ */
+public class ParallelFacetsAccumulator extends FacetsAccumulator {
+
+  private final ExecutorService executor;
+  private final int maxSlices;
+  private final ArraysPool arraysPool;
+
+  /**
+   * Creates a new accumulator which aggregates up to {@code maxSlices} slices
+   * of segments concurrently on the given executor, with {@link FacetArrays}
+   * which are not reused.
+   */
+  public ParallelFacetsAccumulator(FacetSearchParams searchParams, IndexReader indexReader,
+      TaxonomyReader taxonomyReader, ExecutorService executor, int maxSlices) {
+    this(searchParams, indexReader, taxonomyReader, null, executor, maxSlices);
+  }
+
+  /**
+   * Creates a new accumulator which aggregates up to {@code maxSlices} slices
+   * of segments concurrently on the given executor, with arrays taken from the
+   * given {@link ArraysPool}, if not {@code null}. Note that the accumulator
+   * doesn't free {@link #facetArrays}: do it after you've finished with the
+   * accumulator.
+   */
+  public ParallelFacetsAccumulator(FacetSearchParams searchParams, IndexReader indexReader,
+      TaxonomyReader taxonomyReader, ArraysPool arraysPool, ExecutorService executor, int maxSlices) {
+    super(searchParams, indexReader, taxonomyReader, arraysPool == null ? null : new ReusingFacetArrays(arraysPool));
+    if (maxSlices < 1) {
+      throw new IllegalArgumentException("maxSlices must be >= 1 (got " + maxSlices + ")");
+    }
+    this.executor = executor;
+    this.maxSlices = maxSlices;
+    this.arraysPool = arraysPool;
+  }
+
+  /** Splits the matching documents in slices of about the same size. */
+  private List<List<MatchingDocs>> slices(List<MatchingDocs> matchingDocs) {
+    final int numSlices = Math.min(maxSlices, matchingDocs.size());
+    final List<List<MatchingDocs>> slices = new ArrayList<List<MatchingDocs>>(numSlices);
+    final int[] sliceHits = new int[numSlices];
+    for (int i = 0; i < numSlices; i++) {
+      slices.add(new ArrayList<MatchingDocs>());
+    }
+    // add the largest segments first, each to the smallest slice
+    final List<MatchingDocs> sorted = new ArrayList<MatchingDocs>(matchingDocs);
+    Collections.sort(sorted, new Comparator<MatchingDocs>() {
+      @Override
+      public int compare(MatchingDocs md1, MatchingDocs md2) {
+        return md2.totalHits - md1.totalHits;
+      }
+    });
+    for (MatchingDocs md : sorted) {
+      int smallest = 0;
+      for (int i = 1; i < numSlices; i++) {
+        if (sliceHits[i] < sliceHits[smallest]) {
+          smallest = i;
+        }
+      }
+      slices.get(smallest).add(md);
+      sliceHits[smallest] += md.totalHits;
+    }
+    return slices;
+  }
+
+  @Override
+  protected void aggregate(FacetsAggregator aggregator, List<MatchingDocs> matchingDocs, 
+      final FacetArrays facetArrays) throws IOException {
+    final List<List<MatchingDocs>> slices = slices(matchingDocs);
+    if (slices.size() <= 1) {
+      super.aggregate(aggregator, matchingDocs, facetArrays);
+      return;
+    }
+
+    // the calling thread may make facetArrays dense while the slices are aggregated
+    final boolean sparse = facetArrays.isSparse();
+    final int maxSparseOrdinals = facetArrays.getMaxTouchedOrdinals();
+    final List<FutureTask<FacetArrays>> tasks = new ArrayList<FutureTask<FacetArrays>>();
+    for (int i = 1; i < slices.size(); i++) {
+      final List<MatchingDocs> slice = slices.get(i);
+      tasks.add(new FutureTask<FacetArrays>(new Callable<FacetArrays>() {
+        @Override
+        public FacetArrays call() throws IOException {
+          // aggregators are not thread-safe
+          final FacetArrays sliceArrays = arraysPool == null
+              ? new FacetArrays(facetArrays.arrayLength) : new ReusingFacetArrays(arraysPool);
+          if (sparse) {
+            sliceArrays.setSparse(maxSparseOrdinals);
+          }
+          ParallelFacetsAccumulator.super.aggregate(getAggregator(), slice, sliceArrays);
+          return sliceArrays;
+        }
+      }));
+    }
+    for (FutureTask<FacetArrays> task : tasks) {
+      try {
+        executor.execute(task);
+      } catch (RejectedExecutionException ree) {
+        // shut down: run below on this thread
+        break;
+      }
+    }
+
+    Throwable th = null;
+    try {
+      super.aggregate(aggregator, slices.get(0), facetArrays);
+    } catch (Throwable t) {
+      th = t;
+    }
+
+    boolean needsInts = false, needsFloats = false;
+    for (FacetRequest fr : searchParams.facetRequests) {
+      final FacetArraysSource source = fr.getFacetArraysSource();
+      needsInts |= source != FacetArraysSource.FLOAT;
+      needsFloats |= source != FacetArraysSource.INT;
+    }
+
+    // the arrays of the slices may come from the pool, so wait for all tasks
+    // even if interrupted
+    boolean interrupted = false;
+    for (FutureTask<FacetArrays> task : tasks) {
+      // a no-op if the task already started
+      task.run();
+      FacetArrays sliceArrays = null;
+      while (true) {
+        try {
+          sliceArrays = task.get();
+          break;
+        } catch (ExecutionException ee) {
+          if (th == null) {
+            th = ee.getCause();
+          }
+          break;
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        }
+      }
+      if (sliceArrays != null) {
+        if (th == null) {
+          if (needsInts) {
+            add(sliceArrays, facetArrays);
+          }
+          if (needsFloats) {
+            add(sliceArrays.getFloatArray(), facetArrays.getFloatArray());
+          }
+        }
+        sliceArrays.free();
+      }
+    }
+    if (interrupted && th == null) {
+      th = new ThreadInterruptedException(new InterruptedException());
+    }
+    IOUtils.reThrow(th);
+  }
+
+  private static void add(FacetArrays from, FacetArrays to) {
+    final int[] fromInts = from.getIntArray();
+    final int[] toInts = to.getIntArray();
+    if (from.isSparse() && to.isSparse()) {
+      // only add the touched ordinals, and touch the new ones
+      final int[] touched = from.getTouchedOrdinals();
+      boolean sparse = true;
+      for (int i = 0; i < from.getNumTouchedOrdinals(); i++) {
+        final int ord = touched[i];
+        if (toInts[ord] == 0 && sparse) {
+          sparse = to.touch(ord);
+        }
+        toInts[ord] += fromInts[ord];
+      }
+    } else {
+      to.setDense();
+      add(fromInts, toInts);
+    }
+  }
+
+  private static void add(int[] from, int[] to) {
+    for (int i = 0; i < from.length; i++) {
+      to[i] += from[i];
+    }
+  }
+
+  private static void add(float[] from, float[] to) {
+    for (int i = 0; i < from.length; i++) {
+      to[i] += from[i];
+    }
+  }
+
+}
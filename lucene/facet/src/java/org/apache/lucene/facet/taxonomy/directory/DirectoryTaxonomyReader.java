@@ -161,6 +161,11 @@ public class DirectoryTaxonomyReader extends TaxonomyReader {
   protected DirectoryTaxonomyReader doOpenIfChanged() throws IOException {
     ensureOpen();
     
+    if (taxoWriter != null) {
+      // make the categories which were assigned an ordinal visible
+      taxoWriter.flushPendingCategories();
+    }
+
     // This works for both NRT and non-NRT readers (i.e. an NRT reader remains NRT).
     final DirectoryReader r2 = DirectoryReader.openIfChanged(indexReader);
     if (r2 == null) {
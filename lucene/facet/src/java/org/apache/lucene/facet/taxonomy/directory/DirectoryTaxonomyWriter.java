@@ -9,9 +9,12 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
@@ -81,6 +84,11 @@ import org.apache.lucene.util.Version;
  * <p>
  * This class offers some hooks for extending classes to control the
  * {@link IndexWriter} instance that is used. See {@link #openIndexWriter}.
+ * <p>
+ * By default, new categories are added to the taxonomy index one at a time,
+ * so that threads which add new categories concurrently wait for each other.
+ * Applications which add many new categories from several threads can let
+ * them assign ordinals concurrently with {@link #setMaxPendingCategories(int)}.
  * 
  * @lucene.experimental
  */
@@ -132,6 +140,31 @@ public class DirectoryTaxonomyWriter implements TaxonomyWriter {
   private volatile TaxonomyIndexArrays taxoArrays;
   private volatile int nextID;
 
+  // concurrent additions of categories, see setMaxPendingCategories
+  private volatile int maxPendingCategories = 0;
+  private final ReentrantLock[] addLocks = new ReentrantLock[32];
+  // categories which have an ordinal, but are not added to the index yet
+  private final Map<CategoryPath,Integer> pendingOrdinals = new ConcurrentHashMap<CategoryPath,Integer>();
+  // parents of the pending categories, by ordinal, so that getParent doesn't flush
+  private final Map<Integer,Integer> pendingParents = new ConcurrentHashMap<Integer,Integer>();
+  // same, in ordinal order; assigning ordinals is synchronized on it
+  private final ArrayDeque<PendingCategory> pendingCategories = new ArrayDeque<PendingCategory>();
+  // number of categories which have an ordinal but are not fully added yet
+  private final AtomicInteger numPendingCategories = new AtomicInteger();
+  private final ReentrantLock flushLock = new ReentrantLock();
+
+  private static final class PendingCategory {
+    final CategoryPath categoryPath;
+    final int parent;
+    final int ordinal;
+
+    PendingCategory(CategoryPath categoryPath, int parent, int ordinal) {
+      this.categoryPath = categoryPath;
+      this.parent = parent;
+      this.ordinal = ordinal;
+    }
+  }
+
   /** Reads the commit data from a Directory. */
   private static Map<String, String> readCommitData(Directory dir) throws IOException {
     SegmentInfos infos = new SegmentInfos();
@@ -238,6 +271,9 @@ public class DirectoryTaxonomyWriter implements TaxonomyWriter {
     fullPathField = new StringField(Consts.FULL, "", Field.Store.YES);
 
     nextID = indexWriter.maxDoc();
+    for (int i = 0; i < addLocks.length; i++) {
+      addLocks[i] = new ReentrantLock();
+    }
 
     if (cache == null) {
       cache = defaultTaxonomyWriterCache();
@@ -352,11 +388,16 @@ public class DirectoryTaxonomyWriter implements TaxonomyWriter {
    * {@link Directory}.
    */
   @Override
-  public synchronized void close() throws IOException {
+  public void close() throws IOException {
     if (!isClosed) {
-      indexWriter.setCommitData(combinedCommitData(indexWriter.getCommitData()));
-      indexWriter.commit();
-      doClose();
+      flushPendingCategories();
+    }
+    synchronized (this) {
+      if (!isClosed) {
+        indexWriter.setCommitData(combinedCommitData(indexWriter.getCommitData()));
+        indexWriter.commit();
+        doClose();
+      }
     }
   }
   
@@ -453,7 +494,9 @@ public class DirectoryTaxonomyWriter implements TaxonomyWriter {
     // check the cache outside the synchronized block. this results in better
     // concurrency when categories are there.
     int res = cache.get(categoryPath);
-    if (res < 0) {
+    if (res < 0 && maxPendingCategories > 0) {
+      res = concurrentAddCategory(categoryPath);
+    } else if (res < 0) {
       // the category is not in the cache - following code cannot be executed in parallel.
       synchronized (this) {
         res = findCategory(categoryPath);
@@ -502,6 +545,135 @@ public class DirectoryTaxonomyWriter implements TaxonomyWriter {
     return id;
   }
 
+  /**
+   * Adds a new category, and its missing ancestors, without holding the
+   * writer's lock. The category is added to the index later, by the thread
+   * which flushes the pending categories.
+   */
+  private int concurrentAddCategory(CategoryPath cp) throws IOException {
+    if (cp.length == 0) {
+      // the root category is added when the taxonomy is created
+      return lookupCategory(cp);
+    }
+    // add the ancestors top-down, so that parents always get smaller ordinals
+    // than their children, and a thread only holds one lock at a time
+    int ordinal = TaxonomyReader.ROOT_ORDINAL;
+    for (int i = 1; i <= cp.length; i++) {
+      final CategoryPath path = i == cp.length ? cp : cp.subpath(i);
+      int res = cache.get(path);
+      if (res < 0) {
+        res = assignOrdinal(path, ordinal);
+      }
+      ordinal = res;
+    }
+    maybeFlushPendingCategories();
+    return ordinal;
+  }
+
+  /** Returns the ordinal of the category, assigning a new one if it does not
+   *  exist yet. */
+  private int assignOrdinal(CategoryPath cp, int parent) throws IOException {
+    // the same category always uses the same lock, so it is only added once
+    final ReentrantLock lock = addLocks[(cp.hashCode() & 0x7FFFFFFF) % addLocks.length];
+    lock.lock();
+    try {
+      int res = lookupCategory(cp);
+      if (res < 0) {
+        synchronized (pendingCategories) {
+          res = nextID;
+          // before the ordinal is visible to getParent, and before a flush can
+          // remove them, or they would never be removed
+          pendingParents.put(res, parent);
+          pendingOrdinals.put(cp, res);
+          nextID = res + 1;
+          pendingCategories.add(new PendingCategory(cp, parent, res));
+          numPendingCategories.incrementAndGet();
+        }
+      }
+      return res;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Looks the category up in the pending categories, and then like
+   *  {@link #findCategory(CategoryPath)}. */
+  private int lookupCategory(CategoryPath cp) throws IOException {
+    // pending categories are put in the cache before they stop being pending
+    final Integer pending = pendingOrdinals.get(cp);
+    if (pending != null) {
+      return pending.intValue();
+    }
+    int res = cache.get(cp);
+    if (res >= 0 || cacheIsComplete) {
+      return res;
+    }
+    return findCategory(cp);
+  }
+
+  /** Flushes the pending categories if there are enough of them, unless
+   *  another thread is already flushing. */
+  private void maybeFlushPendingCategories() throws IOException {
+    while (numPendingCategories.get() >= maxPendingCategories && flushLock.tryLock()) {
+      try {
+        doFlushPendingCategories();
+      } finally {
+        flushLock.unlock();
+      }
+    }
+  }
+
+  /** Returns the number of categories which are not added to the index yet. */
+  int getNumPendingCategories() {
+    return numPendingCategories.get();
+  }
+
+  /** Returns the number of categories which can be looked up while pending. */
+  int getNumPendingOrdinals() {
+    return pendingOrdinals.size();
+  }
+
+  /**
+   * Adds the categories which were assigned an ordinal by
+   * {@link #addCategory(CategoryPath)} to the taxonomy index, if any. This is
+   * done automatically by {@link #commit()}, {@link #close()} and when an NRT
+   * {@link DirectoryTaxonomyReader} is opened or reopened.
+   */
+  void flushPendingCategories() throws IOException {
+    if (numPendingCategories.get() == 0) {
+      return;
+    }
+    // also waits for the categories which another thread is adding
+    flushLock.lock();
+    try {
+      doFlushPendingCategories();
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private void doFlushPendingCategories() throws IOException {
+    synchronized (this) {
+      ensureOpen();
+      while (true) {
+        final PendingCategory category;
+        synchronized (pendingCategories) {
+          category = pendingCategories.poll();
+        }
+        if (category == null) {
+          break;
+        }
+        // ordinals are document IDs, and this is the only thread adding documents
+        assert indexWriter.maxDoc() == category.ordinal;
+        writeCategoryDocument(category.categoryPath, category.parent);
+        updateArraysAndCache(category.categoryPath, category.parent, category.ordinal);
+        pendingOrdinals.remove(category.categoryPath);
+        pendingParents.remove(category.ordinal);
+        numPendingCategories.decrementAndGet();
+      }
+    }
+  }
+
   /**
    * Verifies that this instance wasn't closed, or throws
    * {@link AlreadyClosedException} if it is.
@@ -517,6 +689,15 @@ public class DirectoryTaxonomyWriter implements TaxonomyWriter {
    * this method is effectively synchronized as well.
    */
   private int addCategoryDocument(CategoryPath categoryPath, int parent) throws IOException {
+    writeCategoryDocument(categoryPath, parent);
+    int id = nextID++;
+
+    updateArraysAndCache(categoryPath, parent, id);
+
+    return id;
+  }
+
+  private void writeCategoryDocument(CategoryPath categoryPath, int parent) throws IOException {
     // Before Lucene 2.9, position increments >=0 were supported, so we
     // added 1 to parent to allow the parent -1 (the parent of the root).
     // Unfortunately, starting with Lucene 2.9, after LUCENE-1542, this is
@@ -537,8 +718,9 @@ public class DirectoryTaxonomyWriter implements TaxonomyWriter {
     // added to the Document are untokenized or contains their own TokenStream.
     // Therefore the IndexWriter's Analyzer has no effect.
     indexWriter.addDocument(d);
-    int id = nextID++;
+  }
 
+  private void updateArraysAndCache(CategoryPath categoryPath, int parent, int id) throws IOException {
     // added a category document, mark that ReaderManager is not up-to-date
     shouldRefreshReaderManager = true;
     
@@ -548,8 +730,6 @@ public class DirectoryTaxonomyWriter implements TaxonomyWriter {
     // NOTE: this line must be executed last, or else the cache gets updated
     // before the parents array (LUCENE-4596)
     addToCache(categoryPath, id);
-
-    return id;
   }
 
   private static class SinglePositionTokenStream extends TokenStream {
@@ -614,10 +794,13 @@ public class DirectoryTaxonomyWriter implements TaxonomyWriter {
   }
   
   @Override
-  public synchronized void commit() throws IOException {
+  public void commit() throws IOException {
     ensureOpen();
-    indexWriter.setCommitData(combinedCommitData(indexWriter.getCommitData()));
-    indexWriter.commit();
+    flushPendingCategories();
+    synchronized (this) {
+      indexWriter.setCommitData(combinedCommitData(indexWriter.getCommitData()));
+      indexWriter.commit();
+    }
   }
 
   /** Combine original user data with the taxonomy epoch. */
@@ -645,10 +828,13 @@ public class DirectoryTaxonomyWriter implements TaxonomyWriter {
    * See {@link IndexWriter#prepareCommit}.
    */
   @Override
-  public synchronized void prepareCommit() throws IOException {
+  public void prepareCommit() throws IOException {
     ensureOpen();
-    indexWriter.setCommitData(combinedCommitData(indexWriter.getCommitData()));
-    indexWriter.prepareCommit();
+    flushPendingCategories();
+    synchronized (this) {
+      indexWriter.setCommitData(combinedCommitData(indexWriter.getCommitData()));
+      indexWriter.prepareCommit();
+    }
   }
   
   @Override
@@ -678,6 +864,34 @@ public class DirectoryTaxonomyWriter implements TaxonomyWriter {
     ensureOpen();
     cacheMissesUntilFill = i;
   }
+
+  /**
+   * Set the number of new categories which may be assigned an ordinal before
+   * they are added to the taxonomy index.
+   * <p>
+   * If the number is {@code 0}, the default, new categories are added to the
+   * index as they are assigned an ordinal, while holding this writer's lock,
+   * so that only one thread adds new categories at a time.
+   * <p>
+   * Otherwise, threads assign ordinals to different new categories
+   * concurrently, and a category and its ancestors are only added to the index
+   * once this many categories are pending, by a single thread, in ordinal
+   * order, while the other threads go on. Pending categories are also added
+   * by {@link #commit()}, {@link #prepareCommit()}, {@link #close()} and when
+   * an NRT {@link DirectoryTaxonomyReader} is opened or reopened, so that the
+   * ordinals returned by {@link #addCategory(CategoryPath)} before these calls
+   * are visible after them.
+   * <p>
+   * NOTE: it is assumed that this method is called immediately after the
+   * taxonomy writer has been created.
+   */
+  public void setMaxPendingCategories(int maxPendingCategories) {
+    ensureOpen();
+    if (maxPendingCategories < 0) {
+      throw new IllegalArgumentException("maxPendingCategories must be >= 0 (got " + maxPendingCategories + ")");
+    }
+    this.maxPendingCategories = maxPendingCategories;
+  }
   
   // we need to guarantee that if several threads call this concurrently, only
   // one executes it, and after it returns, the cache is updated and is either
@@ -775,6 +989,12 @@ public class DirectoryTaxonomyWriter implements TaxonomyWriter {
       throw new ArrayIndexOutOfBoundsException("requested ordinal is bigger than the largest ordinal in the taxonomy");
     }
     
+    // pending categories are added to the arrays before they stop being pending
+    final Integer pendingParent = pendingParents.get(ordinal);
+    if (pendingParent != null) {
+      return pendingParent.intValue();
+    }
+    
     int[] parents = getTaxoArrays().parents();
     assert ordinal < parents.length : "requested ordinal (" + ordinal + "); parents.length (" + parents.length + ") !";
     return parents[ordinal];
@@ -946,6 +1166,12 @@ public class DirectoryTaxonomyWriter implements TaxonomyWriter {
   @Override
   public synchronized void rollback() throws IOException {
     ensureOpen();
+    synchronized (pendingCategories) {
+      pendingCategories.clear();
+      numPendingCategories.set(0);
+    }
+    pendingOrdinals.clear();
+    pendingParents.clear();
     indexWriter.rollback();
     doClose();
   }
@@ -956,14 +1182,28 @@ public class DirectoryTaxonomyWriter implements TaxonomyWriter {
    * {@link IndexWriter#addIndexes(Directory...)} to replace both the taxonomy
    * as well as the search index content.
    */
-  public synchronized void replaceTaxonomy(Directory taxoDir) throws IOException {
+  public void replaceTaxonomy(Directory taxoDir) throws IOException {
+    flushPendingCategories();
+    synchronized (this) {
+      doReplaceTaxonomy(taxoDir);
+    }
+  }
+
+  private void doReplaceTaxonomy(Directory taxoDir) throws IOException {
     // replace the taxonomy by doing IW optimized operations
     indexWriter.deleteAll();
     indexWriter.addIndexes(taxoDir);
     shouldRefreshReaderManager = true;
     initReaderManager(); // ensure that it's initialized
     refreshReaderManager();
-    nextID = indexWriter.maxDoc();
+    synchronized (pendingCategories) {
+      // categories added since the flush belong to the replaced taxonomy
+      pendingCategories.clear();
+      numPendingCategories.set(0);
+      pendingOrdinals.clear();
+      pendingParents.clear();
+      nextID = indexWriter.maxDoc();
+    }
     
     // need to clear the cache, so that addCategory won't accidentally return
     // old categories that are in the cache.
@@ -987,7 +1227,8 @@ public class DirectoryTaxonomyWriter implements TaxonomyWriter {
    * way, other than opening an IndexReader on it, or otherwise, the taxonomy
    * index may become corrupt!
    */
-  final IndexWriter getInternalIndexWriter() {
+  final IndexWriter getInternalIndexWriter() throws IOException {
+    flushPendingCategories();
     return indexWriter;
   }
   
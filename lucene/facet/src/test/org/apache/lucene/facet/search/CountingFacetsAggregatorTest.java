@@ -37,6 +37,7 @@ import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util._TestUtil;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -276,14 +277,23 @@ public class CountingFacetsAggregatorTest extends FacetTestCase {
       aggregator = new FastCountingFacetsAggregator(); // it's the default, so give it the highest chance
     } else if (val < 0.8) {
       aggregator = new CountingFacetsAggregator();
-    } else {
+    } else if (val < 0.9) {
       aggregator = new CachedOrdsCountingFacetsAggregator();
+    } else {
+      aggregator = new PackedCachedOrdsCountingFacetsAggregator();
     }
+    // the taxonomy is too small for sparse arrays by default
+    final int maxSparseOrdinals = random().nextBoolean() ? 0 : _TestUtil.nextInt(random(), 1, taxoReader.getSize());
     return new FacetsAccumulator(fsp, indexReader, taxoReader) {
       @Override
       public FacetsAggregator getAggregator() {
         return aggregator;
       }
+      
+      @Override
+      protected int getMaxSparseOrdinals(FacetsAggregator aggregator, int totalHits) {
+        return maxSparseOrdinals;
+      }
     };
   }
   
@@ -369,6 +379,63 @@ public class CountingFacetsAggregatorTest extends FacetTestCase {
     IOUtils.close(indexReader, taxoReader);
   }
   
+  @Test
+  public void testSparseTies() throws Exception {
+    // all children have the same count, and are counted in random order
+    Directory indexDir = newDirectory();
+    Directory taxoDir = newDirectory();
+    IndexWriter indexWriter = new IndexWriter(indexDir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())));
+    TaxonomyWriter taxoWriter = new DirectoryTaxonomyWriter(taxoDir);
+    FacetFields facetFields = new FacetFields(taxoWriter);
+    final int numChildren = _TestUtil.nextInt(random(), 3, 20);
+    List<CategoryPath> categories = new ArrayList<CategoryPath>();
+    for (int i = 0; i < numChildren; i++) {
+      // the taxonomy assigns ordinals in this order
+      taxoWriter.addCategory(new CategoryPath("A", Integer.toString(i)));
+      categories.add(new CategoryPath("A", Integer.toString(i)));
+      categories.add(new CategoryPath("A", Integer.toString(i)));
+    }
+    Collections.shuffle(categories, random());
+    for (CategoryPath cp : categories) {
+      Document doc = new Document();
+      facetFields.addFields(doc, Collections.singletonList(cp));
+      indexWriter.addDocument(doc);
+    }
+    IOUtils.close(indexWriter, taxoWriter);
+
+    DirectoryReader indexReader = DirectoryReader.open(indexDir);
+    final TaxonomyReader taxoReader = new DirectoryTaxonomyReader(taxoDir);
+    IndexSearcher searcher = newSearcher(indexReader);
+    final int numResults = _TestUtil.nextInt(random(), 1, numChildren - 1);
+    FacetSearchParams fsp = new FacetSearchParams(new CountFacetRequest(new CategoryPath("A"), numResults));
+    FacetResult[] results = new FacetResult[2];
+    for (int i = 0; i < 2; i++) {
+      final boolean sparse = i == 1;
+      FacetsAccumulator fa = new FacetsAccumulator(fsp, indexReader, taxoReader) {
+        @Override
+        protected int getMaxSparseOrdinals(FacetsAggregator aggregator, int totalHits) {
+          return sparse ? taxoReader.getSize() : 0;
+        }
+      };
+      FacetsCollector fc = FacetsCollector.create(fa);
+      searcher.search(new MatchAllDocsQuery(), fc);
+      results[i] = fc.getFacetResults().get(0);
+    }
+
+    assertEquals(results[0].toString(), results[1].toString());
+    List<FacetResultNode> dense = results[0].getFacetResultNode().subResults;
+    List<FacetResultNode> sparse = results[1].getFacetResultNode().subResults;
+    assertEquals(numResults, sparse.size());
+    for (int i = 0; i < numResults; i++) {
+      // ties are broken in favor of the larger ordinals
+      assertEquals(new CategoryPath("A", Integer.toString(numChildren - 1 - i)), sparse.get(i).label);
+      assertEquals(dense.get(i).ordinal, sparse.get(i).ordinal);
+      assertEquals(2, (int) sparse.get(i).value);
+    }
+
+    IOUtils.close(indexReader, taxoReader, indexDir, taxoDir);
+  }
+  
   @Test
   public void testNoParents() throws Exception {
     DirectoryReader indexReader = DirectoryReader.open(indexDir);
@@ -0,0 +1,222 @@
+package org.apache.lucene.facet.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.facet.FacetTestCase;
+import org.apache.lucene.facet.index.FacetFields;
+import org.apache.lucene.facet.params.CategoryListParams;
+import org.apache.lucene.facet.taxonomy.CategoryPath;
+import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
+import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
+import org.apache.lucene.facet.search.OrdinalsCache.CachedOrds;
+import org.apache.lucene.facet.search.OrdinalsCache.PackedCachedOrds;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util._TestUtil;
+import org.junit.Test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+public class OrdinalsCacheTest extends FacetTestCase {
+
+  private static final CategoryListParams CLP = new CategoryListParams();
+
+  // creates an index with several segments, some documents without categories
+  private static void index(Directory indexDir, Directory taxoDir) throws IOException {
+    IndexWriterConfig conf = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    // one segment per commit, so that every segment has categories
+    conf.setMergePolicy(NoMergePolicy.COMPOUND_FILES);
+    conf.setRAMBufferSizeMB(16);
+    conf.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    IndexWriter indexWriter = new IndexWriter(indexDir, conf);
+    TaxonomyWriter taxoWriter = new DirectoryTaxonomyWriter(taxoDir);
+    FacetFields facetFields = new FacetFields(taxoWriter);
+    final int numSegments = _TestUtil.nextInt(random(), 2, 5);
+    for (int i = 0; i < numSegments; i++) {
+      final int numDocs = atLeast(50);
+      for (int j = 0; j < numDocs; j++) {
+        Document doc = new Document();
+        if (random().nextInt(10) != 0) {
+          List<CategoryPath> categories = new ArrayList<CategoryPath>();
+          final int numCategories = random().nextInt(5) + 1;
+          for (int k = 0; k < numCategories; k++) {
+            categories.add(new CategoryPath("dim" + random().nextInt(3), Integer.toString(random().nextInt(100))));
+          }
+          facetFields.addFields(doc, categories);
+        }
+        indexWriter.addDocument(doc);
+      }
+      indexWriter.commit();
+    }
+    IOUtils.close(indexWriter, taxoWriter);
+  }
+
+  @Test
+  public void testCachedOrds() throws Exception {
+    Directory indexDir = newDirectory();
+    Directory taxoDir = newDirectory();
+    index(indexDir, taxoDir);
+    DirectoryReader reader = DirectoryReader.open(indexDir);
+    final long ramBytesUsed = OrdinalsCache.ramBytesUsed();
+
+    CategoryListIterator cli = CLP.createCategoryListIterator(0);
+    IntsRef expected = new IntsRef();
+    for (AtomicReaderContext context : reader.leaves()) {
+      CachedOrds ords = OrdinalsCache.getCachedOrds(context, CLP);
+      assertNotNull(ords);
+      assertSame(ords, OrdinalsCache.getCachedOrds(context, CLP));
+      assertTrue(cli.setNextReader(context));
+      for (int doc = 0; doc < context.reader().maxDoc(); doc++) {
+        cli.getOrdinals(doc, expected);
+        final int start = ords.offsets[doc];
+        assertEquals(expected.length, ords.offsets[doc + 1] - start);
+        for (int i = 0; i < expected.length; i++) {
+          assertEquals(expected.ints[expected.offset + i], ords.ordinals[start + i]);
+        }
+      }
+    }
+    assertNull(OrdinalsCache.getCachedOrds(reader.leaves().get(0), new CategoryListParams("nofacets")));
+    assertTrue(OrdinalsCache.ramBytesUsed() > ramBytesUsed);
+
+    // closing the reader releases its ordinals
+    reader.close();
+    assertEquals(ramBytesUsed, OrdinalsCache.ramBytesUsed());
+    IOUtils.close(indexDir, taxoDir);
+  }
+
+  @Test
+  public void testPackedCachedOrds() throws Exception {
+    Directory indexDir = newDirectory();
+    Directory taxoDir = newDirectory();
+    index(indexDir, taxoDir);
+    DirectoryReader reader = DirectoryReader.open(indexDir);
+    final long initialRamBytesUsed = OrdinalsCache.ramBytesUsed();
+
+    CategoryListIterator cli = CLP.createCategoryListIterator(0);
+    IntsRef expected = new IntsRef();
+    for (AtomicReaderContext context : reader.leaves()) {
+      final long ramBytesUsed = OrdinalsCache.ramBytesUsed();
+      PackedCachedOrds packedOrds = OrdinalsCache.getPackedCachedOrds(context, CLP);
+      assertNotNull(packedOrds);
+      assertSame(packedOrds, OrdinalsCache.getPackedCachedOrds(context, CLP));
+      assertEquals(ramBytesUsed + OrdinalsCache.ENTRY_RAM_BYTES_USED + packedOrds.ramBytesUsed(), OrdinalsCache.ramBytesUsed());
+
+      // cached separately from the int[] ordinals, which use more memory
+      CachedOrds ords = OrdinalsCache.getCachedOrds(context, CLP);
+      assertNotNull(ords);
+      assertTrue(packedOrds.ramBytesUsed() < ords.ramBytesUsed());
+      assertSame(packedOrds, OrdinalsCache.getPackedCachedOrds(context, CLP));
+
+      assertTrue(cli.setNextReader(context));
+      for (int doc = 0; doc < context.reader().maxDoc(); doc++) {
+        cli.getOrdinals(doc, expected);
+        final int start = (int) packedOrds.offsets.get(doc);
+        assertEquals(expected.length, packedOrds.offsets.get(doc + 1) - start);
+        for (int i = 0; i < expected.length; i++) {
+          assertEquals(expected.ints[expected.offset + i], packedOrds.ordinals.get(start + i));
+        }
+      }
+    }
+    assertNull(OrdinalsCache.getPackedCachedOrds(reader.leaves().get(0), new CategoryListParams("nofacets")));
+
+    // closing the reader releases both
+    reader.close();
+    assertEquals(initialRamBytesUsed, OrdinalsCache.ramBytesUsed());
+    IOUtils.close(indexDir, taxoDir);
+  }
+
+  @Test
+  public void testConcurrentLoads() throws Exception {
+    Directory indexDir = newDirectory();
+    Directory taxoDir = newDirectory();
+    index(indexDir, taxoDir);
+    final DirectoryReader reader = DirectoryReader.open(indexDir);
+
+    final int numThreads = _TestUtil.nextInt(random(), 2, 6);
+    final CachedOrds[][] ords = new CachedOrds[numThreads][reader.leaves().size()];
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread[] threads = new Thread[numThreads];
+    for (int i = 0; i < numThreads; i++) {
+      final int thread = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for (AtomicReaderContext context : reader.leaves()) {
+              ords[thread][context.ord] = OrdinalsCache.getCachedOrds(context, CLP);
+            }
+          } catch (Throwable t) {
+            failure.set(t);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(failure.get());
+    // every segment was loaded once
+    for (int i = 1; i < numThreads; i++) {
+      for (int j = 0; j < ords[i].length; j++) {
+        assertNotNull(ords[i][j]);
+        assertSame(ords[0][j], ords[i][j]);
+      }
+    }
+    reader.close();
+    IOUtils.close(indexDir, taxoDir);
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    Directory indexDir = newDirectory();
+    Directory taxoDir = newDirectory();
+    index(indexDir, taxoDir);
+    DirectoryReader reader = DirectoryReader.open(indexDir);
+    final long maxRamBytesUsed = OrdinalsCache.getMaxRamBytesUsed();
+    OrdinalsCache.setMaxRamBytesUsed(1);
+    try {
+      List<AtomicReaderContext> leaves = reader.leaves();
+      CachedOrds first = OrdinalsCache.getCachedOrds(leaves.get(0), CLP);
+      // the most recently loaded ordinals are kept
+      assertSame(first, OrdinalsCache.getCachedOrds(leaves.get(0), CLP));
+      OrdinalsCache.getCachedOrds(leaves.get(1), CLP);
+      assertNotSame(first, OrdinalsCache.getCachedOrds(leaves.get(0), CLP));
+    } finally {
+      OrdinalsCache.setMaxRamBytesUsed(maxRamBytesUsed);
+    }
+    reader.close();
+    IOUtils.close(indexDir, taxoDir);
+  }
+
+}
@@ -0,0 +1,184 @@
+package org.apache.lucene.facet.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.facet.FacetTestCase;
+import org.apache.lucene.facet.index.FacetFields;
+import org.apache.lucene.facet.params.FacetSearchParams;
+import org.apache.lucene.facet.taxonomy.CategoryPath;
+import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
+import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyReader;
+import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MultiCollector;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util._TestUtil;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+public class ParallelFacetsAccumulatorTest extends FacetTestCase {
+
+  private static Directory indexDir, taxoDir;
+  private static DirectoryReader indexReader;
+  private static TaxonomyReader taxoReader;
+  private static ExecutorService executor;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    indexDir = newDirectory();
+    taxoDir = newDirectory();
+    IndexWriterConfig conf = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    conf.setMergePolicy(NoMergePolicy.COMPOUND_FILES); // one segment per commit
+    IndexWriter indexWriter = new IndexWriter(indexDir, conf);
+    TaxonomyWriter taxoWriter = new DirectoryTaxonomyWriter(taxoDir);
+    FacetFields facetFields = new FacetFields(taxoWriter);
+    final int numSegments = _TestUtil.nextInt(random(), 2, 8);
+    for (int i = 0; i < numSegments; i++) {
+      final int numDocs = atLeast(20);
+      for (int j = 0; j < numDocs; j++) {
+        Document doc = new Document();
+        if (random().nextInt(10) != 0) {
+          List<CategoryPath> categories = new ArrayList<CategoryPath>();
+          final int numCategories = random().nextInt(3) + 1;
+          for (int k = 0; k < numCategories; k++) {
+            categories.add(new CategoryPath("dim" + random().nextInt(2), Integer.toString(random().nextInt(20))));
+          }
+          facetFields.addFields(doc, categories);
+        }
+        indexWriter.addDocument(doc);
+      }
+      indexWriter.commit();
+    }
+    IOUtils.close(indexWriter, taxoWriter);
+    indexReader = DirectoryReader.open(indexDir);
+    taxoReader = new DirectoryTaxonomyReader(taxoDir);
+    executor = Executors.newFixedThreadPool(_TestUtil.nextInt(random(), 1, 4));
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.MINUTES);
+    IOUtils.close(indexReader, taxoReader, indexDir, taxoDir);
+    executor = null;
+    indexReader = null;
+    taxoReader = null;
+    indexDir = taxoDir = null;
+  }
+
+  private static void assertSameResults(FacetsAccumulator expected, FacetsAccumulator actual) throws IOException {
+    FacetsCollector expectedFC = FacetsCollector.create(expected);
+    FacetsCollector actualFC = FacetsCollector.create(actual);
+    new IndexSearcher(indexReader).search(new MatchAllDocsQuery(), MultiCollector.wrap(expectedFC, actualFC));
+    List<FacetResult> expectedResults = expectedFC.getFacetResults();
+    List<FacetResult> actualResults = actualFC.getFacetResults();
+    assertEquals(expectedResults.size(), actualResults.size());
+    for (int i = 0; i < expectedResults.size(); i++) {
+      assertEquals(expectedResults.get(i).toString(), actualResults.get(i).toString());
+    }
+  }
+
+  private static FacetSearchParams countParams() {
+    return new FacetSearchParams(new CountFacetRequest(new CategoryPath("dim0"), 10), 
+        new CountFacetRequest(new CategoryPath("dim1"), 5));
+  }
+
+  private static int maxSlices() {
+    return _TestUtil.nextInt(random(), 1, indexReader.leaves().size() + 1);
+  }
+
+  @Test
+  public void testCounts() throws Exception {
+    FacetSearchParams fsp = countParams();
+    assertSameResults(new FacetsAccumulator(fsp, indexReader, taxoReader), 
+        new ParallelFacetsAccumulator(fsp, indexReader, taxoReader, executor, maxSlices()));
+  }
+
+  @Test
+  public void testSparseCounts() throws Exception {
+    FacetSearchParams fsp = countParams();
+    final int maxSparseOrdinals = _TestUtil.nextInt(random(), 1, taxoReader.getSize());
+    assertSameResults(new FacetsAccumulator(fsp, indexReader, taxoReader), 
+        new ParallelFacetsAccumulator(fsp, indexReader, taxoReader, executor, maxSlices()) {
+      @Override
+      protected int getMaxSparseOrdinals(FacetsAggregator aggregator, int totalHits) {
+        return maxSparseOrdinals;
+      }
+    });
+  }
+
+  @Test
+  public void testCountsWithArraysPool() throws Exception {
+    FacetSearchParams fsp = countParams();
+    ArraysPool pool = new ArraysPool(taxoReader.getSize(), _TestUtil.nextInt(random(), 1, 4));
+    // the pooled arrays must be cleared before they are reused
+    for (int i = 0; i < 3; i++) {
+      ParallelFacetsAccumulator accumulator = new ParallelFacetsAccumulator(fsp, indexReader, taxoReader, 
+          pool, executor, maxSlices());
+      assertSameResults(new FacetsAccumulator(fsp, indexReader, taxoReader), accumulator);
+      accumulator.facetArrays.free();
+    }
+  }
+
+  @Test
+  public void testSumScore() throws Exception {
+    FacetSearchParams fsp = new FacetSearchParams(new SumScoreFacetRequest(new CategoryPath("dim0"), 10));
+    FacetsAccumulator expected = new FacetsAccumulator(fsp, indexReader, taxoReader) {
+      @Override
+      public FacetsAggregator getAggregator() {
+        return new SumScoreFacetsAggregator();
+      }
+    };
+    FacetsAccumulator actual = new ParallelFacetsAccumulator(fsp, indexReader, taxoReader, executor, maxSlices()) {
+      @Override
+      public FacetsAggregator getAggregator() {
+        return new SumScoreFacetsAggregator();
+      }
+    };
+    assertSameResults(expected, actual);
+  }
+
+  @Test
+  public void testShutdownExecutor() throws Exception {
+    // slices are aggregated by the calling thread
+    ExecutorService shutdown = Executors.newSingleThreadExecutor();
+    shutdown.shutdown();
+    FacetSearchParams fsp = countParams();
+    assertSameResults(new FacetsAccumulator(fsp, indexReader, taxoReader), 
+        new ParallelFacetsAccumulator(fsp, indexReader, taxoReader, shutdown, indexReader.leaves().size()));
+  }
+
+}
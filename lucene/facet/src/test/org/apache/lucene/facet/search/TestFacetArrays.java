@@ -58,4 +58,39 @@ public class TestFacetArrays extends FacetTestCase {
     }
   }
   
+  @Test
+  public void testSparseFacetArrays() {
+    FacetArrays arrays = new FacetArrays(10);
+    assertFalse(arrays.isSparse());
+    assertFalse(arrays.touch(1));
+    
+    arrays.setSparse(3);
+    assertTrue(arrays.isSparse());
+    assertTrue(arrays.touch(5));
+    assertTrue(arrays.touch(2));
+    assertTrue(arrays.touch(7));
+    assertEquals(3, arrays.getNumTouchedOrdinals());
+    assertEquals(5, arrays.getTouchedOrdinals()[0]);
+    assertEquals(2, arrays.getTouchedOrdinals()[1]);
+    assertEquals(7, arrays.getTouchedOrdinals()[2]);
+    
+    // too many ordinals
+    assertFalse(arrays.touch(9));
+    assertFalse(arrays.isSparse());
+    assertEquals(0, arrays.getNumTouchedOrdinals());
+    
+    // the values of an obtained int array may not be zero
+    arrays.free();
+    arrays.getIntArray();
+    arrays.setSparse(3);
+    assertFalse(arrays.isSparse());
+    
+    // free() makes the arrays dense
+    arrays.free();
+    arrays.setSparse(3);
+    assertTrue(arrays.isSparse());
+    arrays.free();
+    assertFalse(arrays.isSparse());
+  }
+  
 }
@@ -1,13 +1,18 @@
 package org.apache.lucene.facet.taxonomy.directory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.lucene.document.Document;
 import org.apache.lucene.facet.FacetTestCase;
+import org.apache.lucene.facet.index.FacetFields;
 import org.apache.lucene.facet.taxonomy.CategoryPath;
 import org.apache.lucene.facet.taxonomy.TaxonomyReader;
 import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter.MemoryOrdinalMap;
@@ -22,6 +27,8 @@ import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util._TestUtil;
 import org.junit.Test;
 
 /*
@@ -230,6 +237,14 @@ public class TestDirectoryTaxonomyWriter extends FacetTestCase {
   }
 
   public void testConcurrency() throws Exception {
+    doTestConcurrency(0);
+  }
+
+  public void testConcurrencyWithPendingCategories() throws Exception {
+    doTestConcurrency(_TestUtil.nextInt(random(), 1, 1000));
+  }
+
+  private void doTestConcurrency(int maxPendingCategories) throws Exception {
     final int ncats = atLeast(100000); // add many categories
     final int range = ncats * 3; // affects the categories selection
     final AtomicInteger numCats = new AtomicInteger(ncats);
@@ -249,6 +264,7 @@ public class TestDirectoryTaxonomyWriter extends FacetTestCase {
       cache = new LruTaxonomyWriterCache(ncats / 10);
     }
     final DirectoryTaxonomyWriter tw = new DirectoryTaxonomyWriter(dir, OpenMode.CREATE, cache);
+    tw.setMaxPendingCategories(maxPendingCategories);
     Thread[] addThreads = new Thread[atLeast(4)];
     for (int z = 0; z < addThreads.length; z++) {
       addThreads[z] = new Thread() {
@@ -347,6 +363,133 @@ public class TestDirectoryTaxonomyWriter extends FacetTestCase {
   }
 
   @Test
+  public void testPendingCategories() throws Exception {
+    Directory dir = newDirectory();
+    DirectoryTaxonomyWriter taxoWriter = new DirectoryTaxonomyWriter(dir);
+    taxoWriter.setMaxPendingCategories(1000);
+    int a = taxoWriter.addCategory(new CategoryPath("a", "b"));
+    assertEquals(a, taxoWriter.addCategory(new CategoryPath("a", "b")));
+    assertEquals(3, taxoWriter.getSize());
+
+    // NRT readers see the pending categories
+    DirectoryTaxonomyReader taxoReader = new DirectoryTaxonomyReader(taxoWriter);
+    assertEquals(3, taxoReader.getSize());
+    assertEquals(a, taxoReader.getOrdinal(new CategoryPath("a", "b")));
+    int c = taxoWriter.addCategory(new CategoryPath("a", "c"));
+    DirectoryTaxonomyReader newTaxoReader = TaxonomyReader.openIfChanged(taxoReader);
+    assertNotNull(newTaxoReader);
+    taxoReader.close();
+    taxoReader = newTaxoReader;
+    assertEquals(c, taxoReader.getOrdinal(new CategoryPath("a", "c")));
+    assertEquals(taxoReader.getOrdinal(new CategoryPath("a")), taxoWriter.getParent(c));
+    taxoReader.close();
+
+    // so do commits
+    int d = taxoWriter.addCategory(new CategoryPath("d"));
+    taxoWriter.commit();
+    taxoReader = new DirectoryTaxonomyReader(dir);
+    assertEquals(d, taxoReader.getOrdinal(new CategoryPath("d")));
+    taxoReader.close();
+    taxoWriter.close();
+    dir.close();
+  }
+
+  public void testPendingCategoriesNotFlushedPerDocument() throws Exception {
+    // FacetFields asks the parents of the ordinals of every document, which
+    // must not flush the pending categories
+    Directory dir = newDirectory();
+    final DirectoryTaxonomyWriter taxoWriter = new DirectoryTaxonomyWriter(dir);
+    taxoWriter.setMaxPendingCategories(Integer.MAX_VALUE);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread[] threads = new Thread[_TestUtil.nextInt(random(), 2, 4)];
+    final int numDocs = atLeast(50);
+    for (int i = 0; i < threads.length; i++) {
+      final long seed = random().nextLong();
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          Random random = new Random(seed);
+          try {
+            FacetFields facetFields = new FacetFields(taxoWriter);
+            for (int j = 0; j < numDocs; j++) {
+              List<CategoryPath> categories = new ArrayList<CategoryPath>();
+              for (int k = random.nextInt(3) + 1; k > 0; k--) {
+                categories.add(new CategoryPath("dim" + random.nextInt(3), Integer.toString(random.nextInt(50)), 
+                    Integer.toString(random.nextInt(5))));
+              }
+              facetFields.addFields(new Document(), categories);
+            }
+          } catch (Throwable t) {
+            failure.set(t);
+          }
+        }
+      };
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertNull(failure.get());
+    // all the categories but the root are still pending
+    assertEquals(taxoWriter.getSize() - 1, taxoWriter.getNumPendingCategories());
+
+    taxoWriter.commit();
+    assertEquals(0, taxoWriter.getNumPendingCategories());
+    DirectoryTaxonomyReader taxoReader = new DirectoryTaxonomyReader(dir);
+    assertEquals(taxoWriter.getSize(), taxoReader.getSize());
+    int[] parents = taxoReader.getParallelTaxonomyArrays().parents();
+    for (int ord = 1; ord < taxoReader.getSize(); ord++) {
+      CategoryPath cp = taxoReader.getPath(ord);
+      assertEquals(ord, taxoWriter.addCategory(cp));
+      assertEquals(taxoReader.getOrdinal(cp.subpath(cp.length - 1)), parents[ord]);
+      assertEquals(parents[ord], taxoWriter.getParent(ord));
+    }
+    IOUtils.close(taxoReader, taxoWriter, dir);
+  }
+
+  public void testPendingCategoriesFlushedConcurrently() throws Exception {
+    // the threads adding categories flush them as well, which must not leave
+    // any category pending
+    Directory dir = newDirectory();
+    final DirectoryTaxonomyWriter taxoWriter = new DirectoryTaxonomyWriter(dir);
+    taxoWriter.setMaxPendingCategories(_TestUtil.nextInt(random(), 1, 10));
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread[] threads = new Thread[_TestUtil.nextInt(random(), 2, 4)];
+    final int numCategories = atLeast(200);
+    for (int i = 0; i < threads.length; i++) {
+      final long seed = random().nextLong();
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          Random random = new Random(seed);
+          try {
+            for (int j = 0; j < numCategories; j++) {
+              taxoWriter.addCategory(new CategoryPath("dim" + random.nextInt(3), Integer.toString(random.nextInt(100))));
+            }
+          } catch (Throwable t) {
+            failure.set(t);
+          }
+        }
+      };
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertNull(failure.get());
+
+    taxoWriter.commit();
+    assertEquals(0, taxoWriter.getNumPendingCategories());
+    assertEquals(0, taxoWriter.getNumPendingOrdinals());
+    DirectoryTaxonomyReader taxoReader = new DirectoryTaxonomyReader(dir);
+    assertEquals(taxoWriter.getSize(), taxoReader.getSize());
+    IOUtils.close(taxoReader, taxoWriter, dir);
+  }
+
   public void testReaderFreshness() throws Exception {
     // ensures that the internal index reader is always kept fresh. Previously,
     // this simple scenario failed, if the cache just evicted the category that
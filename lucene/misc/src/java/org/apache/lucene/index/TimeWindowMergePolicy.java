@@ -0,0 +1,314 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.document.LongField; // javadocs
+import org.apache.lucene.index.TermsEnum.SeekStatus;
+import org.apache.lucene.search.NumericRangeQuery; // javadocs
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
+
+/** A {@link MergePolicy} for time-based data, like logs, that never merges
+ *  segments of different time windows.
+ *  <p>
+ *  Segments are grouped by the window of the largest value of a time
+ *  <code>field</code>, which must be indexed as a {@link LongField}, windows
+ *  being ranges of <code>windowSize</code> values of this field. The base
+ *  {@link MergePolicy} then picks merges, and forced merges, in each window
+ *  separately, as if the segments of the window were the whole index.  So
+ *  old windows, which are not written anymore, stop being merged once they
+ *  are merged enough, and data of different ages is never rewritten
+ *  together.  It also makes expiring old data cheap: deleting all documents
+ *  older than a window boundary, for example with a
+ *  {@link NumericRangeQuery}, fully deletes whole segments, which
+ *  {@link IndexWriter} drops without merging anything.
+ *  <p>
+ *  The range of values of a merged segment is recorded in its
+ *  {@link SegmentInfo#getDiagnostics() diagnostics}. The range of a flushed
+ *  segment is read once from its terms dictionary, with the reader that
+ *  {@link IndexWriter} pools for the segment, and cached until the segment
+ *  is merged away. Segments that have no
+ *  value for the field are grouped together. A flushed segment that spans
+ *  several windows belongs to the window of its largest value, so
+ *  applications that index in time order should flush or commit when a
+ *  window ends.
+ *  <p>
+ *  <b>NOTE</b>: {@link IndexWriter#forceMerge(int) forceMerge(maxNumSegments)}
+ *  merges each window down to <code>maxNumSegments</code> segments.
+ *  @lucene.experimental */
+public class TimeWindowMergePolicy extends MergePolicy {
+
+  /** Diagnostics key for the time field of the recorded range. */
+  public static final String TIME_FIELD_PROP = "timeField";
+  /** Diagnostics key for the smallest value of the time field. */
+  public static final String TIME_MIN_PROP = "timeMin";
+  /** Diagnostics key for the largest value of the time field. */
+  public static final String TIME_MAX_PROP = "timeMax";
+
+  /** Window of the segments that have no value for the time field. */
+  public static final long NO_WINDOW = Long.MIN_VALUE;
+
+  private static final long[] NO_RANGE = new long[0];
+
+  /** Wrapped {@link MergePolicy}. */
+  protected final MergePolicy base;
+  private final String field;
+  private final long windowSize;
+  // ranges of flushed segments, read from their terms
+  private final Map<SegmentInfoPerCommit,long[]> ranges = Collections.synchronizedMap(new WeakHashMap<SegmentInfoPerCommit,long[]>());
+
+  /** Create a new {@link MergePolicy} that lets <code>base</code> merge the
+   *  segments of each window of <code>windowSize</code> values of
+   *  <code>field</code> separately. */
+  public TimeWindowMergePolicy(MergePolicy base, String field, long windowSize) {
+    if (windowSize <= 0) {
+      throw new IllegalArgumentException("windowSize must be > 0 (got " + windowSize + ")");
+    }
+    this.base = base;
+    this.field = field;
+    this.windowSize = windowSize;
+  }
+
+  /** Returns the window of the given value. */
+  public long window(long value) {
+    // round towards negative infinity
+    long window = value / windowSize;
+    if (value % windowSize < 0) {
+      --window;
+    }
+    return window;
+  }
+
+  /** Returns the window of the segment, or {@link #NO_WINDOW} if it has no
+   *  value for the time field. */
+  public long window(SegmentInfoPerCommit info) throws IOException {
+    final long[] range = getRange(info);
+    return range.length == 0 ? NO_WINDOW : window(range[1]);
+  }
+
+  /** Returns the smallest and the largest values of the time field in the
+   *  segment, or an empty array if it has none. */
+  long[] getRange(SegmentInfoPerCommit info) throws IOException {
+    final Map<String,String> diagnostics = info.info.getDiagnostics();
+    if (diagnostics != null && field.equals(diagnostics.get(TIME_FIELD_PROP))) {
+      final String min = diagnostics.get(TIME_MIN_PROP);
+      if (min == null) {
+        return NO_RANGE;
+      }
+      return new long[] { Long.parseLong(min), Long.parseLong(diagnostics.get(TIME_MAX_PROP)) };
+    }
+    long[] range = ranges.get(info);
+    if (range == null) {
+      range = readRange(info);
+      ranges.put(info, range);
+    }
+    return range;
+  }
+
+  private static boolean isFullPrecisionLong(BytesRef term) {
+    return term.length > 0 && term.bytes[term.offset] == NumericUtils.SHIFT_START_LONG;
+  }
+
+  private long[] readRange(SegmentInfoPerCommit info) throws IOException {
+    final IndexWriter w = writer.get();
+    // only segments of the writer, which are stable while it is locked, are pooled
+    if (w == null || !Thread.holdsLock(w) || !w.segmentInfos.contains(info)) {
+      final SegmentReader reader = new SegmentReader(info, DirectoryReader.DEFAULT_TERMS_INDEX_DIVISOR, IOContext.READ);
+      try {
+        return readRange(info, reader);
+      } finally {
+        reader.close();
+      }
+    }
+    // use the writer's pooled reader, which is already open when pooling readers
+    final ReadersAndLiveDocs rld = w.readerPool.get(info, true);
+    try {
+      final SegmentReader reader = rld.getReader(IOContext.READ);
+      try {
+        return readRange(info, reader);
+      } finally {
+        rld.release(reader);
+      }
+    } finally {
+      w.readerPool.release(rld);
+    }
+  }
+
+  private long[] readRange(SegmentInfoPerCommit info, SegmentReader reader) throws IOException {
+    final Terms terms = reader.terms(field);
+    if (terms == null) {
+      return NO_RANGE;
+    }
+    final TermsEnum termsEnum = terms.iterator(null);
+    // full precision terms sort first
+    final BytesRef first = termsEnum.next();
+    if (first == null) {
+      return NO_RANGE;
+    }
+    if (!isFullPrecisionLong(first)) {
+      throw new IllegalStateException("field \"" + field + "\" of segment " + info.info.name + " is not indexed as a LongField");
+    }
+    final long min = NumericUtils.prefixCodedToLong(first);
+    // binary search the largest full precision term
+    long lo = min, hi = Long.MAX_VALUE;
+    final BytesRef scratch = new BytesRef(NumericUtils.BUF_SIZE_LONG);
+    while (lo < hi) {
+      final long mid = lo + ((hi - lo - 1) >>> 1) + 1;
+      NumericUtils.longToPrefixCodedBytes(mid, 0, scratch);
+      if (termsEnum.seekCeil(scratch) != SeekStatus.END && isFullPrecisionLong(termsEnum.term())) {
+        lo = NumericUtils.prefixCodedToLong(termsEnum.term());
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return new long[] { min, lo };
+  }
+
+  /** Splits the segments by window, in window order. */
+  private Map<Long,SegmentInfos> windows(SegmentInfos segmentInfos) throws IOException {
+    final Map<Long,SegmentInfos> windows = new TreeMap<Long,SegmentInfos>();
+    for (SegmentInfoPerCommit info : segmentInfos) {
+      final Long window = window(info);
+      SegmentInfos infos = windows.get(window);
+      if (infos == null) {
+        infos = new SegmentInfos();
+        windows.put(window, infos);
+      }
+      infos.add(info);
+    }
+    if (verbose()) {
+      message("windows: " + windows.keySet());
+    }
+    return windows;
+  }
+
+  /** Records the range of values of the merged segments in the merge. */
+  private MergeSpecification add(MergeSpecification spec, MergeSpecification windowSpec) throws IOException {
+    if (windowSpec == null) {
+      return spec;
+    }
+    if (spec == null) {
+      spec = new MergeSpecification();
+    }
+    for (OneMerge merge : windowSpec.merges) {
+      long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+      for (SegmentInfoPerCommit info : merge.segments) {
+        final long[] range = getRange(info);
+        if (range.length != 0) {
+          min = Math.min(min, range[0]);
+          max = Math.max(max, range[1]);
+        }
+      }
+      spec.add(new TimeWindowOneMerge(merge.segments, min <= max ? new long[] { min, max } : NO_RANGE));
+    }
+    return spec;
+  }
+
+  @Override
+  public MergeSpecification findMerges(MergeTrigger mergeTrigger, SegmentInfos segmentInfos) throws IOException {
+    MergeSpecification spec = null;
+    for (SegmentInfos infos : windows(segmentInfos).values()) {
+      spec = add(spec, base.findMerges(mergeTrigger, infos));
+    }
+    return spec;
+  }
+
+  @Override
+  public MergeSpecification findForcedMerges(SegmentInfos segmentInfos, int maxSegmentCount,
+      Map<SegmentInfoPerCommit,Boolean> segmentsToMerge) throws IOException {
+    MergeSpecification spec = null;
+    for (SegmentInfos infos : windows(segmentInfos).values()) {
+      spec = add(spec, base.findForcedMerges(infos, maxSegmentCount, segmentsToMerge));
+    }
+    return spec;
+  }
+
+  @Override
+  public MergeSpecification findForcedDeletesMerges(SegmentInfos segmentInfos) throws IOException {
+    MergeSpecification spec = null;
+    for (SegmentInfos infos : windows(segmentInfos).values()) {
+      spec = add(spec, base.findForcedDeletesMerges(infos));
+    }
+    return spec;
+  }
+
+  @Override
+  public boolean useCompoundFile(SegmentInfos segments, SegmentInfoPerCommit newSegment) throws IOException {
+    return base.useCompoundFile(segments, newSegment);
+  }
+
+  @Override
+  public void setIndexWriter(IndexWriter writer) {
+    super.setIndexWriter(writer);
+    base.setIndexWriter(writer);
+  }
+
+  @Override
+  public MergePolicy clone() {
+    // the base policy needs its own writer
+    return new TimeWindowMergePolicy(base.clone(), field, windowSize);
+  }
+
+  @Override
+  public void close() {
+    base.close();
+  }
+
+  @Override
+  public String toString() {
+    return "[" + getClass().getSimpleName() + "(field=" + field + ", windowSize=" + windowSize + ")->" + base + "]";
+  }
+
+  private boolean verbose() {
+    final IndexWriter w = writer.get();
+    return w != null && w.infoStream.isEnabled("TWMP");
+  }
+
+  private void message(String message) {
+    writer.get().infoStream.message("TWMP", message);
+  }
+
+  private class TimeWindowOneMerge extends OneMerge {
+
+    private final long[] range;
+
+    TimeWindowOneMerge(List<SegmentInfoPerCommit> segments, long[] range) {
+      super(segments);
+      this.range = range;
+    }
+
+    @Override
+    public void setInfo(SegmentInfoPerCommit info) {
+      final Map<String,String> diagnostics = info.info.getDiagnostics();
+      diagnostics.put(TIME_FIELD_PROP, field);
+      if (range.length != 0) {
+        diagnostics.put(TIME_MIN_PROP, Long.toString(range[0]));
+        diagnostics.put(TIME_MAX_PROP, Long.toString(range[1]));
+      }
+      super.setInfo(info);
+    }
+  }
+}
@@ -0,0 +1,181 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestTimeWindowMergePolicy extends LuceneTestCase {
+
+  private static final long WINDOW_SIZE = 100;
+
+  private static IndexWriter newWriter(Directory dir, TimeWindowMergePolicy mp) throws Exception {
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setMaxBufferedDocs(_TestUtil.nextInt(random(), 5, 15));
+    iwc.setMergePolicy(mp);
+    return new IndexWriter(dir, iwc);
+  }
+
+  private static TimeWindowMergePolicy newMergePolicy() {
+    // a low merge factor so that many merges happen
+    LogDocMergePolicy base = new LogDocMergePolicy();
+    base.setMergeFactor(_TestUtil.nextInt(random(), 2, 4));
+    base.setMinMergeDocs(1);
+    return new TimeWindowMergePolicy(base, "time", WINDOW_SIZE);
+  }
+
+  /** Indexes documents with increasing times over <code>numWindows</code>
+   *  windows, flushing at the end of each window, and then a few documents
+   *  that have no time. */
+  private static void addDocs(IndexWriter writer, int numWindows) throws Exception {
+    for (int window = 0; window < numWindows; window++) {
+      for (long time = window * WINDOW_SIZE; time < (window + 1) * WINDOW_SIZE; time += _TestUtil.nextInt(random(), 1, 5)) {
+        Document doc = new Document();
+        doc.add(new LongField("time", time, Field.Store.NO));
+        writer.addDocument(doc);
+      }
+      writer.commit();
+    }
+    for (int i = 0; i < 5; i++) {
+      Document doc = new Document();
+      doc.add(new StringField("id", "notime", Field.Store.NO));
+      writer.addDocument(doc);
+    }
+    writer.commit();
+  }
+
+  /** Checks that all the documents of each segment are in the same window,
+   *  and that the range of the segment is right, and returns the number of
+   *  segments. */
+  private static int checkSegments(DirectoryReader reader, TimeWindowMergePolicy mp) throws Exception {
+    for (AtomicReaderContext context : reader.leaves()) {
+      final SegmentReader segReader = (SegmentReader) context.reader();
+      final FieldCache.Longs times = FieldCache.DEFAULT.getLongs(segReader, "time", false);
+      final Bits docsWithTime = FieldCache.DEFAULT.getDocsWithField(segReader, "time");
+      final long[] range = mp.getRange(segReader.getSegmentInfo());
+      long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+      int numDocsWithTime = 0;
+      for (int doc = 0; doc < segReader.maxDoc(); doc++) {
+        if (docsWithTime.get(doc)) {
+          ++numDocsWithTime;
+          min = Math.min(min, times.get(doc));
+          max = Math.max(max, times.get(doc));
+        }
+      }
+      if (numDocsWithTime == 0) {
+        assertEquals(0, range.length);
+      } else {
+        assertEquals(2, range.length);
+        assertEquals(min, range[0]);
+        assertEquals(max, range[1]);
+        assertEquals(mp.window(min), mp.window(max));
+        // documents without a time are not merged with timed ones
+        assertEquals(segReader.maxDoc(), numDocsWithTime);
+      }
+    }
+    return reader.leaves().size();
+  }
+
+  public void testWindow() {
+    TimeWindowMergePolicy mp = new TimeWindowMergePolicy(new LogDocMergePolicy(), "time", WINDOW_SIZE);
+    assertEquals(0, mp.window(0));
+    assertEquals(0, mp.window(WINDOW_SIZE - 1));
+    assertEquals(1, mp.window(WINDOW_SIZE));
+    assertEquals(-1, mp.window(-1));
+    assertEquals(-1, mp.window(-WINDOW_SIZE));
+    assertEquals(-2, mp.window(-WINDOW_SIZE - 1));
+    try {
+      new TimeWindowMergePolicy(new LogDocMergePolicy(), "time", 0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      // ok
+    }
+  }
+
+  public void testMergesWithinWindows() throws Exception {
+    Directory dir = newDirectory();
+    TimeWindowMergePolicy mp = newMergePolicy();
+    IndexWriter writer = newWriter(dir, mp);
+    final int numWindows = _TestUtil.nextInt(random(), 2, 5);
+    addDocs(writer, numWindows);
+    writer.commit();
+    DirectoryReader reader = DirectoryReader.open(dir);
+    checkSegments(reader, mp);
+    reader.close();
+
+    writer.forceMerge(1);
+    writer.commit();
+    reader = DirectoryReader.open(dir);
+    // one segment per window, plus the one of documents without a time
+    assertEquals(numWindows + 1, checkSegments(reader, mp));
+    reader.close();
+    writer.close();
+    dir.close();
+  }
+
+  public void testPooledReaders() throws Exception {
+    Directory dir = newDirectory();
+    TimeWindowMergePolicy mp = newMergePolicy();
+    IndexWriter writer = newWriter(dir, mp);
+    // an NRT reader makes the writer pool the readers the ranges are read with
+    DirectoryReader reader = DirectoryReader.open(writer, true);
+    final int numWindows = _TestUtil.nextInt(random(), 2, 5);
+    addDocs(writer, numWindows);
+    writer.forceMerge(1);
+    DirectoryReader newReader = DirectoryReader.openIfChanged(reader, writer, true);
+    assertNotNull(newReader);
+    reader.close();
+    reader = newReader;
+    assertEquals(numWindows + 1, checkSegments(reader, mp));
+    reader.close();
+    writer.close();
+    dir.close();
+  }
+
+  public void testExpireWindows() throws Exception {
+    Directory dir = newDirectory();
+    TimeWindowMergePolicy mp = newMergePolicy();
+    IndexWriter writer = newWriter(dir, mp);
+    addDocs(writer, 4);
+    writer.forceMerge(1);
+    writer.commit();
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(5, reader.leaves().size());
+    reader.close();
+
+    // expiring the two oldest windows drops their segments
+    writer.deleteDocuments(NumericRangeQuery.newLongRange("time", null, 2 * WINDOW_SIZE, true, false));
+    writer.commit();
+    reader = DirectoryReader.open(dir);
+    assertEquals(3, reader.leaves().size());
+    assertFalse(reader.hasDeletions());
+    checkSegments(reader, mp);
+    reader.close();
+    writer.close();
+    dir.close();
+  }
+}
@@ -0,0 +1,329 @@
+package org.apache.lucene.search.suggest;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.spell.TermFreqIterator;
+import org.apache.lucene.search.suggest.analyzing.AnalyzingSuggester; // javadocs
+import org.apache.lucene.search.suggest.analyzing.FuzzySuggester; // javadocs
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * A {@link Lookup} over the documents of an index, which keeps one
+ * {@link Lookup}, for example an {@link AnalyzingSuggester} or a
+ * {@link FuzzySuggester}, per segment.
+ * <p>
+ * The suggestion of a document is the value of its {@link BinaryDocValues}
+ * or {@link SortedDocValues} field, weighted by the value of its
+ * {@link NumericDocValues} weight field, if any. {@link #refresh(IndexReader)}
+ * builds the lookups of the segments it has not seen yet, and drops the
+ * lookups of the segments which are gone. When the reader is reopened with
+ * {@link DirectoryReader#openIfChanged(DirectoryReader)}, which shares the
+ * unchanged segments, only the new segments are analyzed and sorted, instead
+ * of the whole index.
+ * <p>
+ * Lookups are kept per segment core, so that deletions don't rebuild them:
+ * instead, the suggestions of the deleted documents are removed, or given the
+ * weight of the remaining documents that have them, from the results of the
+ * lookup. A lookup is only rebuilt once more than {@code maxDeletesRatio} of
+ * the documents of its segment were deleted since it was built.
+ * <p>
+ * The top {@code num} suggestions of every segment are merged by weight, and
+ * a suggestion found in several segments is returned once, with its highest
+ * weight. Since the lookups of the segments are independent, options that
+ * change the order of the suggestions, like
+ * {@link AnalyzingSuggester#EXACT_FIRST}, only apply within a segment.
+ * <p>
+ * <b>NOTE</b>: this lookup can't be built from a {@link TermFreqIterator},
+ * nor stored.
+ *
+ * @lucene.experimental
+ */
+public abstract class PerSegmentLookup extends Lookup {
+
+  /** Default ratio of deleted documents of a segment after which its lookup is rebuilt. */
+  public static final double DEFAULT_MAX_DELETES_RATIO = 0.1;
+
+  private final String field;
+  private final String weightField;
+  private final double maxDeletesRatio;
+  // lookups by segment, keyed by their core key
+  private volatile Map<Object,SegmentLookup> lookups = Collections.emptyMap();
+
+  /**
+   * Creates a new lookup of the suggestions of the given field, weighted by
+   * the given weight field, or by <code>1</code> if it is <code>null</code>,
+   * which rebuilds the lookup of a segment after
+   * {@link #DEFAULT_MAX_DELETES_RATIO} of its documents were deleted.
+   */
+  public PerSegmentLookup(String field, String weightField) {
+    this(field, weightField, DEFAULT_MAX_DELETES_RATIO);
+  }
+
+  /**
+   * Creates a new lookup of the suggestions of the given field, weighted by
+   * the given weight field, or by <code>1</code> if it is <code>null</code>,
+   * which rebuilds the lookup of a segment after <code>maxDeletesRatio</code>
+   * of its documents were deleted since it was built.
+   */
+  public PerSegmentLookup(String field, String weightField, double maxDeletesRatio) {
+    if (maxDeletesRatio < 0 || maxDeletesRatio > 1) {
+      throw new IllegalArgumentException("maxDeletesRatio must be between 0 and 1 (got " + maxDeletesRatio + ")");
+    }
+    this.field = field;
+    this.weightField = weightField;
+    this.maxDeletesRatio = maxDeletesRatio;
+  }
+
+  /**
+   * The lookup of a segment, with the suggestions of the documents that were
+   * deleted since it was built.
+   */
+  private static final class SegmentLookup {
+    final Lookup lookup;
+    /** number of deleted documents when the lookup was built */
+    final int builtNumDeletedDocs;
+    /** live documents when the deletions were last checked */
+    final Bits liveDocs;
+    final int numDeletedDocs;
+    /** suggestions of deleted documents, with the best weight of the live
+     *  documents that have them, or null if none */
+    final Map<BytesRef,Long> deleted;
+
+    SegmentLookup(Lookup lookup, int builtNumDeletedDocs, Bits liveDocs, int numDeletedDocs, Map<BytesRef,Long> deleted) {
+      this.lookup = lookup;
+      this.builtNumDeletedDocs = builtNumDeletedDocs;
+      this.liveDocs = liveDocs;
+      this.numDeletedDocs = numDeletedDocs;
+      this.deleted = deleted;
+    }
+  }
+
+  /** Creates the empty {@link Lookup} of a segment. */
+  protected abstract Lookup newLookup();
+
+  /**
+   * Updates the lookups to the segments of the given reader, building the
+   * lookups of the new segments.
+   */
+  public synchronized void refresh(IndexReader reader) throws IOException {
+    final Map<Object,SegmentLookup> current = lookups;
+    final Map<Object,SegmentLookup> newLookups = new HashMap<Object,SegmentLookup>();
+    for (AtomicReaderContext context : reader.leaves()) {
+      final AtomicReader segment = context.reader();
+      final Object key = segment.getCoreCacheKey();
+      BinaryDocValues values = segment.getBinaryDocValues(field);
+      if (values == null) {
+        values = segment.getSortedDocValues(field);
+      }
+      if (values == null) {
+        continue; // no suggestions in this segment
+      }
+      final NumericDocValues weights = weightField == null ? null : segment.getNumericDocValues(weightField);
+      final Bits liveDocs = segment.getLiveDocs();
+      final int numDeletedDocs = segment.numDeletedDocs();
+      SegmentLookup lookup = current.get(key);
+      if (lookup != null && lookup.numDeletedDocs != numDeletedDocs) {
+        if (numDeletedDocs - lookup.builtNumDeletedDocs > maxDeletesRatio * segment.maxDoc()) {
+          lookup = null;
+        } else {
+          lookup = new SegmentLookup(lookup.lookup, lookup.builtNumDeletedDocs, liveDocs, numDeletedDocs,
+              deletedSuggestions(lookup, values, weights, liveDocs, segment.maxDoc()));
+        }
+      }
+      if (lookup == null) {
+        final Lookup segmentLookup = newLookup();
+        segmentLookup.build(new SegmentTermFreqIterator(values, weights, liveDocs, segment.maxDoc()));
+        lookup = new SegmentLookup(segmentLookup, numDeletedDocs, liveDocs, numDeletedDocs, Collections.<BytesRef,Long>emptyMap());
+      }
+      newLookups.put(key, lookup);
+    }
+    lookups = newLookups;
+  }
+
+  /**
+   * Returns the suggestions of the documents of the segment that were
+   * deleted since its lookup was built, with the best weight of the live
+   * documents that still have them.
+   */
+  private static Map<BytesRef,Long> deletedSuggestions(SegmentLookup lookup, BinaryDocValues values,
+      NumericDocValues weights, Bits liveDocs, int maxDoc) {
+    final BytesRef spare = new BytesRef();
+    final Map<BytesRef,Long> deleted = new HashMap<BytesRef,Long>();
+    for (BytesRef suggestion : lookup.deleted.keySet()) {
+      deleted.put(suggestion, null);
+    }
+    for (int doc = 0; doc < maxDoc; doc++) {
+      if ((lookup.liveDocs == null || lookup.liveDocs.get(doc)) && !liveDocs.get(doc)) {
+        values.get(doc, spare);
+        if (spare.length > 0) {
+          deleted.put(BytesRef.deepCopyOf(spare), null);
+        }
+      }
+    }
+    if (deleted.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    // other documents may have the same suggestions
+    for (int doc = 0; doc < maxDoc; doc++) {
+      if (liveDocs.get(doc)) {
+        values.get(doc, spare);
+        if (deleted.containsKey(spare)) {
+          final long weight = weights == null ? 1 : weights.get(doc);
+          final Long best = deleted.get(spare);
+          if (best == null || weight > best) {
+            deleted.put(BytesRef.deepCopyOf(spare), weight);
+          }
+        }
+      }
+    }
+    return deleted;
+  }
+
+  /** Returns the number of segments that have a {@link Lookup}. */
+  public int getNumSegments() {
+    return lookups.size();
+  }
+
+  private static final Comparator<LookupResult> BY_WEIGHT = new Comparator<LookupResult>() {
+    @Override
+    public int compare(LookupResult r1, LookupResult r2) {
+      if (r1.value > r2.value) {
+        return -1;
+      } else if (r1.value < r2.value) {
+        return 1;
+      }
+      return r1.compareTo(r2);
+    }
+  };
+
+  @Override
+  public List<LookupResult> lookup(CharSequence key, boolean onlyMorePopular, int num) {
+    final List<LookupResult> all = new ArrayList<LookupResult>();
+    for (SegmentLookup segment : lookups.values()) {
+      if (segment.deleted.isEmpty()) {
+        all.addAll(segment.lookup.lookup(key, onlyMorePopular, num));
+        continue;
+      }
+      // the top num suggestions are among these, whatever the deletions
+      for (LookupResult result : segment.lookup.lookup(key, onlyMorePopular, num + segment.deleted.size())) {
+        final BytesRef suggestion = new BytesRef(result.key);
+        if (!segment.deleted.containsKey(suggestion)) {
+          all.add(result);
+        } else {
+          final Long weight = segment.deleted.get(suggestion);
+          if (weight != null) {
+            all.add(new LookupResult(result.key, weight, result.payload));
+          }
+        }
+      }
+    }
+    Collections.sort(all, BY_WEIGHT);
+    final List<LookupResult> results = new ArrayList<LookupResult>(Math.min(num, all.size()));
+    final Set<String> seen = new HashSet<String>();
+    for (LookupResult result : all) {
+      if (results.size() == num) {
+        break;
+      }
+      if (seen.add(result.key.toString())) {
+        results.add(result);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Not supported: the lookups are built per segment by
+   * {@link #refresh(IndexReader)}.
+   */
+  @Override
+  public void build(TermFreqIterator tfit) throws IOException {
+    throw new UnsupportedOperationException("this lookup is built per segment by refresh(IndexReader)");
+  }
+
+  @Override
+  public boolean store(OutputStream output) throws IOException {
+    return false;
+  }
+
+  @Override
+  public boolean load(InputStream input) throws IOException {
+    return false;
+  }
+
+  /** Iterates over the suggestions of the live documents of a segment. */
+  private static final class SegmentTermFreqIterator implements TermFreqIterator {
+
+    private final BinaryDocValues values;
+    private final NumericDocValues weights;
+    private final Bits liveDocs;
+    private final int maxDoc;
+    private final BytesRef spare = new BytesRef();
+    private int doc = -1;
+
+    SegmentTermFreqIterator(BinaryDocValues values, NumericDocValues weights, Bits liveDocs, int maxDoc) {
+      this.values = values;
+      this.weights = weights;
+      this.liveDocs = liveDocs;
+      this.maxDoc = maxDoc;
+    }
+
+    @Override
+    public BytesRef next() throws IOException {
+      while (++doc < maxDoc) {
+        if (liveDocs != null && !liveDocs.get(doc)) {
+          continue;
+        }
+        values.get(doc, spare);
+        if (spare.length > 0) {
+          return spare;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public long weight() {
+      return weights == null ? 1 : weights.get(doc);
+    }
+
+    @Override
+    public Comparator<BytesRef> getComparator() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,216 @@
+package org.apache.lucene.search.suggest;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.analysis.MockTokenizer;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.suggest.Lookup.LookupResult;
+import org.apache.lucene.search.suggest.analyzing.AnalyzingSuggester;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class PerSegmentLookupTest extends LuceneTestCase {
+
+  private final Analyzer analyzer = new MockAnalyzer(random(), MockTokenizer.KEYWORD, false);
+  private final AtomicInteger numBuilds = new AtomicInteger();
+  private final List<TermFreq> live = new ArrayList<TermFreq>();
+  private final List<Integer> weights = new ArrayList<Integer>();
+
+  private PerSegmentLookup newLookup(double maxDeletesRatio) {
+    return new PerSegmentLookup("suggest", "weight", maxDeletesRatio) {
+      @Override
+      protected Lookup newLookup() {
+        numBuilds.incrementAndGet();
+        return new AnalyzingSuggester(analyzer);
+      }
+    };
+  }
+
+  private void addDocs(IndexWriter writer, int numDocs) throws Exception {
+    for (int i = 0; i < numDocs; i++) {
+      final int weight = weights.remove(weights.size() - 1);
+      final String key = "k" + _TestUtil.randomSimpleStringRange(random(), 'a', 'c', 3) + weight;
+      writer.addDocument(newDoc(key, key, weight));
+      live.add(new TermFreq(key, weight));
+    }
+    writer.commit();
+  }
+
+  private static Document newDoc(String id, String key, int weight) {
+    Document doc = new Document();
+    doc.add(new StringField("id", id, Field.Store.NO));
+    doc.add(new BinaryDocValuesField("suggest", new BytesRef(key)));
+    doc.add(new NumericDocValuesField("weight", weight));
+    return doc;
+  }
+
+  /** Checks the lookup against an {@link AnalyzingSuggester} built from the
+   *  live suggestions. */
+  private void assertLookups(PerSegmentLookup lookup) throws Exception {
+    AnalyzingSuggester expected = new AnalyzingSuggester(analyzer);
+    expected.build(new TermFreqArrayIterator(live));
+    for (String prefix : new String[] { "k", "ka", "kb", "kab", "z" }) {
+      final int num = _TestUtil.nextInt(random(), 1, 20);
+      List<LookupResult> expectedResults = expected.lookup(prefix, false, num);
+      List<LookupResult> actualResults = lookup.lookup(prefix, false, num);
+      assertEquals(expectedResults.toString(), actualResults.toString());
+    }
+  }
+
+  private static Set<Object> segmentKeys(DirectoryReader reader) {
+    Set<Object> keys = new HashSet<Object>();
+    for (AtomicReaderContext context : reader.leaves()) {
+      keys.add(context.reader().getCoreCacheKey());
+    }
+    return keys;
+  }
+
+  public void testRefresh() throws Exception {
+    // distinct weights, so that the order of the suggestions is defined
+    for (int i = 0; i < 1000; i++) {
+      weights.add(i);
+    }
+    Collections.shuffle(weights, random());
+
+    Directory dir = newDirectory();
+    IndexWriterConfig conf = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    conf.setMergePolicy(NoMergePolicy.COMPOUND_FILES);
+    IndexWriter writer = new IndexWriter(dir, conf);
+    addDocs(writer, atLeast(20));
+    addDocs(writer, atLeast(20));
+
+    // never rebuilt because of deletions
+    PerSegmentLookup lookup = newLookup(1);
+    assertEquals(0, lookup.lookup("k", false, 10).size());
+    DirectoryReader reader = DirectoryReader.open(dir);
+    lookup.refresh(reader);
+    assertEquals(reader.leaves().size(), numBuilds.get());
+    assertEquals(reader.leaves().size(), lookup.getNumSegments());
+    assertLookups(lookup);
+
+    for (int iter = 0; iter < 3; iter++) {
+      // new segments
+      addDocs(writer, atLeast(10));
+      // deletions in an existing segment
+      final TermFreq deleted = live.remove(random().nextInt(live.size()));
+      writer.deleteDocuments(new Term("id", deleted.term));
+      writer.commit();
+
+      DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+      assertNotNull(newReader);
+      Set<Object> newKeys = segmentKeys(newReader);
+      newKeys.removeAll(segmentKeys(reader));
+      reader.close();
+      reader = newReader;
+
+      // only the new segments are built
+      final int builds = numBuilds.get();
+      lookup.refresh(reader);
+      assertEquals(newKeys.size(), numBuilds.get() - builds);
+      assertTrue(newKeys.size() < reader.leaves().size());
+      assertEquals(reader.leaves().size(), lookup.getNumSegments());
+      assertLookups(lookup);
+    }
+
+    try {
+      lookup.build(new TermFreqArrayIterator(live));
+      fail();
+    } catch (UnsupportedOperationException expected) {
+      // ok
+    }
+
+    reader.close();
+    writer.close();
+    dir.close();
+  }
+
+  public void testDeletes() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig conf = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    conf.setMergePolicy(NoMergePolicy.COMPOUND_FILES);
+    IndexWriter writer = new IndexWriter(dir, conf);
+    // one segment of 10 docs, where "ka" is suggested by 2 docs
+    writer.addDocument(newDoc("ka10", "ka", 10));
+    writer.addDocument(newDoc("ka5", "ka", 5));
+    for (int i = 2; i < 10; i++) {
+      writer.addDocument(newDoc("kb" + i, "kb" + i, i));
+    }
+    writer.commit();
+
+    PerSegmentLookup lookup = newLookup(0.3);
+    DirectoryReader reader = DirectoryReader.open(dir);
+    lookup.refresh(reader);
+    assertEquals(1, numBuilds.get());
+    assertEquals("[ka/10, kb9/9, kb8/8]", lookup.lookup("k", false, 3).toString());
+
+    // deletions don't rebuild the lookup, but are seen by lookups
+    writer.deleteDocuments(new Term("id", "ka10"), new Term("id", "kb9"));
+    writer.commit();
+    DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+    reader.close();
+    reader = newReader;
+    lookup.refresh(reader);
+    assertEquals(1, numBuilds.get());
+    assertEquals("[kb8/8, kb7/7, kb6/6, ka/5]", lookup.lookup("k", false, 4).toString());
+
+    writer.deleteDocuments(new Term("id", "ka5"));
+    writer.commit();
+    newReader = DirectoryReader.openIfChanged(reader);
+    reader.close();
+    reader = newReader;
+    lookup.refresh(reader);
+    assertEquals(1, numBuilds.get());
+    assertEquals("[kb8/8, kb7/7, kb6/6, kb5/5]", lookup.lookup("k", false, 4).toString());
+    assertEquals("[]", lookup.lookup("ka", false, 4).toString());
+
+    // past 30% of deleted documents, the lookup is rebuilt
+    writer.deleteDocuments(new Term("id", "kb8"));
+    writer.commit();
+    newReader = DirectoryReader.openIfChanged(reader);
+    reader.close();
+    reader = newReader;
+    lookup.refresh(reader);
+    assertEquals(2, numBuilds.get());
+    assertEquals("[kb7/7, kb6/6, kb5/5, kb4/4]", lookup.lookup("k", false, 4).toString());
+
+    reader.close();
+    writer.close();
+    dir.close();
+  }
+}
@@ -143,6 +143,18 @@ public class MockIndexInputWrapper extends IndexInput {
     return delegate.readLong();
   }
 
+  @Override
+  public void readInts(int[] dst, int offset, int length) throws IOException {
+    ensureOpen();
+    delegate.readInts(dst, offset, length);
+  }
+
+  @Override
+  public void readLongs(long[] dst, int offset, int length) throws IOException {
+    ensureOpen();
+    delegate.readLongs(dst, offset, length);
+  }
+
   @Override
   public String readString() throws IOException {
     ensureOpen();
@@ -776,6 +776,9 @@ public abstract class LuceneTestCase extends Assert {
     }
     c.setReaderPooling(r.nextBoolean());
     c.setReaderTermsIndexDivisor(_TestUtil.nextInt(r, 1, 4));
+    if (rarely(r)) {
+      c.setFlushThreadCount(_TestUtil.nextInt(r, 1, 3));
+    }
     return c;
   }
 
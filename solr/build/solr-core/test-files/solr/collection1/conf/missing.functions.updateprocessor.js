@@ -0,0 +1,3 @@
+function doSomeStuff() {
+  return "This script doesn't contain any update processor functions";
+}
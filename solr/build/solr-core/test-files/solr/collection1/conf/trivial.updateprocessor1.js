@@ -0,0 +1,25 @@
+function processAdd(cmd) {
+    functionMessages.add("processAdd1");
+    
+}
+
+function processDelete(cmd) {
+    functionMessages.add("processDelete1");
+}
+
+function processMergeIndexes(cmd) {
+    functionMessages.add("processMergeIndexes1");
+}
+
+function processCommit(cmd) {
+    functionMessages.add("processCommit1");
+}
+
+function processRollback(cmd) {
+    functionMessages.add("processRollback1");
+}
+
+function finish() {
+    functionMessages.add("finish1");
+}
+